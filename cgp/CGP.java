@@ -36,6 +36,9 @@ import antlr.TokenStreamException;
 import cgp.CGPLexer;
 import cgp.CGPParser;
 import cgp.CGPInterpreter;
+import cgp.compiler.Compiler;
+import cgp.runtime.ExitException;
+import cgp.runtime.InterpreterContext;
 import cgp.runtime.LastException;
 import notio.KnowledgeBase;
 import notio.ParserException;
@@ -44,20 +47,41 @@ import notio.TranslationContext;
 public class CGP {
     // Static fields.
     static private int ERR = -1; 
-    static private boolean traceOn;
    
-    // Options.
+    // Options. These are the defaults for each program run, whose
+    // option statements change only its own settings (see 
+    // cgp.runtime.InterpreterContext).
     static public boolean LFOpt = false;
     static public String CGIFParserOpt = "notio.translators.CGIFParser";
     static public String CGIFGenOpt = "notio.translators.CGIFGenerator";
+    static public boolean IncrementalOpt = false;
+    static public boolean ParallelActorsOpt = false;
+    static public boolean MemoActorsOpt = false;
+    static public boolean CompileOpt = false;
 
     // Static methods.
-    static public void setTraceMode(boolean state) {
-	traceOn = state;
+
+    // Was tracing turned on by the program run in the specified
+    // context, if any?
+    static private boolean isTraceOn(InterpreterContext context) {
+	return context != null && context.isTraceOn();
     }
 
-    public static boolean isTraceOn() {
-	return traceOn;
+    // Return the message with which an error in running a pCG program
+    // is reported.
+    static String errorMessage(Exception e) {
+	if (e instanceof SemanticException) {
+	    return "Semantic error: " + e.getMessage();
+	} else if (e instanceof RecognitionException) {
+	    return "Syntax error (recognition): " +
+		((RecognitionException)e).getLine() + ": " + e.getMessage();
+	} else if (e instanceof TokenStreamException) {
+	    return "Syntax error (token stream): " + e;
+	} else if (e instanceof LastException) {
+	    return "'last' statement not within a loop.";
+	} else {
+	    return "Error: " + e;
+	}
     }
 
     // The next two methods create graph parser objects given a 
@@ -120,9 +144,30 @@ public class CGP {
     }
 
     public static void main(String[] args) {
+	InterpreterContext context = null;
 	try {
 	    DataInputStream dis = null;
 	    String fileName = null;
+
+	    // The -compile flag selects the compiling execution engine
+	    // (see cgp.compiler.Compiler) rather than the interpreter. 
+	    // It is not passed on to the pCG program.
+	    if (args.length >= 1 && args[0].equals("-compile")) {
+		CompileOpt = true;
+		String[] rest = new String[args.length-1];
+		System.arraycopy(args, 1, rest, 0, rest.length);
+		args = rest;
+	    }
+
+	    // The -daemon flag starts a resident pCG which runs programs
+	    // on behalf of clients (see cgp.Daemon).
+	    if (args.length >= 1 && args[0].equals("-daemon")) {
+		String[] rest = new String[args.length-1];
+		System.arraycopy(args, 1, rest, 0, rest.length);
+		Daemon.main(rest);
+		return;
+	    }
+
 	    try {
 		if (args.length >= 1) {
 		    fileName = args[0];
@@ -143,51 +188,29 @@ public class CGP {
 	    // Parse and build a parse tree.
 	    CGPParser parser = new CGPParser(lexer);
 	    parser.setFilename(fileName);
+	    parser.setASTNodeClass("cgp.CGPAST"); // see CGPInterpreter
 	    parser.program();
 
 	    // Obtain the parse tree.
 	    CommonAST tree = (CommonAST)parser.getAST();
 
-	    // Walk the tree, interpreting the code.
-	    CGPInterpreter interpreter = new CGPInterpreter(args, tree);
-	    interpreter.program(tree);
-	}
-	catch(SemanticException e) {
-	    if (!traceOn) {
-		System.err.println("Semantic error: " + e.getMessage());
+	    // Walk the tree, interpreting the code, or compile it and
+	    // run the result.
+	    context = new InterpreterContext();
+	    CGPInterpreter interpreter = new CGPInterpreter(args, tree, 
+							    context);
+	    if (CompileOpt) {
+		new Compiler(interpreter).run(tree);
 	    } else {
-		System.out.print("TRACE: ");
-		e.printStackTrace();
+		interpreter.program(tree);
 	    }
 	}
-	catch(RecognitionException e) {
-	    if (!traceOn) {
-		System.err.println("Syntax error (recognition): " +
-				   e.getLine() + ": " + e.getMessage());
-	    } else {
-		System.out.print("TRACE: ");
-		e.printStackTrace();
-	    }
-	}
-	catch(TokenStreamException e) {
-	    if (!traceOn) {
-		System.err.println("Syntax error (token stream): " + e);
-	    } else {
-		System.out.print("TRACE: ");
-		e.printStackTrace();
-	    }
-	}
-	catch (LastException e) {
-	    if (!traceOn) {
-		System.err.println("'last' statement not within a loop.");
-	    } else {
-		System.out.print("TRACE: ");
-		e.printStackTrace();
-	    }	    
+	catch (ExitException e) {
+	    System.exit(e.getExitCode());
 	}
 	catch(Exception e) {
-	    if (!traceOn) {
-		System.err.println("Error: " + e);
+	    if (!isTraceOn(context)) {
+		System.err.println(errorMessage(e));
 	    } else {
 		System.out.print("TRACE: ");
 		e.printStackTrace();
@@ -0,0 +1,159 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Parse tree node class for pCG programs.
+ *
+ * This adds to ANTLR's CommonAST a slot in which the interpreter may
+ * cache a value computed from the node, such as the parsed form of a
+ * graph literal, so that the work is not repeated each time the node
+ * is evaluated. A cached value is stored along with a key describing
+ * the conditions under which it was computed, and is only returned for
+ * an equivalent key, so a change in those conditions (e.g. to the type
+ * hierarchy) causes the value to be recomputed.
+ *
+ * A node may also record how a name it refers to is to be resolved (see
+ * NameResolver), and the slot layout of the scope in which a function or
+ * process body executes.
+ *
+ * A member function or attribute name may also record the method last
+ * invoked through it, along with the class of the object it was invoked
+ * on, since that is likely to be the class of the next such object.
+ *
+ * A function call whose value its function returns directly is marked
+ * as a tail call.
+ */
+
+package cgp;
+
+import antlr.CommonAST;
+import antlr.Token;
+
+import cgp.runtime.MemberHandle;
+import cgp.runtime.SlotLayout;
+
+public class CGPAST extends CommonAST {
+    // Static fields.
+    static public final int UNRESOLVED = -1; // look the name up in all scopes
+    static public final int GLOBAL = -2; // only in the outermost scope
+
+    // Instance fields.
+    // The cache and target may be replaced by several runs of a program
+    // at once (see Program), so they are volatile lest a thread see a
+    // reference to an array whose elements it does not yet see. The other
+    // fields are set by the NameResolver before the program is run.
+    private volatile Object[] cache; // key and value, replaced together
+    private volatile Object[] target; // receiver class and method, ditto
+    private SlotLayout layout;
+    private int slot = UNRESOLVED;
+    private boolean tailCall;
+    private boolean namesResolved; // of the program this node begins
+
+    // Constructors.
+    public CGPAST() {
+	super();
+    }
+
+    public CGPAST(Token tok) {
+	super(tok);
+    }
+
+    // Public methods.
+
+    /**
+     * Return the value cached for the specified key, or null if there
+     * is none. Key elements are compared by equals(), or identity when
+     * the elements do not define equivalence.
+     */
+    public Object getCachedValue(Object[] key) {
+	Object[] entry = cache;
+	if (entry == null) {
+	    return null;
+	}
+	Object[] cacheKey = (Object[])entry[0];
+	if (cacheKey.length != key.length) {
+	    return null;
+	}
+	for (int i=0;i<key.length;i++) {
+	    if (key[i] != cacheKey[i] &&
+		(key[i] == null || !key[i].equals(cacheKey[i]))) {
+		return null;
+	    }
+	}
+	return entry[1];
+    }
+
+    /**
+     * Cache a value for the specified key, replacing any other.
+     */
+    public void setCachedValue(Object[] key, Object value) {
+	cache = new Object[] { key, value };
+    }
+
+    /**
+     * Return the layout of the slots of the scope in which this body
+     * executes, or for a name, of the scope whose slot it refers to.
+     */
+    public SlotLayout getLayout() {
+	return layout;
+    }
+
+    /**
+     * Return the slot of the layout this name refers to, or UNRESOLVED
+     * or GLOBAL.
+     */
+    public int getSlot() {
+	return slot;
+    }
+
+    public void setResolution(SlotLayout layout, int slot) {
+	this.layout = layout;
+	this.slot = slot;
+    }
+
+    /**
+     * Return the method last invoked through this name, if it was 
+     * invoked on an object of the specified class, otherwise null.
+     */
+    public MemberHandle getTarget(Class receiverClass) {
+	Object[] entry = target;
+	if (entry == null || entry[0] != receiverClass) {
+	    return null;
+	}
+	return (MemberHandle)entry[1];
+    }
+
+    public void setTarget(Class receiverClass, MemberHandle method) {
+	target = new Object[] { receiverClass, method };
+    }
+
+    public boolean isTailCall() {
+	return tailCall;
+    }
+
+    public void setTailCall() {
+	tailCall = true;
+    }
+
+    public boolean isNamesResolved() {
+	return namesResolved;
+    }
+
+    public void setNamesResolved() {
+	namesResolved = true;
+    }
+}
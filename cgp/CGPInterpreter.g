@@ -2,36 +2,50 @@ header {
     package cgp;
 
 	import antlr.CommonAST;
+    import antlr.collections.AST;
     import antlr.SemanticException;
 
     import cgp.runtime.ActorException;
     import cgp.runtime.ActorType;
     import cgp.runtime.BooleanType;
     import cgp.runtime.ConceptType;
+    import cgp.runtime.DispatchTable;
+    import cgp.runtime.ExitException;
     import cgp.runtime.FileType;
     import cgp.runtime.FormalParameter;
+    import cgp.runtime.FunctionCall;
+    import cgp.runtime.FunctionCaller;
     import cgp.runtime.FunctionType;
     import cgp.runtime.GraphType;
+    import cgp.runtime.InterpreterContext;
     import cgp.runtime.KBase;
     import cgp.runtime.KnowledgeBaseStack;
     import cgp.runtime.LambdaType;
     import cgp.runtime.LastException;
     import cgp.runtime.ListType;
+    import cgp.runtime.MapType;
+    import cgp.runtime.MemberHandle;
+    import cgp.runtime.MemoCache;
     import cgp.runtime.Namespace;
     import cgp.runtime.NumberType;
     import cgp.runtime.ProcessType;
     import cgp.runtime.Rule;
+    import cgp.runtime.RuleNetwork;
     import cgp.runtime.ReturnException;
     import cgp.runtime.Scope;
     import cgp.runtime.ScopeStack;
+    import cgp.runtime.SetType;
+    import cgp.runtime.SlotLayout;
     import cgp.runtime.StringType;
     import cgp.runtime.SubActorInfo;
+    import cgp.runtime.TailCallException;
     import cgp.runtime.Type;
     import cgp.runtime.UndefinedType;
 
     import java.io.File;
     import java.io.IOException;
     import java.util.Enumeration;
+    import java.util.HashMap;
     import java.util.LinkedList;
     import java.util.List;
     import java.util.Properties;
@@ -77,6 +91,7 @@ options {
 
 {
     // ** Interpreter initialisation code.
+    InterpreterContext context;
     ScopeStack scopes;
     Scope topLevelScope;
     KnowledgeBaseStack kbases;
@@ -85,61 +100,455 @@ options {
 	String[] args;
     CommonAST tree;
 
+    // The function whose body is being executed by funCall, if any, and
+    // the scope holding its parameters.
+    FunctionType activeFunc;
+    Scope activeLocals;
+
     public CGPInterpreter(String[] args, CommonAST tree) {
+		this(args, tree, new InterpreterContext());
+    }
+
+    public CGPInterpreter(String[] args, CommonAST tree, 
+			  InterpreterContext context) {
 		this();
 		this.trace = false;
 		this.args = args; // pCG command-line arguments
         this.tree = tree;
+		this.context = context;
     }
-}
 
-// ---------------------------------------------------------------------
-
-program
-{
-    // ** Code that must be executed at the start of each 
-    // ** complete program run.
-
-    // Create a scope stack and make it available to all Type instances.
-    // TBD: Probably should put such setters in CGP class.
-    scopes = new ScopeStack();
-    Type.setScopeStack(scopes);
-
-    // Create the top-level scope.
-    topLevelScope = new Scope();
-    scopes.push(topLevelScope);
-
-    // Create a knowledge base stack and make it available
-    // to all Type instances.
-    kbases = new KnowledgeBaseStack();
-    Type.setKBStack(kbases);
-
-    // Create the top-level knowledge base.
-    topLevelKBase = new KBase();
-    kbases.push(topLevelKBase);
-
-    // Add environment variables to top-level scope for use
-    // by pCG programs.
-    ListType envars = new ListType();
-    topLevelScope.def("_ENV", envars);
-    Properties env = System.getProperties();
-    Enumeration keys = env.propertyNames();
-    while (keys.hasMoreElements()) {
-		String key = (String)keys.nextElement();
-		String value = env.getProperty(key);
-		ListType pair = new ListType();
-		pair.append(new StringType(key));
-		pair.append(new StringType(value));
-		envars.append(pair);
-    }
+    // Code that must be executed at the start of each complete program
+    // run, given its list of top-level statements. This is public so that
+    // an alternative execution engine (see cgp.compiler.Compiler) may
+    // share the interpreter's state.
+    public void initialise(AST program) {
+	// Make this program's context, and so its stacks and options,
+	// available to all Type instances created by this thread.
+	Type.setContext(context);
+	scopes = context.getScopeStack();
+	kbases = context.getKBStack();
+
+	// Create the top-level scope.
+	topLevelScope = new Scope();
+	scopes.push(topLevelScope);
+
+	// Resolve the names used in function and process bodies.
+	NameResolver.resolve(program);
+
+	// Let member functions call pCG functions.
+	context.setFunctionCaller(functionCaller());
+
+	// Create the top-level knowledge base unless one was given.
+	if (topLevelKBase == null) {
+	    topLevelKBase = new KBase();
+	} else {
+	    topLevelScope.def(KBase.KBASE_NAME, topLevelKBase);
+	}
+	kbases.push(topLevelKBase);
+
+	// Add environment variables to top-level scope for use
+	// by pCG programs.
+	ListType envars = new ListType();
+	topLevelScope.def("_ENV", envars);
+	Properties env = System.getProperties();
+	Enumeration keys = env.propertyNames();
+	while (keys.hasMoreElements()) {
+	    String key = (String)keys.nextElement();
+	    String value = env.getProperty(key);
+	    ListType pair = new ListType();
+	    pair.append(new StringType(key));
+	    pair.append(new StringType(value));
+	    envars.append(pair);
+	}
 
 	// Add command-line arguments to top-level scope for use
-    // by pCG programs. Exclude name of the pCG program.
+	// by pCG programs. Exclude name of the pCG program.
 	ListType pCGArgs = new ListType();
-    topLevelScope.def("_ARGS", pCGArgs);
+	topLevelScope.def("_ARGS", pCGArgs);
 	for (int i=1;i<args.length;i++) {
-		pCGArgs.append(new StringType(args[i]));
+	    pCGArgs.append(new StringType(args[i]));
+	}
+    }
+
+    public ScopeStack getScopes() {
+	return scopes;
+    }
+
+    public InterpreterContext getContext() {
+	return context;
+    }
+
+    public Scope getTopLevelScope() {
+	return topLevelScope;
+    }
+
+    // Set the knowledge base to be used as the top-level one by the
+    // next run, rather than a new empty one, e.g. by cgp.Engine.
+    public void setTopLevelKBase(KBase kbase) {
+	topLevelKBase = kbase;
+    }
+
+    public KBase getTopLevelKBase() {
+	return topLevelKBase;
+    }
+
+    // Calls of pCG functions from Java code are executed by walking 
+    // the function's body with this interpreter.
+    private FunctionCaller functionCaller() {
+	return new FunctionCaller() {
+		public FunctionCall newCall(FunctionType func) {
+		    return new FunctionCall(func, scopes, 
+					    newScope(func.getCode())) {
+			    protected boolean execute(AST body) 
+				throws RecognitionException {
+				// The function has a scope of its own.
+				FunctionType caller = activeFunc;
+				activeFunc = null;
+				try {
+				    block(body);
+				} catch (ReturnException e) {
+				    return true;
+				} finally {
+				    activeFunc = caller;
+				}
+				return false;
+			    }
+			};
+		}
+	    };
+    }
+
+    // Graph and concept literals are parsed once and the result cached
+    // in the literal's node, each evaluation yielding a copy. A parse
+    // depends upon the type hierarchies and the graph parser, so these
+    // form the cache key.
+    private Object[] literalKey() {
+	KBase kb = kbases.peek();
+	return new Object[] { 
+	    kb.getConceptLattice(), 
+	    new Integer(kb.getConceptLattice().getVersion()),
+	    kb.getRelationLattice(), 
+	    new Integer(kb.getRelationLattice().getVersion()),
+	    context.getCGIFParserOpt()
+	};
+    }
+
+    // Create a scope for the execution of a function body, with the
+    // slot layout determined for it by the NameResolver if there is one.
+    private Scope newScope(AST body) {
+	if (body instanceof CGPAST && ((CGPAST)body).getLayout() != null) {
+	    return new Scope(((CGPAST)body).getLayout());
 	}
+	return new Scope();
+    }
+
+    // Look up the value of a variable, using the resolution of its
+    // name by the NameResolver where there is one.
+    private Type lookup(AST id) {
+	if (id instanceof CGPAST) {
+	    CGPAST name = (CGPAST)id;
+	    int slot = name.getSlot();
+	    if (slot >= 0) {
+		return scopes.findLocal(id.getText(), name.getLayout(), slot);
+	    } else if (slot == CGPAST.GLOBAL) {
+		return scopes.findGlobal(id.getText());
+	    }
+	}
+	return scopes.find(id.getText());
+    }
+
+    // Define a variable in the innermost scope.
+    private void define(AST id, Type value) {
+	Scope top = scopes.peek();
+	if (id instanceof CGPAST) {
+	    CGPAST name = (CGPAST)id;
+	    if (name.getSlot() >= 0 && top.getLayout() == name.getLayout()) {
+		top.setSlot(name.getSlot(), value);
+		return;
+	    }
+	}
+	top.def(id.getText(), value);
+    }
+
+    // Attribute access, attribute assignment and member function calls
+    // look up the method to invoke in the dispatch table of the object's
+    // class, unless the name node records the method last invoked through
+    // it on an object of the same class.
+    private Type getAttr(Type obj, AST name) {
+	Class receiverClass = obj.getClass();
+	MemberHandle getter = null;
+	if (name instanceof CGPAST) {
+	    getter = ((CGPAST)name).getTarget(receiverClass);
+	}
+	if (getter == null) {
+	    getter = DispatchTable.forClass(receiverClass).
+		getGetter(name.getText());
+	    if (getter != null && name instanceof CGPAST) {
+		((CGPAST)name).setTarget(receiverClass, getter);
+	    }
+	}
+	return obj.getAttr(name.getText(), getter);
+    }
+
+    private void setAttr(Type obj, AST name, Type value) {
+	Class receiverClass = obj.getClass();
+	MemberHandle setter = null;
+	if (name instanceof CGPAST) {
+	    setter = ((CGPAST)name).getTarget(receiverClass);
+	}
+	if (setter == null) {
+	    setter = DispatchTable.forClass(receiverClass).
+		getSetter(name.getText());
+	    if (setter != null && name instanceof CGPAST) {
+		((CGPAST)name).setTarget(receiverClass, setter);
+	    }
+	}
+	obj.setAttr(name.getText(), setter, value);
+    }
+
+    // Since member functions may be overloaded, the recorded method is 
+    // only used if the actual parameters may be passed to it.
+    private Type invokeMemberFunc(Type obj, AST name, Object[] actuals) {
+	Class receiverClass = obj.getClass();
+	MemberHandle method = null;
+	if (name instanceof CGPAST) {
+	    method = ((CGPAST)name).getTarget(receiverClass);
+	    if (method != null && !DispatchTable.isApplicable(method, actuals)) {
+		method = null;
+	    }
+	}
+	if (method == null) {
+	    method = DispatchTable.forClass(receiverClass).
+		getMemberFunc(name.getText(), actuals);
+	    if (method != null && name instanceof CGPAST) {
+		((CGPAST)name).setTarget(receiverClass, method);
+	    }
+	}
+	return obj.invokeMemberFunc(name.getText(), method, actuals);
+    }
+
+    private GraphType graphLiteral(AST node) {
+	if (!(node instanceof CGPAST)) {
+	    return new GraphType(node.getText());
+	}
+	Object[] key = literalKey();
+	GraphType template = (GraphType)((CGPAST)node).getCachedValue(key);
+	if (template == null) {
+	    template = new GraphType(node.getText());
+	    ((CGPAST)node).setCachedValue(key, template);
+	}
+	return new GraphType(template.getValue());
+    }
+
+    // Return a matching network for the process's rules, to be matched
+    // against the specified KB. Those rules whose preconditions are all
+    // graph literals without actors are compiled into the network, once
+    // for the process unless the types or graph parser change. The first
+    // rule is left out if there are condition parameters since they form
+    // part of its precondition.
+    private RuleNetwork ruleNetwork(ProcessType process, 
+				    boolean hasConditions, KBase theKBase) 
+	throws RecognitionException {
+	Object[] literals = literalKey();
+	Object[] key = new Object[literals.length+1];
+	System.arraycopy(literals, 0, key, 0, literals.length);
+	key[literals.length] = new Boolean(hasConditions);
+
+	RuleNetwork compiled = process.getRuleNetwork(key);
+	if (compiled == null) {
+	    Rule[] rules = process.getRules();
+	    compiled = new RuleNetwork(rules.length);
+	    for (int i=hasConditions ? 1 : 0;i<rules.length;i++) {
+		AST[] preconditions = rules[i].getMatchExpressions();
+		GraphType[] graphs = new GraphType[preconditions.length];
+		boolean[] negations = new boolean[preconditions.length];
+		boolean compilable = true;
+		for (int j=0;j<preconditions.length && compilable;j++) {
+		    AST e = preconditions[j].getFirstChild();
+		    compilable = e != null && e.getType() == GRAPH_LITERAL;
+		    if (compilable) {
+			graphs[j] = 
+			    (GraphType)matchExpression(preconditions[j]);
+			negations[j] = rules[i].getMatchGraphNegation(j);
+			compilable = !graphs[j].containsActorNodes();
+		    }
+		}
+		if (compilable) {
+		    compiled.compileRule(i, graphs, negations);
+		}
+	    }
+	    process.setRuleNetwork(key, compiled);
+	}
+
+	RuleNetwork network = new RuleNetwork(compiled, theKBase);
+	network.start();
+	return network;
+    }
+
+    // Create an interpreter for use by another thread, with scope 
+    // and KB stacks holding the same scopes and KBs as this one's.
+    private CGPInterpreter fork() {
+	CGPInterpreter worker = new CGPInterpreter(args, tree, context.fork());
+	worker.trace = trace;
+	worker.scopes = worker.context.getScopeStack();
+	worker.topLevelScope = topLevelScope;
+	worker.kbases = worker.context.getKBStack();
+	worker.topLevelKBase = topLevelKBase;
+	return worker;
+    }
+
+    private static String subActorName(SubActorInfo info) {
+	if (info.executor instanceof FunctionType) {
+	    return ((FunctionType)info.executor).getId();
+	} else {
+	    return ((ActorType)info.executor).getId();
+	}
+    }
+
+    // Sub-actors in a batch are in conflict if one outputs to a concept
+    // which another outputs to or takes as input, since the outcome 
+    // would then depend upon the order of their execution.
+    private void checkConflicts(ActorType actor, SubActorInfo[] batch)
+	throws SemanticException {
+	HashMap writers = new HashMap(); // Concept -> SubActorInfo
+	for (int i=0;i<batch.length;i++) {
+	    for (int j=0;j<batch[i].outArgs.size();j++) {
+		Concept c = ((ConceptType)batch[i].outArgs.get(j)).getValue();
+		SubActorInfo other = (SubActorInfo)writers.put(c, batch[i]);
+		if (other != null && other != batch[i]) {
+		    String msg = "sub-actors '" + subActorName(other) + 
+			"' and '" + subActorName(batch[i]) + "' in actor '" +
+			actor.getId() + "' both output to " + 
+			new ConceptType(c) + ".";
+		    throw new SemanticException(msg);
+		}
+	    }
+	}
+	for (int i=0;i<batch.length;i++) {
+	    for (int j=0;j<batch[i].inArgs.size();j++) {
+		Concept c = ((ConceptType)batch[i].inArgs.get(j)).getValue();
+		SubActorInfo other = (SubActorInfo)writers.get(c);
+		if (other != null && other != batch[i]) {
+		    String msg = "sub-actor '" + subActorName(other) + 
+			"' in actor '" + actor.getId() + "' outputs to " +
+			new ConceptType(c) + " while '" + 
+			subActorName(batch[i]) + "' takes it as input.";
+		    throw new SemanticException(msg);
+		}
+	    }
+	}
+    }
+
+    // Execute those sub-actors of a batch not yet claimed by another
+    // thread, recording how many have finished and any failures.
+    private void runClaimedSubActors(ActorType actor, SubActorInfo[] batch,
+				     int[] progress, Throwable[] failures) {
+	while (true) {
+	    int i;
+	    synchronized (progress) {
+		i = progress[0]++;
+	    }
+	    if (i >= batch.length) {
+		break;
+	    }
+	    try {
+		runSubActor(null, actor, batch[i]);
+	    } catch (Throwable e) {
+		failures[i] = e;
+	    }
+	    synchronized (progress) {
+		progress[1]++;
+		progress.notifyAll();
+	    }
+	}
+    }
+
+    // Execute a batch of sub-actors, none of which depends upon another 
+    // for input, with the help of the workers shared by all runs (see
+    // InterpreterContext.getWorkers()). Each worker has its own 
+    // interpreter whose stacks are forks of this one's, so the scopes
+    // and KBs below the sub-actors' own are shared. Sub-actors must
+    // therefore not change these, as for any sub-actor execution (see
+    // ActorType.getNextSubActor()). This thread executes sub-actors of
+    // the batch too, so the batch is finished even if every worker is
+    // busy, e.g. with the batch of an enclosing actor. All have finished
+    // before this returns. If any fail, the exception of the first in 
+    // the batch to do so is thrown.
+    private void runSubActors(final ActorType actor, 
+			      final SubActorInfo[] batch)
+	throws RecognitionException {
+	checkConflicts(actor, batch);
+
+	if (batch.length == 1) {
+	    runSubActor(null, actor, batch[0]);
+	    return;
+	}
+
+	final Throwable[] failures = new Throwable[batch.length];
+	final int[] progress = { 0, 0 }; // next to claim, number finished
+	int numWorkers = Math.min(batch.length,
+				  InterpreterContext.getWorkerCount()) - 1;
+	for (int t=0;t<numWorkers;t++) {
+	    final CGPInterpreter worker = fork();
+	    InterpreterContext.getWorkers().execute(new Runnable() {
+		    public void run() {
+			worker.context.setFunctionCaller(
+					     worker.functionCaller());
+			Type.setContext(worker.context);
+			try {
+			    worker.runClaimedSubActors(actor, batch,
+						       progress, failures);
+			} finally {
+			    Type.setContext(null);
+			}
+		    }
+		});
+	}
+	runClaimedSubActors(actor, batch, progress, failures);
+
+	synchronized (progress) {
+	    while (progress[1] < batch.length) {
+		try {
+		    progress.wait();
+		} catch (InterruptedException e) {
+		    String msg = "interrupted while executing sub-actors.";
+		    throw new SemanticException(msg);
+		}
+	    }
+	}
+
+	for (int i=0;i<batch.length;i++) {
+	    Throwable e = failures[i];
+	    if (e instanceof RecognitionException) {
+		throw (RecognitionException)e;
+	    } else if (e instanceof RuntimeException) {
+		throw (RuntimeException)e;
+	    } else if (e instanceof Error) {
+		throw (Error)e;
+	    }
+	}
+    }
+
+    private ConceptType conceptLiteral(AST node) {
+	if (!(node instanceof CGPAST)) {
+	    return new ConceptType(node.getText());
+	}
+	Object[] key = literalKey();
+	ConceptType template = (ConceptType)((CGPAST)node).getCachedValue(key);
+	if (template == null) {
+	    template = new ConceptType(node.getText());
+	    ((CGPAST)node).setCachedValue(key, template);
+	}
+	return template.copy();
+    }
+}
+
+// ---------------------------------------------------------------------
+
+program
+{
+    initialise(_t);
 }
 	  :	( topLevelStatement )*
           ;
@@ -166,17 +575,26 @@ optionStatement
 		 {
 		    theOpt = opt.getText();
 		    if (theOpt.toUpperCase().equals("LFOUT")) {
-			    CGP.LFOpt = true;
+			    context.setLFOpt(true);
 			} else if (theOpt.toUpperCase().equals("TRACE")) {
-			    CGP.setTraceMode(true);
+			    context.setTraceMode(true);
 				trace = true;
-				System.out.println("TRACE: " + tree.toStringList());
+				context.getOut().println("TRACE: " + tree.toStringList());
 			} else if (theOpt.toUpperCase().equals("CGIFPARSER")) {
 				// The option we're dealing with sets the CGIF parser.
 				CGIFParserOption = true;
 			} else if (theOpt.toUpperCase().equals("CGIFGEN")) {
 				// The option we're dealing with sets the CGIF generator.
 				CGIFGenOption = true;
+			} else if (theOpt.toUpperCase().equals("INCREMENTAL")) {
+				// Match process rules incrementally.
+				context.setIncrementalOpt(true);
+			} else if (theOpt.toUpperCase().equals("PARALLELACTORS")) {
+				// Execute independent sub-actors concurrently.
+				context.setParallelActorsOpt(true);
+			} else if (theOpt.toUpperCase().equals("MEMOACTORS")) {
+				// Cache the results of all actors.
+				context.setMemoActorsOpt(true);
 			} else {
 				String msg = "'" + theOpt + "' is an unknown option.";
 				throw new SemanticException(msg);
@@ -189,11 +607,11 @@ optionStatement
 		    if (CGIFParserOption) {
 				// Set the CGIF parser to something other than the
 			    // default Notio CGIF parser.
-			    CGP.CGIFParserOpt = str.getText();
+			    context.setCGIFParserOpt(str.getText());
             } else if (CGIFGenOption) {
 				// Set the CGIF generator to something other than the
 			    // default Notio CGIF generator.
-			    CGP.CGIFGenOpt = str.getText();
+			    context.setCGIFGenOpt(str.getText());
             } else {
 			    String msg = "'" + theOpt + "' option does not take the ";
 				msg += "form of a name-value pair.";
@@ -266,17 +684,22 @@ nodeKind  :     "concept" | "relation"
 funDef	  
 {
     LinkedList formals = new LinkedList();
+    boolean memo = false;
 }
 	  :	#(FUN_DEF name:IDENT 
 		( arg:IDENT
 		  { formals.add(new FormalParameter(arg.getText())); }
 		)*
 		b:BLOCK
+		( MEMO { memo = true; } )?
 		{
 		    FunctionType func = new FunctionType(name.getText(),
 			     	      	    (FormalParameter[])formals.
 					      toArray(new FormalParameter[0]),
 			     	      	     b);
+		    if (memo) {
+			func = func.memoized();
+		    }
 		    scopes.peek().def(name.getText(), func);
 		})
 	  ;
@@ -377,7 +800,7 @@ processDef
     LinkedList exportGraphOptList = null;
     LinkedList mutateKBList = null;
 }
-	  :	#(PROCESS_DEF processName:IDENT
+	  :	#(pd:PROCESS_DEF processName:IDENT
 		// Parameter list.
 		(
 		 argKind:processParamKind arg:IDENT
@@ -518,11 +941,16 @@ processDef
 
 	         {
 		     ProcessType process;
+		     SlotLayout layout = null;
+		     if (pd instanceof CGPAST) {
+			 layout = ((CGPAST)pd).getLayout();
+		     }
 		     process = new ProcessType(processName.getText(),
 				   (FormalParameter[])formals.
 				    toArray(new FormalParameter[0]),
 				   initialBlock,
-				   (Rule[])rules.toArray(new Rule[0]));
+				   (Rule[])rules.toArray(new Rule[0]),
+				   layout);
 		     scopes.peek().def(processName.getText(), process);
 		 })
 	  ;
@@ -553,15 +981,15 @@ intrinsicStatement
     int exitCode = 0;
 }
 	  :	#("print" a=expr)
-		{ System.out.print(a); }
+		{ context.getOut().print(a); }
 
 	  |	#("println" a=expr)
-		{ System.out.println(a); }
+		{ context.getOut().println(a); }
 
 	  |	#("return" ( a=expr { scopes.peek().setReturnValue(a); } )?
 		{ 
 		    if (scopes.depth() > 1) {
-			throw new ReturnException(); 
+			throw ReturnException.signal; 
 		    } else {
 			String msg = "return can only be invoked from ";
 			msg += "within a function, actor, or process.";
@@ -579,7 +1007,7 @@ intrinsicStatement
 			// non-zero value to indicate error to caller, 
 			// e.g. shell.
 			String msg = ((StringType)a).getValue();
-			System.err.println(msg);
+			context.getErr().println(msg);
 			exitCode = 1;
 		    } else {
 			String msg = "exit value must be a number or string.";
@@ -587,10 +1015,10 @@ intrinsicStatement
 		    }
 		})?
                 {
-		    System.exit(exitCode);
+		    throw new ExitException(exitCode);
 		})
 
-          |     #("last" { throw new LastException(); })
+          |     #("last" { throw LastException.signal; })
 
           |     #("system" a=expr { systemStatement(_t, a); })
 
@@ -649,7 +1077,7 @@ funApply [Type a, Type b] returns [Type r]
     if (a instanceof FunctionType && b instanceof ListType) {
 	FunctionType f = (FunctionType)a;
 	ListType actuals = (ListType)b;
-	r = funCall(_t, f, actuals.getValue());
+	r = funCall(_t, f, new LinkedList(actuals.asList()));
     } else {
 	String msg = "function and argument list" +
 	" expected, " + a.getType() + 
@@ -717,11 +1145,10 @@ foreachStatement
 	  : #(FOREACH_STATEMENT id:IDENT a=expr b:BLOCK
 	    {
 		if (a instanceof ListType) {
-		    String var = id.getText();
-		    List list = ((ListType)a).getValue();
+		    ListType list = (ListType)a;
 		    for (int i=0;i<list.size() && !done;i++) {
-			Type x = (Type)list.get(i);
-			scopes.peek().def(var, x);
+			Type x = list.get(i);
+			define(id, x);
 			try {
 			    block(b);
 			} catch (LastException e) {
@@ -753,7 +1180,7 @@ memberFunCall
     Type obj = UndefinedType.undefined;
 }
 	  :	#(MEMBER_FUNCALL obj=expr name:IDENT args=actualArgs)
-		{ obj.invokeMemberFunc(name.getText(), args.toArray()); }
+		{ invokeMemberFunc(obj, name, args.toArray()); }
 	  ;
 
 // This rule caters for the invocation of user defined functions, actors,
@@ -774,6 +1201,17 @@ call returns [Type r]
 		    } else if (obj instanceof LambdaType) {
 			// re: use of #ast see generated Java code!
 			r = lambdaCall(#ast, obj, args); 
+		    } else if (obj == activeFunc && 
+			       ((CGPAST)#ast).isTailCall() &&
+			       args.size() == activeFunc.getFormals().length) {
+			// Rebind the parameters and let funCall execute
+			// the body again in the same scope.
+			FormalParameter[] formals = activeFunc.getFormals();
+			for (int i=0;i<formals.length;i++) {
+			    activeLocals.def(formals[i].getName(), 
+					     (Type)args.removeFirst());
+			}
+			throw TailCallException.signal;
 		    } else if (obj instanceof FunctionType) {
 			// re: use of #ast see generated Java code!
 			r = funCall(#ast, obj, args); 
@@ -806,11 +1244,25 @@ funCall[Type obj, LinkedList args] returns [Type r]
     // Get formal and actual parameter lists.
     formals = func.getFormals();
     actuals = (Type[])args.toArray(actuals);
+
+    // If the function is memoized, its result may have been cached by
+    // a previous call with the same actual parameters.
+    MemoCache memo = func.memoCache();
+    Type[] cached = null;
+    if (memo != null && formals.length == actuals.length) {
+	cached = memo.lookup(actuals);
+    }
     	
-	// Proceed if there's no parameter length mismatch.
-    if (formals.length == actuals.length) {
+    if (cached != null) {
+	if (trace) {
+	    context.getOut().println("TRACE: Using cached result of function \"" +
+				     func.getId() + "\"");
+	}
+	r = cached[0];
+    } else if (formals.length == actuals.length) {
+	// Proceed since there's no parameter length mismatch.
 	    // Bind formal parameters to actuals in new scope. May be 0.
-		Scope locals = scopes.push(new Scope());
+		Scope locals = scopes.push(newScope(func.getCode()));
 		for (int i=0;i<formals.length;i++) {
 			locals.def(formals[i].getName(), actuals[i]);
 		}	
@@ -838,14 +1290,33 @@ funCall[Type obj, LinkedList args] returns [Type r]
 		}
 		
 		// Evaluate the body of the function, handling
-		// a return statement by catching an exception.
-		try {				    	
-			block(func.getCode());
-		} catch(ReturnException e) {
-			// Can get return value here or below.
-			// Makes more sense here since r is 
-			// otherwise undefined.
-			r = scopes.peek().getReturnValue();
+		// a return statement by catching an exception. A
+		// tail call of the function itself has rebound the
+		// parameters, so the body is simply evaluated again.
+		FunctionType caller = activeFunc;
+		Scope callerLocals = activeLocals;
+		activeFunc = func;
+		activeLocals = locals;
+		try {
+			boolean done = false;
+			while (!done) {
+				try {
+					block(func.getCode());
+					done = true;
+				} catch(ReturnException e) {
+					// Can get return value here or below.
+					// Makes more sense here since r is 
+					// otherwise undefined.
+					r = scopes.peek().getReturnValue();
+					done = true;
+				} catch(TailCallException e) {
+					scopes.peek().setReturnValue(
+						UndefinedType.undefined);
+				}
+			}
+		} finally {
+			activeFunc = caller;
+			activeLocals = callerLocals;
 		}
 		
 		// Did we push an envionment above?
@@ -855,6 +1326,10 @@ funCall[Type obj, LinkedList args] returns [Type r]
 
 		// Pop function's local scope.
 		scopes.pop();   
+
+		if (memo != null) {
+			memo.store(actuals, new Type[] { r });
+		}
     } else {
 		String msg = "parameter list length mismatch";
 		throw new SemanticException(msg);
@@ -863,7 +1338,18 @@ funCall[Type obj, LinkedList args] returns [Type r]
 	  ;
 
 /**
- * Mutate a copy of an actor's defining graph by executing its sub-actors.
+ * Execute an actor, returning the resulting graph, i.e. a copy of the
+ * actor's defining graph as mutated by its sub-actors. See activateActor().
+ */
+actorCall[Type obj, LinkedList args, boolean bindSinkToSource] returns [Type r]
+{
+    r = activateActor(_t, obj, args, bindSinkToSource, false).getBody();
+}         :
+	  ;
+
+/**
+ * Bind the concepts of an activation of an actor by executing its 
+ * sub-actors, returning the activation.
  *
  * A sub-actor cannot execute until all its input concept referents
  * are bound. A sub-actor is either a user-defined pCG function or
@@ -874,12 +1360,11 @@ funCall[Type obj, LinkedList args] returns [Type r]
  *
  * User-defined functions are passed input and output concepts.  
  */
-actorCall[Type obj, LinkedList args, boolean bindSinkToSource] returns [Type r]
+activateActor[Type obj, LinkedList args, boolean bindSinkToSource,
+	      boolean sinksOnly] returns [ActorType actor]
 {
-    FormalParameter[] formals = null;
     Type[] actuals = new Type[0];
-    ActorType actor = (ActorType)obj; // precondition: obj is an actor
-    r = UndefinedType.undefined;
+    actor = (ActorType)obj; // precondition: obj is an actor
 
     // Get actual parameter list.
     //
@@ -906,8 +1391,8 @@ actorCall[Type obj, LinkedList args, boolean bindSinkToSource] returns [Type r]
     // is assumed, anonymous recursive actors cannot be fully
     // implemented.
     if (actor.getFormals().length == actuals.length || bindSinkToSource) {
-	// Make a copy of the defining graph.
-	actor = (ActorType)actor.copy();
+	// Activate the actor, leaving the defining graph unchanged.
+	actor = actor.activate();
 
 	// Bind actuals by source concept designator formal names 
 	// or by source concept ordering?
@@ -929,7 +1414,7 @@ actorCall[Type obj, LinkedList args, boolean bindSinkToSource] returns [Type r]
 	// Should this be extended to unbound sink concepts after
 	// actor activation? No, since this means that an actor failed
 	// to generate a result!
-	ConceptType[] sources = ActorType.getSources(actor.getBody());
+	ConceptType[] sources = actor.sourceBindings();
 	for (int i=0;i<sources.length;i++) {
 	    if (sources[i].hasVarDesignator()) {
 		String name =
@@ -941,106 +1426,32 @@ actorCall[Type obj, LinkedList args, boolean bindSinkToSource] returns [Type r]
 	    }
 	}
 
-	// Invoke the actor and each of its subactors.
-	actor.initActorExecution();
-	while (actor.isExecutable()) {
-	    SubActorInfo info = actor.getNextSubActor();
-	    if (info == null) {
-		// There are sub-actors on the run-list but none 
-		// is ready for execution, so stop and return what
-		// we have.
-		break;
+	// If the actor is memoized and only its sink values are 
+	// needed, these may have been cached by a previous activation
+	// with the same source values. If not, they are cached for
+	// later activations.
+	MemoCache memo = actor.memoCache();
+	Type[] sourceValues = null;
+	Type[] sinkValues = null;
+	if (memo != null) {
+	    sourceValues = actor.sourceValues();
+	    if (sinksOnly) {
+		sinkValues = memo.lookup(sourceValues);
 	    }
-	    
+	}
+
+	if (sinkValues != null) {
 	    if (trace) {
-		System.out.println("TRACE: Invoking sub-actor \"" + info +
-				   "\" in actor \"" + actor.getId() 
-				   + "\"");
-		
-		ConceptType[] concepts = ActorType.getSinks(actor.
-							    getBody());
+		context.getOut().println("TRACE: Using cached result of actor \"" +
+					 actor.getId() + "\"");
 	    }
-	    
-	    if (info.executor instanceof FunctionType) {
-		// Invoke a function, mutating the graph of the 
-		// executor as a result.
-		LinkedList funArgs = new LinkedList();
-		funArgs.addAll(info.inArgs);
-		funArgs.addAll(info.outArgs);
-		funCall(_t, info.executor, funArgs); // _t unused; see src
-	    } else if (info.executor instanceof ActorType) {
-		// Get designators from info.inArgs to give input args.
-		// It is a precondition that each inArgs member is of type
-		// ConceptType. We'll pass Type values to the actor.
-		LinkedList actorArgs = new LinkedList();
-		for (int i=0;i<info.inArgs.size();i++) {
-		    ConceptType input = (ConceptType)info.inArgs.get(i);
-		    actorArgs.add(input.getDesignatorValue());
-		}
-		// Invoke actor with input args.
-		// _t (same as #ast in call?) is unused. 
-		// See source generated by ANTLR.
-		// Note that a copy of the defining graph will be
-		// made upon this recursive call.
-
-		// Is this a recursive anonymous actor? If so, tell
-		// actorCall() to directly bind actuals to source concept 
-		// designators instead of binding by name.
-		ActorType subActor = (ActorType)info.executor;
-		boolean sinkToSource = false;
-		if (subActor.isAnonymous() && info.isSelfReferential) {
-		    sinkToSource = true;
-		}
-		GraphType g;
-		try {
-		    g = (GraphType)actorCall(_t, subActor, actorArgs,
-					     sinkToSource);
-		} catch (ClassCastException e) {
-		    String msg = "sub-actor '" + subActor.getId() + 
-			"' returned an undefined value.";
-		    throw new SemanticException(msg);
-		}
-		
-		// Get sink concepts from resulting graph which is a
-		// copy of the original sub-actor's graph. The reason for
-		// obtaining output concepts via getSinks() here is that
-		// the graph may be arbitrarily complex, consisting of
-		// nested sub-actors. Contrast the use of getSinks() with
-		// ActorType.getNextSubActor().
-		ConceptType[] sinks = ActorType.getSinks(g);
-		
-		// Set corresponding output concepts in info.outArgs
-		// assuming the same ordering of output as sink concepts.
-		// We *ought* to check the type compatability of the 
-		// corresponding concept types. At least check the number
-		// of arguments.
-		if (sinks.length != info.outArgs.size()) {
-		    String msg = "caller actor '" + actor.getId() + 
-			"' and callee sub-actor '" + actor.getId() +
-			"' differ in output parameter list lengths.";
-		    throw new SemanticException(msg);
-		} else {
-		    for (int i=0;i<sinks.length;i++) {
-			ConceptType output = (ConceptType)info.
-			    outArgs.get(i);
-			output.setDesignatorValue(sinks[i].
-						  getDesignatorValue());
-		    }
-		}
-		
-		// Set the resulting graph to be the output of this
-		// sub-actor invocation, since this now contains the 
-		// appropriately mutated concepts. NO! We want the
-		// values of the sinks in the returned copied graph!
-		//actor = subActor;
-	    } else {
-		String msg = "a sub-actor must be a function or actor";
-		throw new SemanticException(msg);
+	    actor.bindSinkValues(sinkValues);
+	} else {
+	    executeActor(_t, actor);
+	    if (memo != null) {
+		memo.store(sourceValues, actor.sinkValues());
 	    }
 	}
-	
-	// Return the mutated graph copy.
-	r = actor.getBody();
     } else {
 	String msg = "parameter list length mismatch";
 	throw new SemanticException(msg);
@@ -1048,6 +1459,120 @@ actorCall[Type obj, LinkedList args, boolean bindSinkToSource] returns [Type r]
 }         :
 	  ;
 
+/**
+ * Execute the sub-actors of an activation of an actor.
+ */
+executeActor[ActorType actor]
+{
+    // Invoke the actor and each of its subactors.
+    actor.initActorExecution();
+    while (actor.isExecutable()) {
+	if (context.getParallelActorsOpt()) {
+	    // Execute all ready sub-actors at once.
+	    SubActorInfo[] batch = actor.getReadySubActors();
+	    if (batch.length == 0) {
+		break;
+	    }
+	    runSubActors(actor, batch);
+	    continue;
+	}
+
+	SubActorInfo info = actor.getNextSubActor();
+	if (info == null) {
+	    // There are sub-actors on the run-list but none 
+	    // is ready for execution, so stop and return what
+	    // we have.
+	    break;
+	}
+	
+	runSubActor(_t, actor, info);
+    }
+}         :
+	  ;
+
+/**
+ * Execute a single sub-actor of an actor, binding its output concepts.
+ */
+runSubActor[ActorType actor, SubActorInfo info]
+{
+    if (trace) {
+	context.getOut().println("TRACE: Invoking sub-actor \"" + info +
+				 "\" in actor \"" + actor.getId() 
+				 + "\"");
+    }
+    
+    if (info.executor instanceof FunctionType) {
+	// Invoke a function, mutating the graph of the 
+	// executor as a result.
+	LinkedList funArgs = new LinkedList();
+	funArgs.addAll(info.inArgs);
+	funArgs.addAll(info.outArgs);
+	funCall(_t, info.executor, funArgs); // _t unused; see src
+    } else if (info.executor instanceof ActorType) {
+	// Get designators from info.inArgs to give input args.
+	// It is a precondition that each inArgs member is of type
+	// ConceptType. We'll pass Type values to the actor.
+	LinkedList actorArgs = new LinkedList();
+	for (int i=0;i<info.inArgs.size();i++) {
+	    ConceptType input = (ConceptType)info.inArgs.get(i);
+	    actorArgs.add(input.getDesignatorValue());
+	}
+	// Invoke actor with input args.
+	// _t (same as #ast in call?) is unused. 
+	// See source generated by ANTLR.
+	// Note that a new activation of the actor will be
+	// made upon this recursive call.
+
+	// Is this a recursive anonymous actor? If so, tell
+	// actorCall() to directly bind actuals to source concept 
+	// designators instead of binding by name.
+	ActorType subActor = (ActorType)info.executor;
+	boolean sinkToSource = false;
+	if (subActor.isAnonymous() && info.isSelfReferential) {
+	    sinkToSource = true;
+	}
+	ActorType activation = activateActor(_t, subActor, actorArgs,
+					     sinkToSource, true);
+	
+	// Get sink concepts from the sub-actor's activation. Only
+	// their values are needed, so no resulting graph is made.
+	// The reason for obtaining output concepts via the sinks
+	// here is that the graph may be arbitrarily complex, 
+	// consisting of nested sub-actors. Contrast the use of 
+	// sinkBindings() with ActorType.getNextSubActor().
+	ConceptType[] sinks = activation.sinkBindings();
+	
+	// Set corresponding output concepts in info.outArgs
+	// assuming the same ordering of output as sink concepts.
+	// We *ought* to check the type compatability of the 
+	// corresponding concept types. At least check the number
+	// of arguments.
+	if (sinks.length != info.outArgs.size()) {
+	    String msg = "caller actor '" + actor.getId() + 
+		"' and callee sub-actor '" + actor.getId() +
+		"' differ in output parameter list lengths.";
+	    throw new SemanticException(msg);
+	} else {
+	    for (int i=0;i<sinks.length;i++) {
+		ConceptType output = (ConceptType)info.
+		    outArgs.get(i);
+		output.setDesignatorValue(sinks[i].
+					  getDesignatorValue());
+	    }
+	}
+	
+	// Set the resulting graph to be the output of this
+	// sub-actor invocation, since this now contains the 
+	// appropriately mutated concepts. NO! We want the
+	// values of the sinks in the returned copied graph!
+	//actor = subActor;
+    } else {
+	String msg = "a sub-actor must be a function or actor";
+	throw new SemanticException(msg);
+    }
+}         :
+	  ;
+
 /**
  * Return a graph with name designators replaced by literal 
  * values or markers.
@@ -1105,232 +1630,270 @@ processCall[Type obj, LinkedList args] returns [Type r]
 	// graphs asserted previously, but does not pollute earlier
 	// KBs, as per Mineau's suggestion that the operations
 	// of a process should be local in scope.
-	Scope locals = scopes.push(new Scope());
-	KBase callerKBase = kbases.peek(); // in case option export enabled
-	KBase theKBase = kbases.push(new KBase(kbases.peek()));
+	//
+	// The new KB is an overlay of the caller's, so its creation
+	// cost does not depend upon the size of the latter. Exported
+	// assertions and retractions are deferred until the process
+	// exits, so the caller's KB is unchanged while it is overlaid.
+	SlotLayout layout = process.getLayout();
+	Scope locals = scopes.push(layout != null ? new Scope(layout) :
+				                    new Scope());
+	KBase theKBase = kbases.push(new KBase(kbases.peek(), true));
+
+	// The process scope and KB are unwound however the process
+	// ends, since the interpreter's stacks may be reused by a long
+	// running engine. Exported assertions and retractions are only
+	// committed to the caller's KB if the process completes or
+	// returns; if an error escapes, they are discarded along with
+	// the process's KB so that the caller never sees a partial
+	// set of changes.
+	RuleNetwork network = null;
+	boolean exitRuleReached = false;
+	KBase processKB = null;
 
-	// Define a "me" parameter which refers to this process.
-	locals.def("me", process);
+	try {
+	    // Define a "me" parameter which refers to this process.
+	    locals.def("me", process);
 	
-	// Handle actual parameters according to whether
-	// the corresponding formal parameter is an input,
-	// output, or trigger. All must be contexts, i.e
-	// concepts with descriptor graphs as referents.
-	//
-	// Permitted "in" parameter concept types are: Proposition
-	// and Condition, and permitted "out" parameter concept 
-	// types are Proposition and Erasure. A major motivation for
-	// requiring parameters to be concepts is that (apart from Mineau's
-	// suggested usage) this is how they will appear in CGs anyway!
-	LinkedList inP = new LinkedList();
-	LinkedList assertP = new LinkedList();
-	LinkedList retractP = new LinkedList();
-	for (int i=0;i<formals.length;i++) {
-	    if (actuals[i] instanceof ConceptType) {
-		ConceptType p = (ConceptType)actuals[i];
-		if (!p.isContext().getValue()) {
+	    // Handle actual parameters according to whether
+	    // the corresponding formal parameter is an input,
+	    // output, or trigger. All must be contexts, i.e
+	    // concepts with descriptor graphs as referents.
+	    //
+	    // Permitted "in" parameter concept types are: Proposition
+	    // and Condition, and permitted "out" parameter concept 
+	    // types are Proposition and Erasure. A major motivation for
+	    // requiring parameters to be concepts is that (apart from Mineau's
+	    // suggested usage) this is how they will appear in CGs anyway!
+	    LinkedList inP = new LinkedList();
+	    LinkedList assertP = new LinkedList();
+	    LinkedList retractP = new LinkedList();
+	    for (int i=0;i<formals.length;i++) {
+		if (actuals[i] instanceof ConceptType) {
+		    ConceptType p = (ConceptType)actuals[i];
+		    if (!p.isContext().getValue()) {
+			String msg = "parameters to a process must be contexts.";
+			throw new SemanticException(msg);		
+		    }
+
+		    // What is the context's type? Ignore its case.
+		    String contextType = p.getLabel().getValue().toUpperCase();
+
+		    // We know that a descriptor exists, so obtain it.
+		    // This is the graph we're actually interested in.
+		    GraphType pDesc = (GraphType)p.getDescriptor();
+		
+		    if (formals[i].isIn()) {
+			if (contextType.equals("PROPOSITION")) {
+			    // Assert a trigger graph in this process's KB.
+			    theKBase.assertGraph(pDesc);
+			} else if (contextType.equals("CONDITION")) {
+			    // Collect graph for use in first rule's precondition.
+			    inP.add(pDesc);
+			} else {
+			    String msg = "process 'in' parameters must be " +
+				"contexts of type PROPOSITION or CONDITION.";
+			    throw new SemanticException(msg);
+			}
+		    } else if (formals[i].isOut()) {
+			if (contextType.equals("PROPOSITION")) {
+			    // Collect graph for use in last rule's postcondition.
+			    assertP.add(pDesc);
+			} else if (contextType.equals("ERASURE")) {
+			    // Collect graph for use in last rule's postcondition.
+			    //
+			    // Note: according to dpANS, this should really be:
+			    //
+			    //  (neg)->[ ... ] or ~[ ... ] 
+			    retractP.add(pDesc);
+			} else {
+			    String msg = "process 'out' parameters must be " +
+				"contexts of type PROPOSITION or ERASURE.";
+			    throw new SemanticException(msg);
+			}
+		    }
+		} else {
 		    String msg = "parameters to a process must be contexts.";
 		    throw new SemanticException(msg);		
 		}
+	    }	
 
-		// What is the context's type? Ignore its case.
-		String contextType = p.getLabel().getValue().toUpperCase();
+	    // Make in and out parameters (except triggers) available as arrays.
+	    preParams = (GraphType[])inP.toArray(new GraphType[0]);
+	    assertParams = (GraphType[])assertP.toArray(new GraphType[0]);
+	    retractParams = (GraphType[])retractP.toArray(new GraphType[0]);
 
-		// We know that a descriptor exists, so obtain it.
-		// This is the graph we're actually interested in.
-		GraphType pDesc = (GraphType)p.getDescriptor();
-		
-		if (formals[i].isIn()) {
-		    if (contextType.equals("PROPOSITION")) {
-			// Assert a trigger graph in this process's KB.
-			theKBase.assertGraph(pDesc);
-		    } else if (contextType.equals("CONDITION")) {
-			// Collect graph for use in first rule's precondition.
-			inP.add(pDesc);
-		    } else {
-			String msg = "process 'in' parameters must be " +
-			    "contexts of type PROPOSITION or CONDITION.";
-			throw new SemanticException(msg);
-		    }
-		} else if (formals[i].isOut()) {
-		    if (contextType.equals("PROPOSITION")) {
-			// Collect graph for use in last rule's postcondition.
-			assertP.add(pDesc);
-		    } else if (contextType.equals("ERASURE")) {
-			// Collect graph for use in last rule's postcondition.
-			//
-			// Note: according to dpANS, this should really be:
-			//
-			//  (neg)->[ ... ] or ~[ ... ] 
-			retractP.add(pDesc);
-		    } else {
-			String msg = "process 'out' parameters must be " +
-			    "contexts of type PROPOSITION or ERASURE.";
-			throw new SemanticException(msg);
-		    }
+	    try {
+		// Execute initial block if present.
+		AST initialBlock = process.getInitialBlock();
+		if (initialBlock != null) {
+		    // Execute the block. A ReturnException
+		    // may be thrown at which point the process
+		    // will be exited. See catch block near end of
+		    // this method.
+		    block(initialBlock);
 		}
-	    } else {
-		String msg = "parameters to a process must be contexts.";
-		throw new SemanticException(msg);		
-	    }
-	}	
-
-	// Make in and out parameters (except triggers) available as arrays.
-	preParams = (GraphType[])inP.toArray(new GraphType[0]);
-	assertParams = (GraphType[])assertP.toArray(new GraphType[0]);
-	retractParams = (GraphType[])retractP.toArray(new GraphType[0]);
-
-	// Execute initial block if present.
-	AST initialBlock = process.getInitialBlock();
-	if (initialBlock != null) {
-	    // Execute the block. A ReturnException
-	    // may be thrown at which point the process
-	    // will be exited. See catch block near end of
-	    // this method.
-	    block(initialBlock);
-	}
 	
-	// Get the rule set.
-	Rule[] rules = process.getRules();
-
-	boolean exitRuleReached = false;
+		// Get the rule set.
+		Rule[] rules = process.getRules();
+
+		// With the INCREMENTAL option, rules are matched against the KB
+		// as it changes, so that rules which cannot currently match need
+		// not be tested on each cycle. 
+		if (context.getIncrementalOpt()) {
+		    network = ruleNetwork(process, preParams.length > 0, 
+					  theKBase);
+		}
 
-	try {				
-	    // Continue to iterate over the rule set while there are
-	    // matches occurring. If all rules are iterated over and
-	    // no pre-condition of any rule matches, there is nothing
-	    // left to do since the process will never change the state
-	    // of the KB. On a given match iteration, if a matching rule
-	    // is found, the for loop should be exited since we can't say
-	    // where in the rule set a match on the next iteration (of
-	    // the outer loop) will occur -- it could be the next rule
-	    // in sequence, or the first rule, or anywhere in between.
-	    boolean matchOccurred;
-	    do {
-		matchOccurred = false;
-
-		// Iterate over each rule in the rule set, executing action 
-		// blocks, looking for matching preconditions and executing 
-		// post-condition blocks. There may be no rules in which case 
-		// we'll never enter this loop, and wouldn't *that* be dull!
-		for (int i=0;i<rules.length;i++) {
-		    // Get next rule.
-		    Rule rule = rules[i];
+		// Continue to iterate over the rule set while there are
+		// matches occurring. If all rules are iterated over and
+		// no pre-condition of any rule matches, there is nothing
+		// left to do since the process will never change the state
+		// of the KB. On a given match iteration, if a matching rule
+		// is found, the for loop should be exited since we can't say
+		// where in the rule set a match on the next iteration (of
+		// the outer loop) will occur -- it could be the next rule
+		// in sequence, or the first rule, or anywhere in between.
+		boolean matchOccurred;
+		do {
+		    matchOccurred = false;
+
+		    // Iterate over each rule in the rule set, executing action 
+		    // blocks, looking for matching preconditions and executing 
+		    // post-condition blocks. There may be no rules in which case 
+		    // we'll never enter this loop, and wouldn't *that* be dull!
+		    for (int i=0;i<rules.length;i++) {
+			// Get next rule.
+			Rule rule = rules[i];
 		    
-		    // Execute precondition action block if present.
-		    AST preActionBlock = rule.getPreconditionActionBlock();
-		    if (preActionBlock != null) {
-			// Execute the block. A ReturnException may be
-			// thrown, at which point the process will exit.
-			// See catch block near end of this method.
-			block(preActionBlock);
-		    }
-
-		    // Innocent until proven guilty.
-		    boolean allMatch = true;
-
-		    // Collect all matches for a current rule test
-		    // and make available as a special variable in
-		    // the current scope.
-		    ListType matches = new ListType();
-		    scopes.peek().def("_MATCHES", matches);
-
-		    // Determine whether all pre-condition graphs match.
-		    // This includes preconditions passed as input parameters,
-		    // which are assumed to be included in the rule zero.
-		    // If one doesn't match, don't evaluate any more.
-		    // If they all match, execute the post-condition block.
-
-		    if (i == 0) {
-			for (int j=0;j<preParams.length;j++) {
-			    if (!matchFound(_t, preParams[j], theKBase, 
-					    matches)) {
-				allMatch = false;
-				break;
-			    }			    
+			// Execute precondition action block if present.
+			AST preActionBlock = rule.getPreconditionActionBlock();
+			if (preActionBlock != null) {
+			    // Execute the block. A ReturnException may be
+			    // thrown, at which point the process will exit.
+			    // See catch block near end of this method.
+			    block(preActionBlock);
 			}
-		    }
-
-		    if (allMatch) {
-			AST[] preconditions = rule.getMatchExpressions();
-			for (int j=0;j<preconditions.length;j++) {
-			    // Get the next (hopefully) graph to be matched.
-			    Type value = matchExpression(preconditions[j]);
 
-			    // Attempt a match.
-			    boolean isMatch = 
-				matchFound(_t, value, theKBase, matches);
+			// Innocent until proven guilty, unless the rule is
+			// known not to match.
+			boolean allMatch = network == null || 
+			    !network.isCompiled(i) || network.isSatisfied(i);
+
+			// Collect all matches for a current rule test
+			// and make available as a special variable in
+			// the current scope. For a rule known not to match,
+			// these are what testing it would have collected,
+			// and its variables are bound as testing would.
+			ListType matches = new ListType();
+			scopes.peek().def("_MATCHES", matches);
+			if (!allMatch) {
+			    network.skip(i, matches);
+			}
 
-			    // Is this graph to be negated?
-			    if (rule.getMatchGraphNegation(j)) { 
-				isMatch = !isMatch;
+			// Determine whether all pre-condition graphs match.
+			// This includes preconditions passed as input parameters,
+			// which are assumed to be included in the rule zero.
+			// If one doesn't match, don't evaluate any more.
+			// If they all match, execute the post-condition block.
+
+			if (i == 0) {
+			    for (int j=0;j<preParams.length;j++) {
+				if (!matchFound(_t, preParams[j], theKBase, 
+						matches)) {
+				    allMatch = false;
+				    break;
+				}			    
 			    }
+			}
 
-			    if (!isMatch) {
-				allMatch = false;
-				break;
+			if (allMatch) {
+			    AST[] preconditions = rule.getMatchExpressions();
+			    for (int j=0;j<preconditions.length;j++) {
+				// Get the next (hopefully) graph to be matched.
+				Type value = matchExpression(preconditions[j]);
+
+				// Attempt a match.
+				boolean isMatch = 
+				    matchFound(_t, value, theKBase, matches);
+
+				// Is this graph to be negated?
+				if (rule.getMatchGraphNegation(j)) { 
+				    isMatch = !isMatch;
+				}
+
+				if (!isMatch) {
+				    allMatch = false;
+				    break;
+				}
 			    }
 			}
-		    }
 		    
-		    if (allMatch) {
-			// Execute postcondition action block if present.
-			AST postActionBlock = 
-			    rule.getPostconditionActionBlock();
-			if (postActionBlock != null) {
-			    // Execute the block. A ReturnException may be
-			    // thrown, at which point the process will exit.
-			    // See catch block near end of this method.
-			    block(postActionBlock);
-			}
-
-			// Mutate the current KB with the postconditions.
-			AST[] postconditions = rule.getMutateKBExpressions();
-			for (int j=0;j<postconditions.length;j++) {
-			    // Get the next (hopefully) singleton graph and
-			    // its options.
-			    Type value = mutateKBExpression(postconditions[j]);
-			    boolean export = rule.getMutateGraphExportOpt(j);
-			    mutateKB(_t, value, export, rule, 
-				     theKBase, callerKBase);
-			}
+			if (allMatch) {
+			    // Execute postcondition action block if present.
+			    AST postActionBlock = 
+				rule.getPostconditionActionBlock();
+			    if (postActionBlock != null) {
+				// Execute the block. A ReturnException may be
+				// thrown, at which point the process will exit.
+				// See catch block near end of this method.
+				block(postActionBlock);
+			    }
 
-			matchOccurred = true;
+			    // Mutate the current KB with the postconditions.
+			    AST[] postconditions = rule.getMutateKBExpressions();
+			    for (int j=0;j<postconditions.length;j++) {
+				// Get the next (hopefully) singleton graph and
+				// its options.
+				Type value = mutateKBExpression(postconditions[j]);
+				boolean export = rule.getMutateGraphExportOpt(j);
+				mutateKB(_t, value, export, rule, theKBase);
+			    }
 
-			// The final rule is a special case. If its 
-			// precondition matches, its postconditions will 
-			// be handled above as normal, but then the process
-			// will exit after any output parameters are 
-			// asserted/retracted in the caller's KB, rather 
-			// than restarting a search for matches at the start 
-			// of the rule set again.
-			//
-			// TBD: It may be preferable to permit multiple rules 
-			// to be designated exit (or export) points for 
-			// increased flexibility. This is similar to the way 
-			// in which a function may return at any point.
+			    matchOccurred = true;
+
+			    // The final rule is a special case. If its 
+			    // precondition matches, its postconditions will 
+			    // be handled above as normal, but then the process
+			    // will exit after any output parameters are 
+			    // asserted/retracted in the caller's KB, rather 
+			    // than restarting a search for matches at the start 
+			    // of the rule set again.
+			    //
+			    // TBD: It may be preferable to permit multiple rules 
+			    // to be designated exit (or export) points for 
+			    // increased flexibility. This is similar to the way 
+			    // in which a function may return at any point.
 			
-			if (i == rules.length-1) {
-			    exitRuleReached = true;
-			}
+			    if (i == rules.length-1) {
+				exitRuleReached = true;
+			    }
 			
-			// A rule has matched on this round, so start
-			// at the top for the next matching round (unless
-			// this is the last rule, as detailed above).
-			break;
+			    // A rule has matched on this round, so start
+			    // at the top for the next matching round (unless
+			    // this is the last rule, as detailed above).
+			    break;
+			}
 		    }
-		}
-	    } while (matchOccurred && !exitRuleReached);
-	} catch(ReturnException e) {
-	    // Get return value and pop current scope and KB.
-	    // Under normal circumstances, this will be undefined
-	    // since a process should end with assertions/retractions.
-	    r = locals.getReturnValue();
+		} while (matchOccurred && !exitRuleReached);
+	    } catch(ReturnException e) {
+		// Get return value and pop current scope and KB.
+		// Under normal circumstances, this will be undefined
+		// since a process should end with assertions/retractions.
+		r = locals.getReturnValue();
+	    }
+	} finally {
+	    // Cleanup the scope and KB stack.
+	    if (network != null) {
+		network.stop();
+	    }
+	    scopes.pop();
+	    processKB = kbases.pop();
 	}
 
-	// Cleanup the scope and KB stack.
-	scopes.pop();    
-	KBase processKB = kbases.pop();
+	// The process completed or returned, so make any exported
+	// assertions and retractions in the caller's KB.
+	processKB.commitExports();
 
 	// If the final rule was matched, bind coreference variables in
 	// the rule's postcondition graphs using the process's KB, then
@@ -1397,7 +1960,7 @@ returns [boolean matched]
 	// match. Match defaults to true, as above.
 	Type actorNode = getSingletonActorNode(_t, g);
 	if (actorNode instanceof ProcessType) {
-	    LinkedList args = g.getConcepts().getValue();
+	    LinkedList args = new LinkedList(g.getConcepts().asList());
 	    // In this context, any return value cannot 
 	    // be utilised, so ignore it. 
 	    Type r = processCall(_t, actorNode, args);
@@ -1433,7 +1996,7 @@ returns [boolean matched]
 		// since there may well be unbound variables!
 		if (isValidProjection && !g.containsActorNodes()) {
 		    ConceptType[] concepts = 
-			(ConceptType[])pG.getConcepts().getValue().
+			(ConceptType[])pG.getConcepts().asList().
 			     toArray(new ConceptType[0]);
 		    for (int i=0;i<concepts.length;i++) {
 			if (concepts[i].hasVarDesignator()) {
@@ -1519,24 +2082,24 @@ returns [boolean matched]
 		   // Also need to check that original and current designators
 		   // are not the same reference in case of a default value 
 		   // having been used!
-		    ConceptType[] targetSinks = ActorType.getSinks(g);
-		    ConceptType[] actualSinks = ActorType.getSinks(h);
+		    ConceptType[] targetSinks = anonActor.sinksOf(g);
+		    ConceptType[] actualSinks = anonActor.sinksOf(h);
 		    for (int k=0;k<targetSinks.length;k++) {
 			Type targetDes, actualDes;
 			targetDes = targetSinks[k].getDesignatorValue();
 			actualDes = actualSinks[k].getDesignatorValue();
 			if (trace) {
-			    System.out.println("TRACE: " +
-					       "\n target -> " + targetDes +
-					       "\n actual -> " + actualDes +
-					       "\n target type-> " + 
-					       targetDes.getType() +
-					       "\n actual type-> " + 
-					       actualDes.getType() +
-					       "\n target == actual: " +
-					       (targetDes == actualDes) +
-					       "\n target eq actual: " +
-					       targetDes.equals(actualDes));
+			    context.getOut().println("TRACE: " +
+						     "\n target -> " + targetDes +
+						     "\n actual -> " + actualDes +
+						     "\n target type-> " + 
+						     targetDes.getType() +
+						     "\n actual type-> " + 
+						     actualDes.getType() +
+						     "\n target == actual: " +
+						     (targetDes == actualDes) +
+						     "\n target eq actual: " +
+						     targetDes.equals(actualDes));
 			}
 
 			// A match occurs if one of the following is true:
@@ -1584,8 +2147,7 @@ returns [boolean matched]
 }         :
           ;
 
-mutateKB[Type value, boolean export, Rule rule, 
-	 KBase currKBase, KBase callerKBase]
+mutateKB[Type value, boolean export, Rule rule, KBase currKBase]
 {
     if (value instanceof GraphType) {
 	GraphType g = (GraphType)value;
@@ -1611,7 +2173,7 @@ mutateKB[Type value, boolean export, Rule rule,
 		if (export || 
 		    rule.isExportAllOpt() || rule.isExportAssertOpt()) {
 		    currKBase.bindCorefVars(desc);
-		    callerKBase.assertGraph(desc, false); // false=don't bind vars
+		    currKBase.exportAssertion(desc); // vars already bound
 		} else {
 		    currKBase.assertGraph(desc);
 		} 
@@ -1620,7 +2182,7 @@ mutateKB[Type value, boolean export, Rule rule,
 		if (export || 
 		    rule.isExportAllOpt() || rule.isExportRetractOpt()) {
 		    currKBase.bindCorefVars(desc);
-		    callerKBase.retract(desc, false); // false=don't bind vars
+		    currKBase.exportRetraction(desc); // vars already bound
 		} else {
 		    currKBase.retract(desc);
 		} 
@@ -1645,13 +2207,13 @@ assignment
     Type c = UndefinedType.undefined;
 }
 	  :	#(VAR_ASSIGN id:IDENT a=expr)
-		{ scopes.peek().def(id.getText(), a); }		
+		{ define(id, a); }		
 
 	  |	#(LIST_ASSIGN a=expr b=expr c=expr)
 		{ a.setNthOp(b, c); } // a: list; b: index; c: value to set
 
 	  |	#(ATTR_ASSIGN a=expr attrName:IDENT b=expr)
-		{ a.setAttr(attrName.getText(), b); }
+		{ setAttr(a, attrName, b); }
 	  ;
           exception
           catch[IllegalArgumentException e] {
@@ -1709,10 +2271,10 @@ operationExpr returns [Type r]
           |     #(MINUS a=expr) { r = a.negateOp(); }     
           |     #(NOT a=expr) { r = a.notOp(); }
 	      |	    #(MEMBER_FUNCALL a=expr name:IDENT args=actualArgs)
-		         { r = a.invokeMemberFunc(name.getText(), args.toArray()); }
+		         { r = invokeMemberFunc(a, name, args.toArray()); }
 	      |     #(LIST_SELECTION a=expr b=expr) { r = a.getNthOp(b); }
 	      |     #(ATTR_SELECTION a=expr attrName:IDENT) 
-		         { r = a.getAttr(attrName.getText()); }
+		         { r = getAttr(a, attrName); }
           ;
           exception
           catch[IllegalArgumentException e] {
@@ -1775,11 +2337,24 @@ factor returns [Type r]
 
 	  |	#(EMPTY_LIST { r = new ListType(); })
 
+	  |	#(SET { list = new LinkedList(); }
+			 ( a=expr { list.addLast(a); } )+)
+		{ 
+		    r = new SetType(list); 
+		}
+
+	  |	#(EMPTY_SET { r = new SetType(); })
+
+	  |	#(MAP { r = new MapType(); }
+			 ( a=expr b=expr { ((MapType)r).put(a, b); } )+)
+
+	  |	#(EMPTY_MAP { r = new MapType(); })
+
 	  |	#(CONCEPT_LITERAL g1:GRAPH_STRING 
-	        { r = new ConceptType(g1.getText()); })
+	        { r = conceptLiteral(g1); })
 
 	  |	#(GRAPH_LITERAL g2:GRAPH_STRING 
-	        { r = new GraphType(g2.getText()); })
+	        { r = graphLiteral(g2); })
 
 	  |	#(FILE_VALUE a=expr
 		{
@@ -1822,10 +2397,24 @@ factor returns [Type r]
 		{ r = new StringType(t.getText()); }
 
 	  |	id:IDENT
-		{ r = scopes.find(id.getText()); } // variable
+		{ r = lookup(id); } // variable
 
           |	#("system" a=expr { r = systemStatement(_t, a); })
 
+	  |	#("memoize" a=expr
+		{
+		    if (!(a instanceof FunctionType)) {
+			String msg = "expected function, found " + 
+			             a.getType();
+			throw new SemanticException(msg);
+		    } else if (((FunctionType)a).getEnv() != null) {
+			String msg = "can't memoize a closure since its " +
+			             "result may depend upon its environment.";
+			throw new SemanticException(msg);
+		    }
+		    r = ((FunctionType)a).memoized();
+		})
+
                 // Activate an actor or process.
 		// For processes, this could also be a statement, but
 		// not so for actors since a result graph is always
@@ -1838,7 +2427,7 @@ factor returns [Type r]
 			    // Is this an actor or a process?
 			    Type actorNode = getSingletonActorNode(_t, g);
 			    if (actorNode instanceof ProcessType) {
-				LinkedList args = g.getConcepts().getValue();
+				LinkedList args = new LinkedList(g.getConcepts().asList());
 				r = processCall(_t, actorNode, args);
 			    } else {
 				// No actual arguments since we are relying
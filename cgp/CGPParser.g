@@ -44,6 +44,7 @@ imaginaryTokenDefinitions
     FOREACH_STATEMENT
     CONDITION
     FUN_DEF
+    MEMO
     ANON_FUN_DEF
     LAMBDA_DEF
     ACTOR_DEF
@@ -67,6 +68,10 @@ imaginaryTokenDefinitions
     FILE_VALUE
     NEW_VALUE
     EMPTY_LIST
+    SET
+    EMPTY_SET
+    MAP
+    EMPTY_MAP
     TYPE_VALUE
     AND OR IS NOT	// letter-only operators
           ;
@@ -84,6 +89,7 @@ program   :     ( topLevelStatement )*
 topLevelStatement
           :     ( nodeKind IDENT ) => typeDecl // conflict with typeValue
           |     ( "function" IDENT ) => funDef // conflict with typeValue
+          |     ( IDENT "function" ) => funDef // with a modifier
           |     ( "lambda" IDENT ) => lambdaDef // conflict with typeValue
           |     ( "actor" IDENT ) => actorDef // conflict with typeValue       
           |     ( "process" IDENT ) => processDef // conflict with typeValue  
@@ -98,9 +104,21 @@ typeDecl  :	nodeKind IDENT ( GT! IDENT )* SEMI!
 nodeKind  :     "concept" | "relation"
           ;
 
-funDef	  :	"function"! IDENT 
+// A "memo" modifier is not a keyword, so that attributes and variables
+// may still have that name. It is recorded as the last child.
+funDef	  :	( m:IDENT! )? "function"! IDENT 
 		LPAREN! ( IDENT )? ( COMMA! IDENT )* RPAREN! block
-		{ #funDef = #(#[FUN_DEF], #funDef); }
+		{ 
+		    if (m != null && !m.getText().equals("memo")) {
+			String msg = "unknown function modifier: " + 
+			             m.getText();
+			throw new SemanticException(msg);
+		    }
+		    #funDef = #(#[FUN_DEF], #funDef); 
+		    if (m != null) {
+			#funDef.addChild(#[MEMO, "memo"]);
+		    }
+		}
 	  ;
 
 actorDef  :	"actor"! IDENT
@@ -343,6 +361,7 @@ selectionExpr
 
 callExpr  :	( "system" factor ) => "system"^ factor
 	  |	( "activate" factor ) => "activate"^ factor
+	  |	( "memoize" factor ) => "memoize"^ factor
 	  |	( "apply" factor ) => "apply"^ factor factor
 	  |	( factor actualArgs ) => call
 	  | 	( factor ) => factor
@@ -352,6 +371,9 @@ factor    : 	NUMBER
           |     STRING
           |     boolValue
           |     listValue
+          |     ( LSETBRACE expr COLON ) => mapValue
+          |     ( LSETBRACE COLON ) => mapValue
+          |     setValue
           |     graphValue
           |     ( "concept" GRAPH_STRING ) => conceptValue 
 	      |	    ( "file" factor ) => fileValue	
@@ -381,6 +403,21 @@ listValue :     ( LBRACE! RBRACE! ) => LBRACE! RBRACE! // the empty list
                 { #listValue = #(#[LIST], #listValue); }
 	  ;
 
+setValue  :     ( LSETBRACE! RSETBRACE! ) => LSETBRACE! RSETBRACE! // empty
+                { #setValue = #(#[EMPTY_SET], #setValue); }
+	  |	LSETBRACE! expr ( COMMA! expr )* RSETBRACE!
+                { #setValue = #(#[SET], #setValue); }
+	  ;
+
+// Keys and values alternate as children of the MAP node.
+mapValue  :     ( LSETBRACE! COLON! RSETBRACE! ) => 
+		LSETBRACE! COLON! RSETBRACE! // the empty map
+                { #mapValue = #(#[EMPTY_MAP], #mapValue); }
+	  |	LSETBRACE! expr COLON! expr ( COMMA! expr COLON! expr )* 
+		RSETBRACE!
+                { #mapValue = #(#[MAP], #mapValue); }
+	  ;
+
 conceptValue
 	  :     "concept"! GRAPH_STRING  // pre-parse as per ANSI standard?
 		{ #conceptValue = #(#[CONCEPT_LITERAL], #conceptValue); }
@@ -441,6 +478,12 @@ LBRACE  :       '{'
 RBRACE  :       '}' 
         ;
 
+LSETBRACE:      "{|" 
+        ;
+
+RSETBRACE:      "|}" 
+        ;
+
 SEMI    :       ';'  
         ;
 
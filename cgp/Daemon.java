@@ -0,0 +1,350 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * A resident pCG which runs programs on behalf of clients, so that a
+ * job costs milliseconds rather than the start-up of a JVM, e.g. when
+ * a batch script runs many programs in turn. Started by:
+ *
+ *	pCG [-compile] -daemon [-socket file] [base.cgp [args]]
+ *
+ * The optional base program is run once at start-up, e.g. to declare a
+ * large type hierarchy and load the graphs of CGIF files, and each job
+ * is then run against an overlay of the base program's knowledge base
+ * (see KBase(KBase, boolean)), so it sees the base program's types and
+ * graphs but cannot change either for other jobs. A job which declares
+ * types, e.g. repeating the base program's declarations, is given types
+ * of its own when it first declares one the base program did not (see
+ * KBase.ownTypes()). Each program is parsed when it is first run and
+ * again only if its file changes.
+ *
+ * Jobs are read from standard input, with the results written to
+ * standard output, unless a socket file is given, in which case the
+ * daemon accepts connections to a UNIX-domain socket of that name, any
+ * number at once, each carrying any number of jobs in turn. Since a job
+ * runs as the daemon's user, the socket's directory must be accessible
+ * by that user alone (mode 0700), and is created so if it is absent. 
+ * The pCGc script is a client. A job is given as lines of text:
+ *
+ *	the directory against which relative file names are resolved
+ *	the program's file name
+ *	the number of arguments, n
+ *	n lines, one argument each
+ *
+ * and results in lines which each begin with a character and a space:
+ *
+ *	o	a line printed by the program
+ *	p	the last of the printed text, if not ended by a newline
+ *	e	a line of error output
+ *	x	the exit code, which ends the results
+ *
+ * The exit code is that given to the program's exit statement, 0 if
+ * it ran to completion, or 1 if it failed. Output is sent as it is
+ * printed, so the results of a failed program include its output up
+ * to the failure.
+ */
+
+package cgp;
+
+import cgp.CGP;
+import cgp.Engine;
+import cgp.Program;
+import cgp.Result;
+import cgp.runtime.KBase;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.Set;
+
+public class Daemon {
+    // Instance fields.
+    private Engine engine;
+    private KBase baseKBase; // null if there is no base program
+    private HashMap programs; // canonical file name -> Object[] 
+                              // { Long last modified, Program }
+
+    // Constructors.
+    public Daemon(Engine engine, KBase baseKBase) {
+	this.engine = engine;
+	this.baseKBase = baseKBase;
+	programs = new HashMap();
+    }
+
+    // Private methods.
+
+    /**
+     * Return the parsed program in the specified file, parsing it 
+     * unless it has been parsed since the file was last modified.
+     */
+    private Program getProgram(File f) throws Exception {
+	if (!f.isFile()) {
+	    throw new FileNotFoundException(f.getPath());
+	}
+	String key = f.getCanonicalPath();
+	Long modified = new Long(f.lastModified());
+	synchronized (programs) {
+	    Object[] entry = (Object[])programs.get(key);
+	    if (entry != null && entry[0].equals(modified)) {
+		return (Program)entry[1];
+	    }
+	}
+	// Parse outside the lock; should two jobs parse the same
+	// program at once, both results are equally good.
+	Program program = engine.compile(f);
+	synchronized (programs) {
+	    programs.put(key, new Object[] { modified, program });
+	}
+	return program;
+    }
+
+    /**
+     * Read a job from the specified reader and run it, writing its
+     * results to the specified stream. Returns false if there were no
+     * more jobs.
+     */
+    private boolean serveJob(BufferedReader in, OutputStream out) 
+	throws IOException {
+	String directory = in.readLine();
+	String fileName = in.readLine();
+	String count = in.readLine();
+	if (directory == null || fileName == null || count == null) {
+	    return false;
+	}
+	String[] args;
+	try {
+	    args = new String[Integer.parseInt(count.trim())];
+	} catch (NumberFormatException e) {
+	    throw new IOException("bad argument count: " + count);
+	}
+	for (int i=0;i<args.length;i++) {
+	    args[i] = in.readLine();
+	    if (args[i] == null) {
+		return false;
+	    }
+	}
+
+	LineFramer printed = new LineFramer(out, 'o', 'p');
+	LineFramer errors = new LineFramer(out, 'e', 'e');
+	PrintStream printedStream = new PrintStream(printed, true);
+	PrintStream errorStream = new PrintStream(errors, true);
+	int exitCode;
+	try {
+	    File dir = new File(directory);
+	    File f = new File(fileName);
+	    if (!f.isAbsolute()) {
+		f = new File(dir, fileName);
+	    }
+	    Result result = engine.run(getProgram(f), args, baseKBase, null,
+				       dir, printedStream, errorStream);
+	    exitCode = result.getExitCode();
+	} catch (FileNotFoundException e) {
+	    errorStream.println("File error: " + e.getMessage());
+	    exitCode = 1;
+	} catch (Exception e) {
+	    errorStream.println(CGP.errorMessage(e));
+	    exitCode = 1;
+	}
+	printed.finish();
+	errors.finish();
+	synchronized (out) {
+	    out.write(("x " + exitCode + "\n").getBytes());
+	    out.flush();
+	}
+	return true;
+    }
+
+    // Public methods.
+
+    /**
+     * Run jobs read from the specified stream until there are no more,
+     * writing their results to the specified stream.
+     */
+    public void serve(InputStream in, OutputStream out) throws IOException {
+	BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+	OutputStream writer = new BufferedOutputStream(out);
+	while (serveJob(reader, writer)) {
+	}
+    }
+
+    /**
+     * Run jobs arriving over connections to a UNIX-domain socket of the
+     * specified file name, each connection being served by a thread of 
+     * its own. This never returns.
+     */
+    public void serve(String socketFile) throws IOException {
+	Path path = Path.of(socketFile).toAbsolutePath();
+	Path directory = path.getParent();
+
+	// Only the daemon's user may connect, so the socket's directory
+	// must be closed to others.
+	Set ownerOnly = PosixFilePermissions.fromString("rwx------");
+	if (!Files.exists(directory)) {
+	    Files.createDirectories(directory, 
+		PosixFilePermissions.asFileAttribute(ownerOnly));
+	}
+	if (!Files.getPosixFilePermissions(directory).equals(ownerOnly) ||
+	    !Files.getOwner(directory).getName().
+	        equals(System.getProperty("user.name"))) {
+	    throw new IOException("socket directory " + directory + 
+				  " must be owned by " + 
+				  System.getProperty("user.name") +
+				  " with mode 0700");
+	}
+
+	// A socket file left by a daemon which has exited is replaced,
+	// but not one which a daemon is still accepting connections on.
+	UnixDomainSocketAddress address = UnixDomainSocketAddress.of(path);
+	if (Files.exists(path)) {
+	    boolean inUse;
+	    try {
+		SocketChannel.open(address).close();
+		inUse = true;
+	    } catch (IOException e) {
+		inUse = false;
+	    }
+	    if (inUse) {
+		throw new IOException("a daemon is already using " + path);
+	    }
+	    Files.delete(path);
+	}
+
+	ServerSocketChannel server = 
+	    ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+	server.bind(address);
+	path.toFile().deleteOnExit();
+
+	while (true) {
+	    final SocketChannel socket = server.accept();
+	    Thread connection = new Thread() {
+		    public void run() {
+			try {
+			    serve(Channels.newInputStream(socket), 
+				  Channels.newOutputStream(socket));
+			} catch (IOException e) {
+			    System.err.println("pCG daemon: " + e);
+			} finally {
+			    try {
+				socket.close();
+			    } catch (IOException e) {
+			    }
+			}
+		    }
+		};
+	    connection.setDaemon(true);
+	    connection.start();
+	}
+    }
+
+    /**
+     * Start a daemon given the command-line arguments following -daemon.
+     */
+    public static void main(String[] args) throws Exception {
+	String socketFile = null;
+	if (args.length >= 2 && args[0].equals("-socket")) {
+	    socketFile = args[1];
+	    String[] rest = new String[args.length-2];
+	    System.arraycopy(args, 2, rest, 0, rest.length);
+	    args = rest;
+	}
+
+	Engine engine = new Engine();
+	KBase baseKBase = null;
+	if (args.length >= 1) {
+	    // Run the base program, its output going to the daemon's
+	    // standard error since standard output may carry results.
+	    String[] baseArgs = new String[args.length-1];
+	    System.arraycopy(args, 1, baseArgs, 0, baseArgs.length);
+	    Result result = engine.run(engine.compile(new File(args[0])), 
+				       baseArgs, null, null, null, 
+				       System.err, System.err);
+	    if (result.getExitCode() != 0) {
+		System.exit(result.getExitCode());
+	    }
+	    baseKBase = result.getKBase();
+	}
+
+	Daemon daemon = new Daemon(engine, baseKBase);
+	if (socketFile == null) {
+	    daemon.serve(System.in, System.out);
+	} else {
+	    daemon.serve(socketFile);
+	}
+    }
+
+    /**
+     * A stream which sends each line written to it to the client as 
+     * a line beginning with a given character (see above).
+     */
+    private static class LineFramer extends OutputStream {
+	private OutputStream out;
+	private char lineTag;
+	private char partTag; // for text not ended by a newline
+	private ByteArrayOutputStream line;
+
+	LineFramer(OutputStream out, char lineTag, char partTag) {
+	    this.out = out;
+	    this.lineTag = lineTag;
+	    this.partTag = partTag;
+	    line = new ByteArrayOutputStream();
+	}
+
+	private void send(char tag) throws IOException {
+	    synchronized (out) {
+		out.write(tag);
+		out.write(' ');
+		line.writeTo(out);
+		out.write('\n');
+		out.flush();
+	    }
+	    line.reset();
+	}
+
+	public synchronized void write(int b) throws IOException {
+	    if (b == '\n') {
+		send(lineTag);
+	    } else {
+		line.write(b);
+	    }
+	}
+
+	/**
+	 * Send any text written since the last newline.
+	 */
+	synchronized void finish() throws IOException {
+	    if (line.size() > 0) {
+		send(partTag);
+	    }
+	}
+    }
+}
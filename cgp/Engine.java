@@ -0,0 +1,251 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * An engine through which Java code may run pCG programs, e.g. a
+ * service running many programs in a single long-lived JVM.
+ *
+ * A program is parsed once by compile(), which also finishes all of the
+ * annotation of its parse tree, and the resulting Program may then be
+ * run any number of times by run(), including at once by several
+ * threads, e.g. those of a Daemon serving several clients. Each run
+ * has a context of its own (see cgp.runtime.InterpreterContext), its
+ * own top-level scope holding the _ARGS given to it, and its own
+ * top-level knowledge base. What the program prints is captured in the
+ * Result of the run rather than written to System.out, and an exit
+ * statement ends the run rather than the JVM. An error in the program
+ * also ends the run, its message being printed to the run's error
+ * output as by the pCG command and the exit code being 1.
+ *
+ * A run may be given a knowledge base to start from, in which case
+ * the run's knowledge base is an overlay of it (see KBase(KBase,
+ * boolean)), so the run sees the given knowledge base's types and 
+ * graphs but cannot change them. A run which declares types is given
+ * types of its own when it first does so (see KBase.ownTypes()). The
+ * knowledge base may be shared by runs under way at once provided that
+ * it is not changed meanwhile, or is a ConcurrentKBase. Graphs may
+ * also be given, to be asserted in the run's knowledge base before the
+ * program starts; parseGraph() creates these.
+ *
+ * Options are taken from cgp.CGP as for the pCG command, and may be
+ * changed by a program's option statements for that run alone.
+ */
+
+package cgp;
+
+import antlr.CommonAST;
+import antlr.RecognitionException;
+import antlr.TokenStreamException;
+import cgp.CGPInterpreter;
+import cgp.CGPLexer;
+import cgp.CGPParser;
+import cgp.NameResolver;
+import cgp.Program;
+import cgp.Result;
+import cgp.compiler.Compiler;
+import cgp.runtime.ExitException;
+import cgp.runtime.GraphType;
+import cgp.runtime.InterpreterContext;
+import cgp.runtime.KBase;
+import cgp.runtime.Type;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+public class Engine {
+    // Instance fields.
+    private boolean compileOpt; // run with cgp.compiler.Compiler?
+
+    // Constructors.
+    public Engine() {
+	compileOpt = CGP.CompileOpt;
+    }
+
+    // Private methods.
+
+    private Program compile(Reader source, String name)
+	throws RecognitionException, TokenStreamException {
+	CGPLexer lexer = new CGPLexer(source);
+	lexer.setFilename(name);
+
+	CGPParser parser = new CGPParser(lexer);
+	parser.setFilename(name);
+	parser.setASTNodeClass("cgp.CGPAST"); // see CGPInterpreter
+	parser.program();
+
+	CommonAST tree = (CommonAST)parser.getAST();
+	NameResolver.resolve(tree);
+	return new Program(name, tree);
+    }
+
+    // Public methods.
+
+    /**
+     * Select the compiling execution engine (see cgp.compiler.Compiler)
+     * or the interpreter for subsequent runs.
+     */
+    public void setCompileOpt(boolean state) {
+	compileOpt = state;
+    }
+
+    public boolean getCompileOpt() {
+	return compileOpt;
+    }
+
+    /**
+     * Parse the specified pCG source, giving the program the specified
+     * name for error messages.
+     */
+    public Program compile(String source, String name)
+	throws RecognitionException, TokenStreamException {
+	return compile(new StringReader(source), name);
+    }
+
+    /**
+     * Parse the pCG program in the specified file.
+     */
+    public Program compile(File f)
+	throws IOException, RecognitionException, TokenStreamException {
+	Reader source = new FileReader(f);
+	try {
+	    return compile(source, f.getPath());
+	} finally {
+	    source.close();
+	}
+    }
+
+    /**
+     * Parse a graph given in CGIF, with reference to the types of the
+     * specified knowledge base, e.g. for giving to run().
+     */
+    public GraphType parseGraph(String cgif, KBase kbase) {
+	InterpreterContext context = new InterpreterContext();
+	context.getKBStack().push(kbase);
+	InterpreterContext previous = Type.getContext();
+	Type.setContext(context);
+	try {
+	    return new GraphType(cgif);
+	} finally {
+	    Type.setContext(previous);
+	}
+    }
+
+    /**
+     * Run the specified program with the specified arguments (_ARGS).
+     */
+    public Result run(Program program, String[] args) {
+	return run(program, args, null, null);
+    }
+
+    /**
+     * Run the specified program with the specified arguments (_ARGS),
+     * starting from the specified knowledge base and with the specified
+     * graphs asserted, either of which may be null.
+     *
+     * If the program fails, the Result has the error message in its
+     * error output, what was printed before then in its output, and
+     * an exit code of 1.
+     */
+    public Result run(Program program, String[] args, KBase kbase,
+		      GraphType[] graphs) {
+	return run(program, args, kbase, graphs, null);
+    }
+
+    /**
+     * Run the specified program as above, resolving the program's
+     * relative file names against the specified directory, or the
+     * JVM's working directory if this is null.
+     */
+    public Result run(Program program, String[] args, KBase kbase,
+		      GraphType[] graphs, File directory) {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	ByteArrayOutputStream err = new ByteArrayOutputStream();
+	Result result = run(program, args, kbase, graphs, directory,
+			    new PrintStream(out, true), 
+			    new PrintStream(err, true));
+	result.setOutput(out.toString(), err.toString());
+	return result;
+    }
+
+    // Package methods.
+
+    /**
+     * Run the specified program as above, printing to the specified
+     * streams rather than capturing its output in the result, e.g. so
+     * that a Daemon may send it to a client as it is printed.
+     */
+    Result run(Program program, String[] args, KBase kbase,
+	       GraphType[] graphs, File directory, 
+	       PrintStream out, PrintStream err) {
+	InterpreterContext context = new InterpreterContext();
+	context.setOut(out);
+	context.setErr(err);
+	context.setDirectory(directory);
+
+	// As for the pCG command, the first argument names the program
+	// and is not in _ARGS.
+	String[] allArgs = new String[args.length+1];
+	allArgs[0] = program.getName();
+	System.arraycopy(args, 0, allArgs, 1, args.length);
+
+	CGPInterpreter interpreter = 
+	    new CGPInterpreter(allArgs, program.getTree(), context);
+	int exitCode = 0;
+
+	InterpreterContext previous = Type.getContext();
+	Type.setContext(context);
+	try {
+	    KBase topLevelKBase;
+	    if (kbase != null) {
+		topLevelKBase = new KBase(kbase, true);
+	    } else {
+		topLevelKBase = new KBase();
+	    }
+	    if (graphs != null) {
+		context.getKBStack().push(topLevelKBase);
+		for (int i=0;i<graphs.length;i++) {
+		    topLevelKBase.assertGraph(graphs[i]);
+		}
+		context.getKBStack().pop();
+	    }
+	    interpreter.setTopLevelKBase(topLevelKBase);
+
+	    if (compileOpt) {
+		new Compiler(interpreter).run(program.getTree());
+	    } else {
+		interpreter.program(program.getTree());
+	    }
+	} catch (ExitException e) {
+	    exitCode = e.getExitCode();
+	} catch (Exception e) {
+	    err.println(CGP.errorMessage(e));
+	    exitCode = 1;
+	} finally {
+	    Type.setContext(previous);
+	    out.flush();
+	    err.flush();
+	}
+
+	return new Result(exitCode, interpreter.getTopLevelScope(), 
+			  interpreter.getTopLevelKBase());
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Resolution of the names in function and process bodies, prior to a
+ * program being run.
+ *
+ * pCG variables are dynamically scoped: a name is looked up in each scope
+ * on the scope stack in turn, from the innermost outwards, so the cost of
+ * a lookup grows with the depth of the stack. Each function or process
+ * body is given a slot layout holding the names it may define: formal
+ * parameters, assigned variables, foreach variables, nested definitions,
+ * and those defined by the interpreter (e.g. "me"). Its scope holds these
+ * in an array. A reference to one of these names in the body is resolved
+ * to its slot, which is consulted first, a full lookup only being needed
+ * if the slot is not yet defined.
+ *
+ * A name which no function or process body anywhere in the program may
+ * define can only ever be defined in the outermost scope, so references
+ * to it are resolved as global. This does not hold while a closure's
+ * environment is on the stack, since that holds copies of all names,
+ * and ScopeStack caters for this. Any other name is left unresolved.
+ *
+ * The calls in tail position in each function body, i.e. those whose
+ * value is returned directly, are also marked, since a call of the
+ * function itself there can reuse the function's scope (see funCall in
+ * CGPInterpreter). Doing all of this before the program is run means
+ * that runs of it never change the tree's resolution.
+ */
+
+package cgp;
+
+import antlr.collections.AST;
+
+import cgp.runtime.SlotLayout;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+
+public class NameResolver implements CGPTokenTypes {
+    // Static fields.
+
+    // Names defined by the interpreter in function and process scopes.
+    static private String[] IMPLICIT_NAMES = { "me", "_MATCHES", "_KB" };
+
+    // Instance fields.
+    private HashSet localNames; // defined by some body
+
+    // Constructors.
+    private NameResolver() {
+	localNames = new HashSet();
+	for (int i=0;i<IMPLICIT_NAMES.length;i++) {
+	    localNames.add(IMPLICIT_NAMES[i]);
+	}
+    }
+
+    // Public methods.
+
+    /**
+     * Resolve the names in the bodies of the specified program, i.e.
+     * list of top-level statements. The slot layout of each body is
+     * recorded in the node whose code executes in the body's scope:
+     * the block of a function, or a process definition.
+     *
+     * A program is resolved only once, however many times it is run,
+     * so that runs of it may be under way at once (see cgp.Engine).
+     */
+    static public void resolve(AST program) {
+	if (program instanceof CGPAST && 
+	    ((CGPAST)program).isNamesResolved()) {
+	    return;
+	}
+	NameResolver resolver = new NameResolver();
+	for (AST t=program;t!=null;t=t.getNextSibling()) {
+	    resolver.collect(t, false);
+	}
+	for (AST t=program;t!=null;t=t.getNextSibling()) {
+	    resolver.resolve(t, null);
+	}
+	if (program instanceof CGPAST) {
+	    ((CGPAST)program).setNamesResolved();
+	}
+    }
+
+    // Private methods.
+
+    private static boolean isBody(AST t) {
+	int type = t.getType();
+	return type == FUN_DEF || type == ANON_FUN_DEF || type == PROCESS_DEF;
+    }
+
+    /**
+     * Is the node a definition of the name given by its first child?
+     */
+    private static boolean isDefinition(AST t) {
+	int type = t.getType();
+	return type == VAR_ASSIGN || type == FOREACH_STATEMENT ||
+	    type == FUN_DEF || type == ACTOR_DEF || type == LAMBDA_DEF ||
+	    type == PROCESS_DEF;
+    }
+
+    private static String definedName(AST t) {
+	AST name = t.getFirstChild();
+	if (name != null && name.getType() == IDENT) {
+	    return name.getText();
+	}
+	return null;
+    }
+
+    /**
+     * Add the formal parameters of a function to the specified set.
+     */
+    private static void addParameters(AST t, HashSet names) {
+	AST arg = t.getFirstChild();
+	if (t.getType() == FUN_DEF && arg != null) {
+	    arg = arg.getNextSibling(); // skip the function's name
+	}
+	for (;arg!=null && arg.getType() == IDENT;arg=arg.getNextSibling()) {
+	    names.add(arg.getText());
+	}
+    }
+
+    /**
+     * Collect the names defined within bodies in the specified subtree.
+     */
+    private void collect(AST t, boolean inBody) {
+	if (inBody && isDefinition(t) && definedName(t) != null) {
+	    localNames.add(definedName(t));
+	}
+	if (isBody(t)) {
+	    inBody = true;
+	    if (t.getType() != PROCESS_DEF) {
+		addParameters(t, localNames);
+	    }
+	}
+	for (AST c=t.getFirstChild();c!=null;c=c.getNextSibling()) {
+	    collect(c, inBody);
+	}
+    }
+
+    /**
+     * Add the names defined in the specified subtree of a body to the
+     * specified set, excluding those defined in nested bodies.
+     */
+    private static void addDefinitions(AST t, HashSet names) {
+	if (isDefinition(t) && definedName(t) != null) {
+	    names.add(definedName(t));
+	}
+	if (!isBody(t)) {
+	    for (AST c=t.getFirstChild();c!=null;c=c.getNextSibling()) {
+		addDefinitions(c, names);
+	    }
+	}
+    }
+
+    /**
+     * Determine the slot layout of a body.
+     */
+    private static SlotLayout layoutOf(AST body) {
+	LinkedHashSet names = new LinkedHashSet();
+	if (body.getType() != PROCESS_DEF) {
+	    addParameters(body, names);
+	}
+	for (int i=0;i<IMPLICIT_NAMES.length;i++) {
+	    names.add(IMPLICIT_NAMES[i]);
+	}
+	for (AST c=body.getFirstChild();c!=null;c=c.getNextSibling()) {
+	    addDefinitions(c, names);
+	}
+	return new SlotLayout((String[])names.toArray(new String[0]));
+    }
+
+    /**
+     * Mark the calls in tail position in the specified function body,
+     * excluding those in nested definitions.
+     */
+    private static void markTailCalls(AST t) {
+	for (AST c=t.getFirstChild();c!=null;c=c.getNextSibling()) {
+	    switch (c.getType()) {
+	    case FUN_DEF: case ANON_FUN_DEF: case LAMBDA_DEF:
+	    case ACTOR_DEF: case PROCESS_DEF: case RULE_DEF:
+		break; // a nested definition's calls are its own
+	    case LITERAL_return:
+		AST value = c.getFirstChild();
+		if (value != null && value.getType() == CALL &&
+		    value instanceof CGPAST) {
+		    ((CGPAST)value).setTailCall();
+		}
+		break;
+	    default:
+		markTailCalls(c);
+	    }
+	}
+    }
+
+    /**
+     * Resolve the names in the specified subtree, given the slot layout
+     * of the enclosing body, if any.
+     */
+    private void resolve(AST t, SlotLayout layout) {
+	if (t.getType() == IDENT && layout != null && t instanceof CGPAST) {
+	    int slot = layout.indexOf(t.getText());
+	    if (slot >= 0) {
+		((CGPAST)t).setResolution(layout, slot);
+	    } else if (!localNames.contains(t.getText())) {
+		((CGPAST)t).setResolution(null, CGPAST.GLOBAL);
+	    } else {
+		((CGPAST)t).setResolution(null, CGPAST.UNRESOLVED);
+	    }
+	}
+
+	AST c = t.getFirstChild();
+	if (isBody(t)) {
+	    SlotLayout bodyLayout = layoutOf(t);
+	    // The name of a function or process is defined in the 
+	    // enclosing scope.
+	    if (t.getType() != ANON_FUN_DEF && c != null) {
+		resolve(c, layout);
+		c = c.getNextSibling();
+	    }
+	    if (t.getType() == PROCESS_DEF) {
+		if (t instanceof CGPAST) {
+		    ((CGPAST)t).setResolution(bodyLayout, CGPAST.UNRESOLVED);
+		}
+	    } else {
+		for (AST b=c;b!=null;b=b.getNextSibling()) {
+		    if (b.getType() == BLOCK && b instanceof CGPAST) {
+			((CGPAST)b).setResolution(bodyLayout,
+						  CGPAST.UNRESOLVED);
+			markTailCalls(b);
+		    }
+		}
+	    }
+	    layout = bodyLayout;
+	}
+	for (;c!=null;c=c.getNextSibling()) {
+	    resolve(c, layout);
+	}
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * A pCG program, parsed and with its names resolved (see NameResolver),
+ * ready to be run any number of times by an Engine, including at once
+ * by several threads. Runs share the parse tree. All of its annotation
+ * (name resolution and tail calls) is done before the Program is made,
+ * and the fields are final, so a thread which is handed a Program sees
+ * the finished tree. A run changes the tree only by caching values which
+ * don't depend upon any one run, through volatile fields (see CGPAST).
+ */
+
+package cgp;
+
+import antlr.CommonAST;
+
+public class Program {
+    // Instance fields.
+    private final String name;
+    private final CommonAST tree; // list of top-level statements
+
+    // Constructors.
+    Program(String name, CommonAST tree) {
+	this.name = name;
+	this.tree = tree;
+    }
+
+    // Public methods.
+
+    /**
+     * The name of the program, e.g. its file name, which pCG error
+     * messages refer to.
+     */
+    public String getName() {
+	return name;
+    }
+
+    // Package methods.
+
+    CommonAST getTree() {
+	return tree;
+    }
+}
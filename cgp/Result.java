@@ -0,0 +1,103 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * The outcome of a run of a pCG program by an Engine: what it printed,
+ * its exit code, and its top-level variables and knowledge base, whose
+ * values are those at the end of the run.
+ */
+
+package cgp;
+
+import cgp.runtime.KBase;
+import cgp.runtime.Scope;
+import cgp.runtime.Type;
+
+import java.util.LinkedList;
+
+public class Result {
+    // Instance fields.
+    private String output;
+    private String errorOutput;
+    private int exitCode;
+    private Scope topLevelScope;
+    private KBase kbase;
+
+    // Constructors.
+    Result(int exitCode, Scope topLevelScope, KBase kbase) {
+	this.exitCode = exitCode;
+	this.topLevelScope = topLevelScope;
+	this.kbase = kbase;
+    }
+
+    // Public methods.
+
+    /**
+     * Return what the program printed via print and println, or null
+     * if this was not captured.
+     */
+    public String getOutput() {
+	return output;
+    }
+
+    /**
+     * Return the error messages printed by the program, i.e. that of
+     * an exit statement given a string or of an error which ended the
+     * run, or null if this was not captured.
+     */
+    public String getErrorOutput() {
+	return errorOutput;
+    }
+
+    /**
+     * Return the code given to the program's exit statement, 1 if an
+     * error ended the run, or 0 if the program ran to completion.
+     */
+    public int getExitCode() {
+	return exitCode;
+    }
+
+    /**
+     * Return the value of the specified top-level variable, which
+     * may be undefined.
+     */
+    public Type getValue(String name) {
+	return topLevelScope.get(name);
+    }
+
+    /**
+     * Return the program's top-level knowledge base.
+     */
+    public KBase getKBase() {
+	return kbase;
+    }
+
+    /**
+     * Return the graphs asserted in the program's top-level knowledge
+     * base, in the order they were asserted.
+     */
+    public LinkedList getGraphs() {
+	return kbase.getAssertedGraphs();
+    }
+
+    // Package methods.
+
+    void setOutput(String output, String errorOutput) {
+	this.output = output;
+	this.errorOutput = errorOutput;
+    }
+}
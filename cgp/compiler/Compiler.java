@@ -0,0 +1,1074 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * An execution engine which compiles a pCG program's parse tree into a
+ * tree of nodes (see Node) before running it.
+ *
+ * The tree parser (CGPInterpreter) matches the pattern of each node of
+ * the parse tree every time the node is executed. Instead, each statement
+ * and expression is translated once here into a node which holds its
+ * operator, constants, the slots of the names it refers to (as resolved
+ * by the NameResolver), and its operands, so that executing it involves
+ * no further matching. Function bodies are compiled when first called.
+ *
+ * Statements, expressions and calls which are not compiled, e.g. those
+ * concerning actors, processes, knowledge bases and graph literals, are
+ * delegated to the interpreter, whose state (scopes, KBs and options) is
+ * shared with the compiled program. The interpreter remains the reference
+ * for pCG's semantics, and compiled code must behave identically, down
+ * to its error messages.
+ */
+
+package cgp.compiler;
+
+import antlr.RecognitionException;
+import antlr.SemanticException;
+import antlr.collections.AST;
+
+import cgp.CGPAST;
+import cgp.CGPInterpreter;
+import cgp.CGPTokenTypes;
+import cgp.runtime.ActorType;
+import cgp.runtime.BooleanType;
+import cgp.runtime.DispatchTable;
+import cgp.runtime.FormalParameter;
+import cgp.runtime.FunctionCall;
+import cgp.runtime.FunctionCaller;
+import cgp.runtime.FunctionType;
+import cgp.runtime.InterpreterContext;
+import cgp.runtime.LambdaType;
+import cgp.runtime.LastException;
+import cgp.runtime.ListType;
+import cgp.runtime.MapType;
+import cgp.runtime.MemberHandle;
+import cgp.runtime.MemoCache;
+import cgp.runtime.NumberType;
+import cgp.runtime.ProcessType;
+import cgp.runtime.Scope;
+import cgp.runtime.ScopeStack;
+import cgp.runtime.SetType;
+import cgp.runtime.SlotLayout;
+import cgp.runtime.StringType;
+import cgp.runtime.Type;
+import cgp.runtime.UndefinedType;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+
+public class Compiler implements CGPTokenTypes {
+    // Static fields.
+    static private Node[] NO_NODES = new Node[0];
+    static private Type[] NO_VALUES = new Type[0];
+
+    // The result of a statement which executed a return statement. This
+    // propagates out through the enclosing statements to the function
+    // call, rather than an exception being thrown as by the interpreter.
+    static private Type RETURNED = new UndefinedType();
+
+    // The result of a statement which executed a last statement, which
+    // likewise propagates out to the enclosing loop.
+    static private Type LEFT = new UndefinedType();
+
+    // The result of a statement which returned the result of calling the
+    // function whose body it is in, having rebound the parameters, so
+    // that the function's body is to be evaluated again.
+    static private Type TAIL_CALLED = new UndefinedType();
+
+    // Instance fields.
+    private CGPInterpreter interpreter;
+    private InterpreterContext context;
+    private ScopeStack scopes;
+    private IdentityHashMap bodies; // AST -> Body
+    private FunctionType activeFunc; // whose body is being evaluated
+    private Scope activeLocals; // holding activeFunc's parameters
+
+    // Constructors.
+    public Compiler(CGPInterpreter interpreter) {
+	this.interpreter = interpreter;
+	bodies = new IdentityHashMap();
+    }
+
+    // Public methods.
+
+    /**
+     * Compile and run the specified program, i.e. list of top-level
+     * statements.
+     */
+    public void run(AST program) throws RecognitionException {
+	interpreter.initialise(program);
+	context = interpreter.getContext();
+	scopes = interpreter.getScopes();
+
+	// Let member functions call compiled pCG functions.
+	context.setFunctionCaller(new FunctionCaller() {
+		public FunctionCall newCall(FunctionType func) {
+		    final Body body = bodyOf(func.getCode());
+		    return new FunctionCall(func, scopes, newScope(body)) {
+			    protected boolean execute(AST code) 
+				throws RecognitionException {
+				// The function has a scope of its own.
+				FunctionType caller = activeFunc;
+				activeFunc = null;
+				try {
+				    return returned(body.code.eval());
+				} finally {
+				    activeFunc = caller;
+				}
+			    }
+			};
+		}
+	    });
+
+	LinkedList statements = new LinkedList();
+	for (AST t=program;t!=null;t=t.getNextSibling()) {
+	    Node statement = compileStatement(t);
+	    if (statement == null) {
+		statement = interpretTopLevelStatement(t);
+	    }
+	    statements.add(statement);
+	}
+
+	returned(sequence((Node[])statements.toArray(NO_NODES)).eval());
+    }
+
+    // Private methods.
+
+    private static AST child(AST t, int i) {
+	AST c = t.getFirstChild();
+	while (i-- > 0 && c != null) {
+	    c = c.getNextSibling();
+	}
+	return c;
+    }
+
+    private static SemanticException operationError(
+	IllegalArgumentException e, Type a, Type b) {
+	String msg = "can't apply " + e.getMessage() +
+	    " operation to values of type " + a.getType();
+	if (b != UndefinedType.undefined) {
+	    // Dyadic.
+	    msg += " and " + b.getType() + ".";
+	} else {
+	    // Monadic.
+	    msg += ".";
+	}
+	return new SemanticException(msg);
+    }
+
+    private static Type[] evalAll(Node[] nodes) throws RecognitionException {
+	if (nodes.length == 0) {
+	    return NO_VALUES;
+	}
+	Type[] values = new Type[nodes.length];
+	for (int i=0;i<nodes.length;i++) {
+	    values[i] = nodes[i].eval();
+	}
+	return values;
+    }
+
+    private static LinkedList toList(Type[] values) {
+	LinkedList list = new LinkedList();
+	for (int i=0;i<values.length;i++) {
+	    list.add(values[i]);
+	}
+	return list;
+    }
+
+    /**
+     * Did the specified result of a function body come from a return
+     * statement? A last statement executed outside any loop in the body
+     * leaves the function as in the interpreter, by throwing.
+     */
+    private static boolean returned(Type result) {
+	if (result == LEFT) {
+	    throw LastException.signal;
+	}
+	return result == RETURNED;
+    }
+
+    private static boolean isTrue(Type a) throws SemanticException {
+	if (a instanceof BooleanType) {
+	    return ((BooleanType)a).getValue();
+	} else {
+	    String msg = "expected boolean, found " + a.getType();
+	    throw new SemanticException(msg);
+	}
+    }
+
+    // -----------------------------------------------------------
+
+    // Delegation to the interpreter.
+
+    private Node interpretTopLevelStatement(final AST t) {
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    interpreter.topLevelStatement(t);
+		    return UndefinedType.undefined;
+		}
+	    };
+    }
+
+    private Node interpretStatement(final AST t) {
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    interpreter.statement(t);
+		    return UndefinedType.undefined;
+		}
+	    };
+    }
+
+    private Node interpretExpr(final AST t) {
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    return interpreter.expr(t);
+		}
+	    };
+    }
+
+    // -----------------------------------------------------------
+
+    // Statements.
+
+    private Node sequence(final Node[] statements) {
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    for (int i=0;i<statements.length;i++) {
+			Type result = statements[i].eval();
+			if (result == RETURNED || result == LEFT ||
+			    result == TAIL_CALLED) {
+			    return result;
+			}
+		    }
+		    return UndefinedType.undefined;
+		}
+	    };
+    }
+
+    private Node compileBlock(AST t) {
+	LinkedList statements = new LinkedList();
+	for (AST s=t.getFirstChild();s!=null;s=s.getNextSibling()) {
+	    Node statement = compileStatement(s);
+	    if (statement == null) {
+		statement = interpretStatement(s);
+	    }
+	    statements.add(statement);
+	}
+	return sequence((Node[])statements.toArray(NO_NODES));
+    }
+
+    /**
+     * Compile a statement, returning null if it is not of a kind which
+     * is compiled.
+     */
+    private Node compileStatement(AST t) {
+	switch (t.getType()) {
+	case LITERAL_print:
+	    return compilePrint(t, false);
+	case LITERAL_println:
+	    return compilePrint(t, true);
+	case LITERAL_return:
+	    return compileReturn(t);
+	case LITERAL_last:
+	    return new Node() {
+		    public Type eval() {
+			return LEFT;
+		    }
+		};
+	case LITERAL_apply:
+	    return compileApply(t);
+	case IF_STATEMENT:
+	    return compileIf(t);
+	case WHILE_STATEMENT:
+	    return compileWhile(t);
+	case FOREACH_STATEMENT:
+	    return compileForeach(t);
+	case MEMBER_FUNCALL:
+	    return new MemberCall(t, false);
+	case CALL:
+	    return compileCall(t);
+	case VAR_ASSIGN:
+	    return compileVarAssign(t);
+	case LIST_ASSIGN:
+	    return compileListAssign(t);
+	case ATTR_ASSIGN:
+	    return compileAttrAssign(t);
+	default:
+	    return null;
+	}
+    }
+
+    private Node compilePrint(AST t, final boolean newline) {
+	final Node value = compileExpr(child(t, 0));
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    Type a = value.eval();
+		    if (newline) {
+			context.getOut().println(a);
+		    } else {
+			context.getOut().print(a);
+		    }
+		    return UndefinedType.undefined;
+		}
+	    };
+    }
+
+    private Node compileReturn(AST t) {
+	AST call = child(t, 0);
+	if (call instanceof CGPAST && ((CGPAST)call).isTailCall()) {
+	    return compileTailCall(call);
+	}
+	final Node value = child(t, 0) == null ? null : compileExpr(child(t, 0));
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    if (value != null) {
+			Type a = value.eval();
+			scopes.peek().setReturnValue(a);
+		    }
+		    return completeReturn();
+		}
+	    };
+    }
+
+    private Type completeReturn() throws SemanticException {
+	if (scopes.depth() > 1) {
+	    return RETURNED;
+	} else {
+	    String msg = "return can only be invoked from ";
+	    msg += "within a function, actor, or process.";
+	    throw new SemanticException(msg);
+	}
+    }
+
+    /**
+     * Compile a return statement whose value is that of a call. If the
+     * function called is the one whose body is being evaluated, the
+     * parameters are rebound in its existing scope and callFunction
+     * evaluates the body again.
+     */
+    private Node compileTailCall(final AST t) {
+	final Node target = compileExpr(child(t, 0));
+	final Node[] args = compileArgs(child(t, 1));
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    Type obj = target.eval();
+		    Type[] actuals = evalAll(args);
+		    if (obj == activeFunc &&
+			actuals.length == activeFunc.getFormals().length) {
+			FormalParameter[] formals = activeFunc.getFormals();
+			for (int i=0;i<formals.length;i++) {
+			    activeLocals.def(formals[i].getName(), actuals[i]);
+			}
+			return TAIL_CALLED;
+		    }
+		    scopes.peek().setReturnValue(call(t, obj, actuals));
+		    return completeReturn();
+		}
+	    };
+    }
+
+    private Node compileIf(AST t) {
+	final Node condition = compileExpr(child(child(t, 0), 0));
+	final Node thenBlock = compileBlock(child(t, 1));
+	final Node elseBlock = child(t, 2) == null ? null :
+	    compileBlock(child(t, 2));
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    if (isTrue(condition.eval())) {
+			return thenBlock.eval();
+		    } else if (elseBlock != null) {
+			return elseBlock.eval();
+		    }
+		    return UndefinedType.undefined;
+		}
+	    };
+    }
+
+    private Node compileWhile(AST t) {
+	final Node condition = compileExpr(child(child(t, 0), 0));
+	final Node body = compileBlock(child(t, 1));
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    while (isTrue(condition.eval())) {
+			try {
+			    Type result = body.eval();
+			    if (result == RETURNED || result == TAIL_CALLED) {
+				return result;
+			    } else if (result == LEFT) {
+				break;
+			    }
+			} catch (LastException e) {
+			    // an interpreted last statement was executed
+			    break;
+			}
+		    }
+		    return UndefinedType.undefined;
+		}
+	    };
+    }
+
+    private Node compileForeach(AST t) {
+	final Variable variable = new Variable(child(t, 0));
+	final Node listValue = compileExpr(child(t, 1));
+	final Node body = compileBlock(child(t, 2));
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    Type a = listValue.eval();
+		    if (a instanceof ListType) {
+			ListType list = (ListType)a;
+			for (int i=0;i<list.size();i++) {
+			    variable.define(list.get(i));
+			    try {
+				Type result = body.eval();
+				if (result == RETURNED ||
+				    result == TAIL_CALLED) {
+				    return result;
+				} else if (result == LEFT) {
+				    break;
+				}
+			    } catch (LastException e) {
+				// an interpreted last statement was executed
+				break;
+			    }
+			}
+		    } else {
+			String msg = "expected list, found " + a.getType();
+			throw new SemanticException(msg);
+		    }
+		    return UndefinedType.undefined;
+		}
+	    };
+    }
+
+    private Node compileVarAssign(AST t) {
+	final Variable variable = new Variable(child(t, 0));
+	final Node value = compileExpr(child(t, 1));
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    Type a = UndefinedType.undefined;
+		    try {
+			a = value.eval();
+			variable.define(a);
+		    } catch (IllegalArgumentException e) {
+			throw operationError(e, a, UndefinedType.undefined);
+		    } catch (IndexOutOfBoundsException e) {
+			throw new SemanticException(e.getMessage());
+		    }
+		    return UndefinedType.undefined;
+		}
+	    };
+    }
+
+    private Node compileListAssign(AST t) {
+	final Node list = compileExpr(child(t, 0));
+	final Node index = compileExpr(child(t, 1));
+	final Node value = compileExpr(child(t, 2));
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    Type a = UndefinedType.undefined;
+		    Type b = UndefinedType.undefined;
+		    try {
+			a = list.eval();
+			b = index.eval();
+			a.setNthOp(b, value.eval());
+		    } catch (IllegalArgumentException e) {
+			throw operationError(e, a, b);
+		    } catch (IndexOutOfBoundsException e) {
+			throw new SemanticException(e.getMessage());
+		    }
+		    return UndefinedType.undefined;
+		}
+	    };
+    }
+
+    private Node compileAttrAssign(AST t) {
+	final Node object = compileExpr(child(t, 0));
+	final String name = child(t, 1).getText();
+	final Node value = compileExpr(child(t, 2));
+	return new Node() {
+		private Class receiverClass;
+		private MemberHandle setter;
+
+		public Type eval() throws RecognitionException {
+		    Type a = UndefinedType.undefined;
+		    Type b = UndefinedType.undefined;
+		    try {
+			a = object.eval();
+			b = value.eval();
+			if (a.getClass() != receiverClass) {
+			    receiverClass = a.getClass();
+			    setter = DispatchTable.forClass(receiverClass).
+				getSetter(name);
+			}
+			a.setAttr(name, setter, b);
+		    } catch (IllegalArgumentException e) {
+			throw operationError(e, a, b);
+		    } catch (IndexOutOfBoundsException e) {
+			throw new SemanticException(e.getMessage());
+		    }
+		    return UndefinedType.undefined;
+		}
+	    };
+    }
+
+    // -----------------------------------------------------------
+
+    // Calls.
+
+    /**
+     * The compiled body of a function, and the slot layout of the scope
+     * in which it executes.
+     */
+    private static class Body {
+	SlotLayout layout;
+	Node code;
+    }
+
+    private Body bodyOf(AST block) {
+	Body body = (Body)bodies.get(block);
+	if (body == null) {
+	    body = new Body();
+	    if (block instanceof CGPAST) {
+		body.layout = ((CGPAST)block).getLayout();
+	    }
+	    body.code = compileBlock(block);
+	    bodies.put(block, body);
+	}
+	return body;
+    }
+
+    private static Scope newScope(Body body) {
+	return body.layout != null ? new Scope(body.layout) : new Scope();
+    }
+
+    /**
+     * Invoke a pCG function as the interpreter's funCall rule does.
+     */
+    private Type callFunction(FunctionType func, Type[] actuals)
+	throws RecognitionException {
+	Type r = UndefinedType.undefined;
+	FormalParameter[] formals = func.getFormals();
+
+	// Proceed if there's no parameter length mismatch.
+	if (formals.length != actuals.length) {
+	    String msg = "parameter list length mismatch";
+	    throw new SemanticException(msg);
+	}
+
+	// Has a memoized function's result been cached?
+	MemoCache memo = func.memoCache();
+	if (memo != null) {
+	    Type[] cached = memo.lookup(actuals);
+	    if (cached != null) {
+		return cached[0];
+	    }
+	}
+
+	Body body = bodyOf(func.getCode());
+
+	// Bind formal parameters to actuals in new scope. May be 0.
+	Scope locals = scopes.push(newScope(body));
+	for (int i=0;i<formals.length;i++) {
+	    locals.def(formals[i].getName(), actuals[i]);
+	}
+	locals.def("me", func);
+
+	// Is this a closure? If so, push the environment that existed
+	// at the time of the definition.
+	Scope env = func.getEnv();
+	if (env != null) {
+	    scopes.push(env);
+	}
+
+	// Evaluate the body of the function, again after each tail
+	// call of the function itself. A return statement will have
+	// left the return value in the top scope.
+	FunctionType caller = activeFunc;
+	Scope callerLocals = activeLocals;
+	activeFunc = func;
+	activeLocals = locals;
+	try {
+	    Type result;
+	    while ((result = body.code.eval()) == TAIL_CALLED) {
+		scopes.peek().setReturnValue(UndefinedType.undefined);
+	    }
+	    if (returned(result)) {
+		r = scopes.peek().getReturnValue();
+	    }
+	} finally {
+	    activeFunc = caller;
+	    activeLocals = callerLocals;
+	}
+
+	if (env != null) {
+	    scopes.pop();
+	}
+	scopes.pop();
+
+	if (memo != null) {
+	    memo.store(actuals, new Type[] { r });
+	}
+
+	return r;
+    }
+
+    private Node[] compileArgs(AST t) {
+	LinkedList args = new LinkedList();
+	for (AST a=t.getFirstChild();a!=null;a=a.getNextSibling()) {
+	    args.add(compileExpr(a));
+	}
+	return (Node[])args.toArray(NO_NODES);
+    }
+
+    private Node compileCall(final AST t) {
+	final Node target = compileExpr(child(t, 0));
+	final Node[] args = compileArgs(child(t, 1));
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    Type obj = target.eval();
+		    return call(t, obj, evalAll(args));
+		}
+	    };
+    }
+
+    private Type call(AST t, Type obj, Type[] actuals)
+	throws RecognitionException {
+	// Test for an actor before a lambda since the
+	// actor type is a subclass of the lambda type.
+	if (obj instanceof ActorType) {
+	    return interpreter.actorCall(t, obj, toList(actuals), false);
+	} else if (obj instanceof LambdaType) {
+	    return interpreter.lambdaCall(t, obj, toList(actuals));
+	} else if (obj instanceof FunctionType) {
+	    return callFunction((FunctionType)obj, actuals);
+	} else if (obj instanceof ProcessType) {
+	    return interpreter.processCall(t, obj, toList(actuals));
+	} else {
+	    String msg = "expecting function, lambda, actor, ";
+	    msg += "or process; found " + obj.getType() + ".";
+	    throw new SemanticException(msg);
+	}
+    }
+
+    private Node compileApply(AST t) {
+	final Node function = compileExpr(child(t, 0));
+	final Node argList = compileExpr(child(t, 1));
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    Type a = function.eval();
+		    Type b = argList.eval();
+		    if (a instanceof FunctionType && b instanceof ListType) {
+			return callFunction((FunctionType)a,
+					    ((ListType)b).toArray());
+		    } else {
+			String msg = "function and argument list" +
+			    " expected, " + a.getType() +
+			    " and " + b.getType() + " found.";
+			throw new SemanticException(msg);
+		    }
+		}
+	    };
+    }
+
+    /**
+     * A member function call, which records the method last invoked
+     * along with the class of the object it was invoked on. As an
+     * expression, failures are reported as for other operations.
+     */
+    private class MemberCall extends Node {
+	private Node object;
+	private String name;
+	private Node[] args;
+	private boolean isExpr;
+	private Class receiverClass;
+	private MemberHandle method;
+
+	MemberCall(AST t, boolean isExpr) {
+	    object = compileExpr(child(t, 0));
+	    name = child(t, 1).getText();
+	    args = compileArgs(child(t, 2));
+	    this.isExpr = isExpr;
+	}
+
+	private Type invoke(Type a) throws RecognitionException {
+	    Object[] actuals = evalAll(args);
+	    if (a.getClass() != receiverClass || method == null ||
+		!DispatchTable.isApplicable(method, actuals)) {
+		receiverClass = a.getClass();
+		method = DispatchTable.forClass(receiverClass).
+		    getMemberFunc(name, actuals);
+	    }
+	    return a.invokeMemberFunc(name, method, actuals);
+	}
+
+	public Type eval() throws RecognitionException {
+	    if (!isExpr) {
+		invoke(object.eval());
+		return UndefinedType.undefined;
+	    }
+	    Type a = UndefinedType.undefined;
+	    try {
+		a = object.eval();
+		return invoke(a);
+	    } catch (IllegalArgumentException e) {
+		throw operationError(e, a, UndefinedType.undefined);
+	    } catch (IndexOutOfBoundsException e) {
+		throw new SemanticException(e.getMessage());
+	    }
+	}
+    }
+
+    // -----------------------------------------------------------
+
+    // Expressions.
+
+    /**
+     * A variable, the value of which is looked up and defined according
+     * to the resolution of its name by the NameResolver.
+     */
+    private class Variable extends Node {
+	private String name;
+	private SlotLayout layout;
+	private int slot = CGPAST.UNRESOLVED;
+
+	Variable(AST id) {
+	    name = id.getText();
+	    if (id instanceof CGPAST) {
+		layout = ((CGPAST)id).getLayout();
+		slot = ((CGPAST)id).getSlot();
+	    }
+	}
+
+	public Type eval() {
+	    if (slot >= 0) {
+		return scopes.findLocal(name, layout, slot);
+	    } else if (slot == CGPAST.GLOBAL) {
+		return scopes.findGlobal(name);
+	    } else {
+		return scopes.find(name);
+	    }
+	}
+
+	void define(Type value) {
+	    Scope top = scopes.peek();
+	    if (slot >= 0 && top.getLayout() == layout) {
+		top.setSlot(slot, value);
+	    } else {
+		top.def(name, value);
+	    }
+	}
+    }
+
+    /**
+     * An operation on the value of one expression.
+     */
+    abstract private static class Unary extends Node {
+	private Node operand;
+
+	Unary(Node operand) {
+	    this.operand = operand;
+	}
+
+	abstract Type apply(Type a);
+
+	public Type eval() throws RecognitionException {
+	    Type a = UndefinedType.undefined;
+	    try {
+		a = operand.eval();
+		return apply(a);
+	    } catch (IllegalArgumentException e) {
+		throw operationError(e, a, UndefinedType.undefined);
+	    } catch (IndexOutOfBoundsException e) {
+		throw new SemanticException(e.getMessage());
+	    }
+	}
+    }
+
+    /**
+     * An operation on the values of two expressions.
+     */
+    abstract private static class Binary extends Node {
+	private Node left;
+	private Node right;
+
+	Binary(Node left, Node right) {
+	    this.left = left;
+	    this.right = right;
+	}
+
+	abstract Type apply(Type a, Type b);
+
+	public Type eval() throws RecognitionException {
+	    Type a = UndefinedType.undefined;
+	    Type b = UndefinedType.undefined;
+	    try {
+		a = left.eval();
+		b = right.eval();
+		return apply(a, b);
+	    } catch (IllegalArgumentException e) {
+		throw operationError(e, a, b);
+	    } catch (IndexOutOfBoundsException e) {
+		throw new SemanticException(e.getMessage());
+	    }
+	}
+    }
+
+    private Node compileExpr(AST t) {
+	switch (t.getType()) {
+	case OR: case AND: case GT: case LT: case GE: case LE: case EQ:
+	case NE: case IS: case PLUS: case MUL: case LITERAL_div:
+	case LITERAL_mod: case LIST_SELECTION:
+	    return compileBinary(t);
+	case MINUS:
+	    if (child(t, 1) != null) {
+		return compileBinary(t);
+	    }
+	    return compileUnary(t);
+	case NOT:
+	    return compileUnary(t);
+	case MEMBER_FUNCALL:
+	    return new MemberCall(t, true);
+	case ATTR_SELECTION:
+	    return compileAttrSelection(t);
+	case CALL:
+	    return compileCall(t);
+	case LITERAL_apply:
+	    return compileApply(t);
+	case IDENT:
+	    return new Variable(t);
+	case ANON_FUN_DEF:
+	    return compileAnonFunDef(t);
+	case LIST:
+	    return compileList(t);
+	case EMPTY_LIST:
+	    return new Node() {
+		    public Type eval() {
+			return new ListType();
+		    }
+		};
+	case SET:
+	    return compileSet(t);
+	case EMPTY_SET:
+	    return new Node() {
+		    public Type eval() {
+			return new SetType();
+		    }
+		};
+	case MAP:
+	    return compileMap(t);
+	case EMPTY_MAP:
+	    return new Node() {
+		    public Type eval() {
+			return new MapType();
+		    }
+		};
+	case NUMBER:
+	    return compileNumber(t);
+	case STRING:
+	case LITERAL_number: case LITERAL_string: case LITERAL_boolean:
+	case LITERAL_concept: case LITERAL_graph: case LITERAL_list:
+	case LITERAL_function: case LITERAL_lambda: case LITERAL_actor:
+	case LITERAL_process: case LITERAL_file: case LITERAL_undefined:
+	    final String s = t.getText();
+	    return new Node() {
+		    public Type eval() {
+			return new StringType(s);
+		    }
+		};
+	case LITERAL_true:
+	case LITERAL_false:
+	    final boolean truth = t.getType() == LITERAL_true;
+	    return new Node() {
+		    public Type eval() {
+			return new BooleanType(truth);
+		    }
+		};
+	default:
+	    return interpretExpr(t);
+	}
+    }
+
+    private Node compileBinary(AST t) {
+	Node left = compileExpr(child(t, 0));
+	Node right = compileExpr(child(t, 1));
+	switch (t.getType()) {
+	case OR:
+	    return new Binary(left, right) {
+		    Type apply(Type a, Type b) { return a.orOp(b); }
+		};
+	case AND:
+	    return new Binary(left, right) {
+		    Type apply(Type a, Type b) { return a.andOp(b); }
+		};
+	case GT:
+	    return new Binary(left, right) {
+		    Type apply(Type a, Type b) { return a.gtOp(b); }
+		};
+	case LT:
+	    return new Binary(left, right) {
+		    Type apply(Type a, Type b) { return a.ltOp(b); }
+		};
+	case GE:
+	    return new Binary(left, right) {
+		    Type apply(Type a, Type b) { return a.geOp(b); }
+		};
+	case LE:
+	    return new Binary(left, right) {
+		    Type apply(Type a, Type b) { return a.leOp(b); }
+		};
+	case EQ:
+	    return new Binary(left, right) {
+		    Type apply(Type a, Type b) { return a.eqOp(b); }
+		};
+	case NE:
+	    return new Binary(left, right) {
+		    Type apply(Type a, Type b) { return a.neOp(b); }
+		};
+	case IS:
+	    return new Binary(left, right) {
+		    Type apply(Type a, Type b) { return a.isOp(b); }
+		};
+	case PLUS:
+	    return new Binary(left, right) {
+		    Type apply(Type a, Type b) { return a.addOp(b); }
+		};
+	case MINUS:
+	    return new Binary(left, right) {
+		    Type apply(Type a, Type b) { return a.subtractOp(b); }
+		};
+	case MUL:
+	    return new Binary(left, right) {
+		    Type apply(Type a, Type b) { return a.multiplyOp(b); }
+		};
+	case LITERAL_div:
+	    return new Binary(left, right) {
+		    Type apply(Type a, Type b) { return a.divideOp(b); }
+		};
+	case LITERAL_mod:
+	    return new Binary(left, right) {
+		    Type apply(Type a, Type b) { return a.modulusOp(b); }
+		};
+	default: // LIST_SELECTION
+	    return new Binary(left, right) {
+		    Type apply(Type a, Type b) { return a.getNthOp(b); }
+		};
+	}
+    }
+
+    private Node compileUnary(AST t) {
+	Node operand = compileExpr(child(t, 0));
+	if (t.getType() == MINUS) {
+	    return new Unary(operand) {
+		    Type apply(Type a) { return a.negateOp(); }
+		};
+	} else {
+	    return new Unary(operand) {
+		    Type apply(Type a) { return a.notOp(); }
+		};
+	}
+    }
+
+    private Node compileAttrSelection(AST t) {
+	final String name = child(t, 1).getText();
+	return new Unary(compileExpr(child(t, 0))) {
+		private Class receiverClass;
+		private MemberHandle getter;
+
+		Type apply(Type a) {
+		    if (a.getClass() != receiverClass) {
+			receiverClass = a.getClass();
+			getter = DispatchTable.forClass(receiverClass).
+			    getGetter(name);
+		    }
+		    return a.getAttr(name, getter);
+		}
+	    };
+    }
+
+    private Node compileNumber(AST t) {
+	final double n;
+	try {
+	    n = Double.valueOf(t.getText()).doubleValue();
+	} catch(NumberFormatException e) {
+	    // Leave the error to the interpreter.
+	    return interpretExpr(t);
+	}
+	return new Node() {
+		public Type eval() {
+		    return new NumberType(n);
+		}
+	    };
+    }
+
+    private Node compileList(AST t) {
+	final Node[] elements = compileArgs(t);
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    LinkedList list = new LinkedList();
+		    for (int i=0;i<elements.length;i++) {
+			list.addLast(elements[i].eval());
+		    }
+		    return new ListType(list);
+		}
+	    };
+    }
+
+    private Node compileSet(AST t) {
+	final Node[] members = compileArgs(t);
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    SetType set = new SetType();
+		    for (int i=0;i<members.length;i++) {
+			set.add(members[i].eval());
+		    }
+		    return set;
+		}
+	    };
+    }
+
+    /**
+     * The children of a map literal alternate between keys and values.
+     */
+    private Node compileMap(AST t) {
+	final Node[] entries = compileArgs(t);
+	return new Node() {
+		public Type eval() throws RecognitionException {
+		    MapType map = new MapType();
+		    for (int i=0;i<entries.length;i+=2) {
+			map.put(entries[i].eval(), entries[i+1].eval());
+		    }
+		    return map;
+		}
+	    };
+    }
+
+    private Node compileAnonFunDef(AST t) {
+	LinkedList formals = new LinkedList();
+	AST c = t.getFirstChild();
+	for (;c!=null && c.getType() == IDENT;c=c.getNextSibling()) {
+	    formals.add(new FormalParameter(c.getText()));
+	}
+	final FormalParameter[] params = (FormalParameter[])
+	    formals.toArray(new FormalParameter[0]);
+	final AST block = c;
+	return new Node() {
+		public Type eval() {
+		    return new FunctionType(params, block);
+		}
+	    };
+    }
+}
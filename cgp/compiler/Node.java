@@ -0,0 +1,36 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * A node of a compiled pCG program.
+ *
+ * Each statement or expression of a program is translated once by the
+ * Compiler into a node, linked directly to the nodes of its parts, which
+ * carries out the statement or computes the expression's value each time
+ * it is evaluated. A statement yields the undefined value.
+ */
+
+package cgp.compiler;
+
+import antlr.RecognitionException;
+
+import cgp.runtime.Type;
+
+abstract public class Node {
+    // Public methods.
+    abstract public Type eval() throws RecognitionException;
+}
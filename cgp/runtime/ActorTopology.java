@@ -0,0 +1,233 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * The source, sink, and intermediate concepts of an actor graph.
+ *
+ * Sources provide input to one or more sub-actors but are output from
+ * none, sinks take output from one (or if conflicting, more than one)
+ * sub-actor but provide input to none, and intermediate concepts do
+ * both. See [Lukose & Mineau 1998] or my thesis for a description of
+ * each.
+ *
+ * Each kind of concept is recorded as a set of positions in the graph's
+ * concept list. Sources and intermediates are in ascending order. Sinks
+ * are ordered by depth, i.e. by the number of sub-actors on the longest
+ * path of data flow to them, deepest first, and otherwise by position.
+ * So an actor's final result comes before any by-product of an earlier
+ * stage. This order decides how a sub-actor's sinks are matched with the
+ * outputs of the relation which invokes it.
+ *
+ * Since a copy of a graph lists its concepts in the same order as the
+ * original, the topology of an actor's defining graph applies equally to
+ * every copy made for activation, so need only be determined once per
+ * actor definition.
+ */
+
+package cgp.runtime;
+
+import cgp.runtime.ConceptType;
+import cgp.runtime.GraphType;
+
+import java.util.HashMap;
+
+import notio.Actor;
+import notio.Concept;
+import notio.Graph;
+
+public class ActorTopology {
+    // Instance fields.
+    private int[] sources;
+    private int[] sinks;
+    private int[] intermediates;
+    private HashMap positions; // Concept -> Integer
+
+    // Constructors.
+
+    /**
+     * Determine the topology of the specified actor graph.
+     */
+    public ActorTopology(Graph g) {
+	Actor[] actors = g.getActorRelations();
+	Concept[] concepts = g.getConcepts();
+
+	positions = new HashMap();
+	for (int i=0;i<concepts.length;i++) {
+	    positions.put(concepts[i], new Integer(i));
+	}
+
+	// How many sub-actors does a particular concept input to
+	// or output from? Any concept which isn't related to an
+	// actor will in the end still have zero counts.
+	int[] inCounts = new int[concepts.length];
+	int[] outCounts = new int[concepts.length];
+	for (int i=0;i<actors.length;i++) {
+	    Concept[] ins = actors[i].getInputArguments();
+	    for (int j=0;j<ins.length;j++) {
+		inCounts[((Integer)positions.get(ins[j])).intValue()]++;
+	    }
+
+	    Concept[] outs = actors[i].getOutputArguments();
+	    for (int j=0;j<outs.length;j++) {
+		outCounts[((Integer)positions.get(outs[j])).intValue()]++;
+	    }
+	}
+
+	int numSources = 0, numSinks = 0, numIntermediates = 0;
+	for (int i=0;i<concepts.length;i++) {
+	    if (inCounts[i] >= 1 && outCounts[i] == 0) {
+		numSources++;
+	    } else if (inCounts[i] == 0 && outCounts[i] >= 1) {
+		numSinks++;
+	    } else if (inCounts[i] >= 1 && outCounts[i] >= 1) {
+		numIntermediates++;
+	    }
+	}
+
+	// How deep is each concept in the flow of data?
+	int[] depths = new int[concepts.length];
+	for (int i=0;i<concepts.length;i++) {
+	    depths[i] = -1;
+	}
+	for (int i=0;i<concepts.length;i++) {
+	    depthOf(i, concepts, actors, depths);
+	}
+
+	sources = new int[numSources];
+	sinks = new int[numSinks];
+	intermediates = new int[numIntermediates];
+	numSources = numSinks = numIntermediates = 0;
+	for (int i=0;i<concepts.length;i++) {
+	    if (inCounts[i] >= 1 && outCounts[i] == 0) {
+		sources[numSources++] = i;
+	    } else if (inCounts[i] == 0 && outCounts[i] >= 1) {
+		sinks[numSinks++] = i;
+	    } else if (inCounts[i] >= 1 && outCounts[i] >= 1) {
+		intermediates[numIntermediates++] = i;
+	    }
+	}
+
+	// Order the sinks by depth, deepest first, by insertion so that
+	// sinks of equal depth remain in ascending order.
+	for (int i=1;i<sinks.length;i++) {
+	    int sink = sinks[i];
+	    int j = i;
+	    for (;j>0 && depths[sinks[j-1]] < depths[sink];j--) {
+		sinks[j] = sinks[j-1];
+	    }
+	    sinks[j] = sink;
+	}
+    }
+
+    // Private methods.
+
+    /**
+     * Return the depth of the concept at the specified position, i.e.
+     * 0 if no sub-actor outputs to it, otherwise one more than that of
+     * the deepest input of any sub-actor which does, recording it in
+     * the depths array. A concept whose depth is being determined, as 
+     * when sub-actors form a cycle, counts as depth 0.
+     */
+    private int depthOf(int i, Concept[] concepts, Actor[] actors,
+			int[] depths) {
+	if (depths[i] >= 0) {
+	    return depths[i];
+	}
+	depths[i] = 0;
+	int depth = 0;
+	for (int a=0;a<actors.length;a++) {
+	    Concept[] outs = actors[a].getOutputArguments();
+	    boolean outputs = false;
+	    for (int j=0;j<outs.length && !outputs;j++) {
+		outputs = outs[j] == concepts[i];
+	    }
+	    if (!outputs) {
+		continue;
+	    }
+	    Concept[] ins = actors[a].getInputArguments();
+	    for (int j=0;j<ins.length;j++) {
+		int in = ((Integer)positions.get(ins[j])).intValue();
+		depth = Math.max(depth, 1 + depthOf(in, concepts, actors,
+						    depths));
+	    }
+	    if (ins.length == 0) {
+		depth = Math.max(depth, 1);
+	    }
+	}
+	depths[i] = depth;
+	return depth;
+    }
+
+    private static ConceptType[] select(GraphType g, int[] positions) {
+	Concept[] concepts = g.getValue().getConcepts();
+	ConceptType[] selected = new ConceptType[positions.length];
+	for (int i=0;i<positions.length;i++) {
+	    selected[i] = new ConceptType(concepts[positions[i]]);
+	}
+	return selected;
+    }
+
+    // Public methods.
+
+    /**
+     * Return the position of the specified concept of the graph this
+     * topology was determined from, or -1 if it is not one of them.
+     */
+    public int positionOf(Concept c) {
+	Integer i = (Integer)positions.get(c);
+	return i == null ? -1 : i.intValue();
+    }
+
+    /**
+     * Return the positions of the source concepts.
+     */
+    public int[] getSourcePositions() {
+	return sources;
+    }
+
+    /**
+     * Return the positions of the sink concepts.
+     */
+    public int[] getSinkPositions() {
+	return sinks;
+    }
+
+    /**
+     * Return the source concepts of the specified graph, which must
+     * be the graph this topology was determined from or a copy of it.
+     */
+    public ConceptType[] getSources(GraphType g) {
+	return select(g, sources);
+    }
+
+    /**
+     * Return the sink concepts of the specified graph, which must
+     * be the graph this topology was determined from or a copy of it.
+     */
+    public ConceptType[] getSinks(GraphType g) {
+	return select(g, sinks);
+    }
+
+    /**
+     * Return the intermediate concepts of the specified graph, which
+     * must be the graph this topology was determined from or a copy
+     * of it.
+     */
+    public ConceptType[] getIntermediates(GraphType g) {
+	return select(g, intermediates);
+    }
+}
@@ -24,22 +24,27 @@
 package cgp.runtime;
 
 import cgp.runtime.ActorException;
+import cgp.runtime.ActorTopology;
 import cgp.runtime.ConceptType;
 import cgp.runtime.FormalParameter;
 import cgp.runtime.FunctionType;
 import cgp.runtime.GraphType;
 import cgp.runtime.LambdaType;
+import cgp.runtime.MemoCache;
+import cgp.runtime.Namespace;
 import cgp.runtime.ScopeStack;
 import cgp.runtime.Type;
 
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.TreeSet;
 
 import notio.Actor;
 import notio.Concept;
 import notio.CopyingScheme;
 import notio.Graph;
+import notio.Referent;
 import notio.Relation;
 
 public class ActorType extends LambdaType {
@@ -49,7 +54,24 @@ public class ActorType extends LambdaType {
 
     // Instance fields.
     private ScopeStack scopes;
-    private LinkedList runList;
+    private ActorTopology topology; // shared by copies of this actor
+    private MemoCache memo; // shared by activations, if memoized
+
+    // Concept bindings for an activation, by position in the defining
+    // graph. Null entries are as in the defining graph, which is shared
+    // by all activations and left unchanged; others are private copies
+    // of the defining graph's concepts, made as they are bound.
+    private Concept[] concepts; // of the defining graph
+    private Concept[] frame;
+
+    // Sub-actor scheduling state for an activation.
+    private Actor[] subActors;
+    private HashMap actorIndices; // Actor -> Integer
+    private int[] pending; // count of unbound inputs per sub-actor
+    private HashMap consumers; // unbound Concept -> LinkedList of Actors
+    private TreeSet ready; // indices of sub-actors ready to execute
+    private int remaining; // sub-actors yet to execute
+    private LinkedList lastRun; // indices of sub-actors last returned
 
     // Constructors.
 
@@ -60,7 +82,7 @@ public class ActorType extends LambdaType {
     public ActorType(String name, FormalParameter[] formals, GraphType body) {
 	super(name, formals, body);
 	this.scopes = Type.getScopeStack();
-	this.runList = null;
+	this.subActors = null;
 	setType("actor");
     }
 
@@ -71,7 +93,7 @@ public class ActorType extends LambdaType {
     public ActorType(GraphType body) {
 	super(ANON_NAME, new FormalParameter[0], body);
 	this.scopes = Type.getScopeStack();
-	this.runList = null;
+	this.subActors = null;
 	setType("actor");
     }
 
@@ -82,7 +104,21 @@ public class ActorType extends LambdaType {
 		     GraphType defGraph, Graph body) {
 	super(name, formals, defGraph, body);
 	this.scopes = Type.getScopeStack();
-	this.runList = null;
+	this.subActors = null;
+	setType("actor");
+    }
+
+    /** 
+     * Invoke this constructor when activate()ing.
+     */
+    private ActorType(ActorType definition) {
+	super(definition);
+	this.scopes = Type.getScopeStack();
+	this.topology = definition.getTopology();
+	this.memo = definition.memoCache();
+	this.concepts = defGraph.getValue().getConcepts();
+	this.frame = new Concept[concepts.length];
+	this.subActors = null;
 	setType("actor");
     }
 
@@ -102,16 +138,44 @@ public class ActorType extends LambdaType {
      * source concept designators are already bound, so name to actual 
      * argument mapping is impossible, e.g. in the case of a recursive,
      * anonymous actor. Indeed, this would seem to be the *only* case. 
-     * It is assumed that a copy of the defining graph is being used when 
+     * It is assumed that an activation of the actor is being used when 
      * binding.
      */
     public void bindParametersToSourceConcepts(Type[] actuals) {
-	ConceptType[] sources = getSources(body);
+	ConceptType[] sources = sourceBindings();
 	for (int i=0;i<sources.length;i++) {
 	    sources[i].setDesignatorValue(actuals[i]);
 	}
     }
 
+    /** 
+     * Bind concept designators with defined variable names matching 
+     * formal parameter names to the actuals, by argument order. It is
+     * assumed that an activation of the actor is being used when 
+     * binding.
+     */
+    public void bindParameters(Type[] actuals) {
+	Namespace bindings = new Namespace();
+	for (int i=0;i<formals.length;i++) {
+	    bindings.def("*" + formals[i].getName(), actuals[i]);
+	}
+
+	for (int i=0;i<frame.length;i++) {
+	    ConceptType concept = new ConceptType(conceptAt(i));
+	    if (concept.hasVarDesignator()) {
+		Type designator = concept.getDesignatorValue();
+		if (designator instanceof StringType) {
+		    String name = ((StringType)designator).getValue();
+		    Type value = bindings.get(name);
+		    if (value != UndefinedType.undefined) {
+			new ConceptType(bindingAt(i)).
+			    setDesignatorValue(value);
+		    }
+		}
+	    }
+	}
+    }
+
     /**
      * 1. Identify source, intermediate, and sink concepts. Also look for
      *    conflicting concepts and raise an exception if found.<p>
@@ -128,7 +192,7 @@ public class ActorType extends LambdaType {
 	// 3. Determine whether sub-actors exist in this graph, each of which
 	//    must correspond to a user-defined function or actor. Note that
 	//    the special sub-actor name SELF_NAME refers to the current actor.
-	Actor[] actors = body.getValue().getActorRelations();
+	Actor[] actors = defGraph.getValue().getActorRelations();
 
 	if (actors.length == 0) {
 	    String msg = "'" + getId() + "' is not an actor.";
@@ -156,21 +220,184 @@ public class ActorType extends LambdaType {
      */
     public LambdaType copy() {
 	// Only the graph can be mutated, so just clone the defining graph.
-	return new ActorType(name, formals, 
-			     defGraph,
-			     defGraph.getValue().
-			         copy(GraphType.COPYING_SCHEME));
+	// The copy's concepts are in the same order as those of the 
+	// defining graph, so its topology is the same too.
+	ActorType actor = new ActorType(name, formals, 
+					defGraph,
+					defGraph.getValue().
+					    copy(GraphType.COPYING_SCHEME));
+	actor.topology = getTopology();
+	return actor;
+    }
+
+    /**
+     * Create an activation of this actor for the purpose of actor
+     * execution. Rather than a copy of the defining graph being mutated,
+     * only those concepts bound during execution are copied, the rest
+     * being shared with the defining graph. The activation's body is
+     * the resulting graph, which is only made if asked for.
+     */
+    public ActorType activate() {
+	return new ActorType(this);
     }
 
     /**
-     * Store each sub-actor in a run list.
+     * Return the body of this actor. For an activation, this is a copy
+     * of the defining graph with the activation's concept bindings.
+     */
+    public GraphType getBody() {
+	if (body == null) {
+	    GraphType g = new GraphType(defGraph.getValue());
+	    Concept[] copies = g.getValue().getConcepts();
+	    for (int i=0;i<frame.length;i++) {
+		if (frame[i] != null) {
+		    copies[i].setType(frame[i].getType());
+		    Referent ref = frame[i].getReferent();
+		    copies[i].setReferent(ref == null ? null :
+					  ref.copy(GraphType.COPYING_SCHEME));
+		}
+	    }
+	    body = g;
+	}
+	return body;
+    }
+
+    /**
+     * Return this activation's source concepts, in the order of the
+     * defining graph's concepts. These may be bound by the caller.
+     */
+    public ConceptType[] sourceBindings() {
+	int[] positions = getTopology().getSourcePositions();
+	ConceptType[] sources = new ConceptType[positions.length];
+	for (int i=0;i<positions.length;i++) {
+	    sources[i] = new ConceptType(bindingAt(positions[i]));
+	}
+	return sources;
+    }
+
+    /**
+     * Return this activation's sink concepts, in the order of the
+     * defining graph's concepts, for their bound values.
+     */
+    public ConceptType[] sinkBindings() {
+	int[] positions = getTopology().getSinkPositions();
+	ConceptType[] sinks = new ConceptType[positions.length];
+	for (int i=0;i<positions.length;i++) {
+	    sinks[i] = new ConceptType(conceptAt(positions[i]));
+	}
+	return sinks;
+    }
+
+    /**
+     * Return the cache of this actor's results, or null if the actor is
+     * not memoized. With the MEMOACTORS option, all actors are.
+     */
+    public MemoCache memoCache() {
+	if (memo == null && Type.getContext().getMemoActorsOpt()) {
+	    memo = new MemoCache();
+	}
+	return memo;
+    }
+
+    /**
+     * Return the designator values of this activation's source concepts,
+     * in the order of the defining graph's concepts.
+     */
+    public Type[] sourceValues() {
+	int[] positions = getTopology().getSourcePositions();
+	Type[] values = new Type[positions.length];
+	for (int i=0;i<positions.length;i++) {
+	    values[i] = new ConceptType(conceptAt(positions[i])).
+		getDesignatorValue();
+	}
+	return values;
+    }
+
+    /**
+     * Return the designator values of this activation's sink concepts,
+     * in the order of the defining graph's concepts.
+     */
+    public Type[] sinkValues() {
+	int[] positions = getTopology().getSinkPositions();
+	Type[] values = new Type[positions.length];
+	for (int i=0;i<positions.length;i++) {
+	    values[i] = new ConceptType(conceptAt(positions[i])).
+		getDesignatorValue();
+	}
+	return values;
+    }
+
+    /**
+     * Bind this activation's sink concepts to the specified values, as
+     * previously returned by sinkValues(), e.g. from a memo cache.
+     */
+    public void bindSinkValues(Type[] values) {
+	int[] positions = getTopology().getSinkPositions();
+	for (int i=0;i<positions.length;i++) {
+	    new ConceptType(bindingAt(positions[i])).
+		setDesignatorValue(values[i]);
+	}
+    }
+
+    /**
+     * Return the source concepts of the specified graph, which must be
+     * this actor's defining graph or a copy of it, e.g. the body of the
+     * actor or of a copy of it.
+     */
+    public ConceptType[] sourcesOf(GraphType g) {
+	return getTopology().getSources(g);
+    }
+
+    /**
+     * Return the sink concepts of the specified graph, which must be
+     * this actor's defining graph or a copy of it, e.g. the body of the
+     * actor or of a copy of it.
+     */
+    public ConceptType[] sinksOf(GraphType g) {
+	return getTopology().getSinks(g);
+    }
+
+    /**
+     * Prepare to schedule the sub-actors by data flow. Each sub-actor 
+     * has a count of its distinct input concepts which are not yet 
+     * bound, and each such concept a list of the sub-actors it is an
+     * input to. A sub-actor is ready to execute when its count falls
+     * to zero. This actor must be an activation.
      */ 
     public void initActorExecution() {
-	// Create the run-list, starting with all sub-actors.
-	Actor[] subActors = collectSubActors();
-	runList = new LinkedList();
+	subActors = collectSubActors();
+	remaining = subActors.length;
+	pending = new int[subActors.length];
+	consumers = new HashMap();
+	ready = new TreeSet();
+	lastRun = new LinkedList();
+
+	for (int i=0;i<subActors.length;i++) {
+	    Concept[] inputs = subActors[i].getInputArguments();
+	    for (int j=0;j<inputs.length;j++) {
+		LinkedList users = (LinkedList)consumers.get(inputs[j]);
+		if (users == null) {
+		    if (!isUnbound(inputs[j])) {
+			// Already bound.
+			continue;
+		    }
+		    users = new LinkedList();
+		    consumers.put(inputs[j], users);
+		} else if (users.getLast() == subActors[i]) {
+		    // Repeated input.
+		    continue;
+		}
+		users.add(subActors[i]);
+		pending[i]++;
+	    }
+	}
+
+	actorIndices = new HashMap();
 	for (int i=0;i<subActors.length;i++) {
-	    runList.add(subActors[i]);
+	    actorIndices.put(subActors[i], new Integer(i));
+	    if (pending[i] == 0) {
+		ready.add(new Integer(i));
+	    }
 	}
     }
 
@@ -178,18 +405,24 @@ public class ActorType extends LambdaType {
      * Is this actor instance still executable? 
      */
     public boolean isExecutable() {
-	return runList != null && runList.size() > 0;
+	return subActors != null && remaining > 0;
     }
 
     /**
      * Return the sub-actor (actor or function) which is next ready to
      * to be executed by virtue of having all input concept designators
      * bound to pCG literals. Note that there may be multiple sub-actors
-     * in the ready state simultaneously, but the first encountered on the
-     * run-list is arbitrarily chosen. A requirement therefore is that
-     * sub-actor execution must be referentially transparent. Note that
-     * once chosen for execution, a sub-actor becomes inelligible for
-     * execution again.
+     * in the ready state simultaneously, but the first in the graph's
+     * order of sub-actors is arbitrarily chosen. A requirement therefore
+     * is that sub-actor execution must be referentially transparent. 
+     * Note that once chosen for execution, a sub-actor becomes 
+     * inelligible for execution again.
+     *
+     * Any concepts bound by the sub-actor returned by the previous call
+     * are first accounted for, making their consumers ready as their last
+     * unbound input is bound. So scheduling costs time in proportion to 
+     * the number of sub-actor arguments over an activation, rather than
+     * every sub-actor being checked on every call.
      *
      * Returns null if no sub-actors can be executed.
      *
@@ -202,152 +435,131 @@ public class ActorType extends LambdaType {
      *     returns true.
      */
     public SubActorInfo getNextSubActor() {
-	SubActorInfo info = null;
-	boolean isReady = false;
-
-	for (int i=0;i<runList.size();i++) {
-	    // Check next sub-actor's executable readiness.
-	    Actor subActor = (Actor)runList.get(i);
-	    Concept[] inputs = subActor.getInputArguments();
-	    LinkedList inArgs = new LinkedList();
-	    isReady = true;
-	    for (int j=0;j<inputs.length;j++) {
-		ConceptType inArg = new ConceptType(inputs[j]);
-		if (inArg.hasVarDesignator()) {
-		    // This sub-actor isn't ready to execute since
-		    // an argument is unbound.
-		    isReady = false;
-		    break;
-		} else {
-		    // Accumulate input argument concepts.
-		    //
-		    // Note that the order of these is dictated by the
-		    // input arc ordering. In LF or CGIF, this ordering
-		    // can be stated explicitly, and tools such as 
-		    // CharGer permit such arc numbering.
-		    inArgs.add(inArg);
-		}
-	    }
+	propagateBindings();
 
-	    // If the sub-actor is ready to execute, get the output concepts,
-	    // get the underlying function/actor, and wrap these along with
-	    // the input arguments in an object. Also remove the sub-actor
-	    // from the run-list since it has been cleared for execution
-	    // and once run, will not be elligible to do so again.
-	    if (isReady) {
-		Concept[] outputs = subActor.getOutputArguments();
-		LinkedList outArgs = new LinkedList();
-		for (int j=0;j<outputs.length;j++) {
-		    outArgs.add(new ConceptType(outputs[j]));
-		}
-		Type executor = null; // keep javac happy
-		String name = subActor.getType().getLabel();
-		if (!name.equals(SELF_NAME)) {
-		    executor = scopes.find(name);
-		} else {
-		    executor = this;
-		}
-		info = new SubActorInfo(executor, inArgs, outArgs, true);
-		Actor s = (Actor)runList.get(i);
-		runList.remove(i);
-		break;
-	    }
+	if (ready.isEmpty()) {
+	    return null;
 	}
 
-	return info;
+	Integer next = (Integer)ready.first();
+	ready.remove(next);
+	lastRun.add(next);
+	remaining--;
+	return makeSubActorInfo(subActors[next.intValue()]);
     }
 
     /**
-     * Return a hash containing the per sub-actor count of input and output
-     * concepts in the supplied graph. These counts can then be used to 
-     * determine sink, source, intermediate, or conflicting concept nodes.
-     * See [Lukose & Mineau 1998] or my thesis for a description of each.
-     */
-    static private Hashtable getSubActorIOCounts(GraphType body) {
-	Actor[] actors = body.getValue().getActorRelations();
-	Concept[] concepts = body.getValue().getConcepts();
-	Hashtable ioCounts = new Hashtable();
-
-	// Initialise all concept I/O counts to zero.
-	// Any concept which isn't related to an actor
-	// will in the end still have zero counts. 
-	for (int i=0;i<concepts.length;i++) {
-	    ioCounts.put(concepts[i], new ConceptCounts());
+     * Return all of the sub-actors which are ready to be executed, as
+     * for getNextSubActor(), in the graph's order of sub-actors. None
+     * of them depends upon another for input, so if sub-actor execution
+     * is referentially transparent, they may be executed in any order
+     * or at once. Returns an empty array if no sub-actors can be
+     * executed.
+     */
+    public SubActorInfo[] getReadySubActors() {
+	propagateBindings();
+
+	SubActorInfo[] batch = new SubActorInfo[ready.size()];
+	Iterator it = ready.iterator();
+	for (int i=0;i<batch.length;i++) {
+	    Integer next = (Integer)it.next();
+	    lastRun.add(next);
+	    batch[i] = makeSubActorInfo(subActors[next.intValue()]);
 	}
+	ready.clear();
+	remaining -= batch.length;
 
-	// How many actors does a particular concept input to or output from?
-	// There's no need to check whether a "counts" object is null, since
-	// all the graph's concepts are in the hash table, as per above loop.
-	for (int i=0;i<actors.length;i++) {
-	    Concept[] ins = actors[i].getInputArguments();
-	    for (int j=0;j<ins.length;j++) {
-		ConceptCounts counts = (ConceptCounts)ioCounts.get(ins[j]);
-		counts.inCount++;
-	    }
+	return batch;
+    }
 
-	    Concept[] outs = actors[i].getOutputArguments();
-	    for (int j=0;j<outs.length;j++) {
-		ConceptCounts counts = (ConceptCounts)ioCounts.get(outs[j]);
-		counts.outCount++;
-	    }
+    /**
+     * Wrap the specified sub-actor's input and output concepts along
+     * with its underlying function or actor.
+     */
+    private SubActorInfo makeSubActorInfo(Actor subActor) {
+	// Accumulate input argument concepts.
+	//
+	// Note that the order of these is dictated by the
+	// input arc ordering. In LF or CGIF, this ordering
+	// can be stated explicitly, and tools such as 
+	// CharGer permit such arc numbering.
+	//
+	// Arguments are this activation's own copies of the concepts,
+	// since a sub-actor may bind them.
+	ActorTopology topology = getTopology();
+	Concept[] inputs = subActor.getInputArguments();
+	LinkedList inArgs = new LinkedList();
+	for (int j=0;j<inputs.length;j++) {
+	    int i = topology.positionOf(inputs[j]);
+	    inArgs.add(new ConceptType(bindingAt(i)));
 	}
 
-	return ioCounts;
-    }
+	// Get the output concepts, get the underlying function/actor,
+	// and wrap these along with the input arguments in an object.
+	Concept[] outputs = subActor.getOutputArguments();
+	LinkedList outArgs = new LinkedList();
+	for (int j=0;j<outputs.length;j++) {
+	    int i = topology.positionOf(outputs[j]);
+	    outArgs.add(new ConceptType(bindingAt(i)));
+	}
+	Type executor = null; // keep javac happy
+	String name = subActor.getType().getLabel();
+	if (!name.equals(SELF_NAME)) {
+	    executor = scopes.find(name);
+	} else {
+	    executor = this;
+	}
 
+	return new SubActorInfo(executor, inArgs, outArgs, true);
+    }
 
     /**
      * The sink arguments of an actor graph are those which take output
      * from one (unless conflicting, then > 1) sub-actor and provide input
      * to no sub-actor. Note that we are interested in the final outputs 
-     * from the actor, not intermediate outputs.
+     * from the actor, not intermediate outputs. Sinks are returned in
+     * the order of the graph's concepts.
      */
     static public ConceptType[] getSinks(GraphType body) {
-	Hashtable ioCounts = getSubActorIOCounts(body);
-
-	// Accumulate the list of sink concepts. Note that the test for 
-	// the number of actors which provide output to a particular
-	// concept caters for an actor with conflicting sinks, i.e.
-	// where multiple sub-actors output to that concept.
-	LinkedList sinkList = new LinkedList();
-	Enumeration e = ioCounts.keys();
-	while (e.hasMoreElements()) {
-	    Concept concept = (Concept)e.nextElement();
-	    ConceptCounts counts = (ConceptCounts)ioCounts.get(concept);
-	    if (counts.inCount == 0 && counts.outCount >= 1) {
-		sinkList.add(new ConceptType(concept));
-	    }
-	}
-
-	return (ConceptType[])sinkList.toArray(new ConceptType[0]);
+	return new ActorTopology(body.getValue()).getSinks(body);
     }
 
     /**
      * The source arguments of an actor graph are those which provide input
-     * into one or more sub-actors but are outputs of no sub-actor.
+     * into one or more sub-actors but are outputs of no sub-actor. Sources
+     * are returned in the order of the graph's concepts.
      */
     static public ConceptType[] getSources(GraphType body) {
-	Hashtable ioCounts = getSubActorIOCounts(body);
-
-	// Accumulate the list of sink concepts. Note that the test for 
-	// the number of actors which provide output to a particular
-	// concept caters for an actor with conflicting sources, i.e.
-	// where multiple sub-actors output to that concept.
-	LinkedList sourceList = new LinkedList();
-	Enumeration e = ioCounts.keys();
-	while (e.hasMoreElements()) {
-	    Concept concept = (Concept)e.nextElement();
-	    ConceptCounts counts = (ConceptCounts)ioCounts.get(concept);
-	    if (counts.inCount >= 1 && counts.outCount == 0) {
-		sourceList.add(new ConceptType(concept));
-	    }
-	}
-
-	return (ConceptType[])sourceList.toArray(new ConceptType[0]);
+	return new ActorTopology(body.getValue()).getSources(body);
     }
 
     // Private methods.
 
+    /**
+     * Account for any argument concepts bound by the sub-actors last
+     * returned for execution, readying those sub-actors for which such
+     * a concept was the last unbound input.
+     */
+    private void propagateBindings() {
+	while (!lastRun.isEmpty()) {
+	    Integer k = (Integer)lastRun.removeFirst();
+	    Concept[] args = subActors[k.intValue()].getArguments();
+	    for (int j=0;j<args.length;j++) {
+		LinkedList users = (LinkedList)consumers.get(args[j]);
+		if (users != null && !isUnbound(args[j])) {
+		    consumers.remove(args[j]);
+		    Iterator it = users.iterator();
+		    while (it.hasNext()) {
+			Integer i = (Integer)actorIndices.get(it.next());
+			if (--pending[i.intValue()] == 0) {
+			    ready.add(i);
+			}
+		    }
+		}
+	    }
+	}
+    }
+
     /** Collect sub-actors in this actor. 
      *
      *  Preconditions:
@@ -356,7 +568,47 @@ public class ActorType extends LambdaType {
      *      and found to contain valid sub-actors.  
      */
     private Actor[] collectSubActors() {
-	return body.getValue().getActorRelations();
+	return defGraph.getValue().getActorRelations();
+    }
+
+    /**
+     * Return the concept at the specified position of the defining 
+     * graph as it stands in this activation.
+     */
+    private Concept conceptAt(int i) {
+	return frame[i] != null ? frame[i] : concepts[i];
+    }
+
+    /**
+     * Return this activation's own copy of the concept at the specified
+     * position of the defining graph, in which it may be bound, making
+     * the copy if need be.
+     */
+    private Concept bindingAt(int i) {
+	if (frame[i] == null) {
+	    frame[i] = concepts[i].copy(GraphType.COPYING_SCHEME);
+	}
+	return frame[i];
+    }
+
+    /**
+     * Is the specified concept of the defining graph unbound in this
+     * activation, i.e. does it still have a variable designator?
+     */
+    private boolean isUnbound(Concept c) {
+	int i = getTopology().positionOf(c);
+	return new ConceptType(conceptAt(i)).hasVarDesignator();
+    }
+
+    /**
+     * Return the topology of this actor's defining graph, determining
+     * it on first use.
+     */
+    private ActorTopology getTopology() {
+	if (topology == null) {
+	    topology = new ActorTopology(defGraph.getValue());
+	}
+	return topology;
     }
 
     // -----------------------------------------------------------
@@ -366,11 +618,35 @@ public class ActorType extends LambdaType {
      */    
 
     public ListType getSinkconcepts() {
-	return new ListType(ActorType.getSinks(defGraph.nocomments()));
+	return new ListType(sinksOf(defGraph.nocomments()));
     }
 
     public ListType getSourceconcepts() {
-	return new ListType(ActorType.getSources(defGraph.nocomments()));
+	return new ListType(sourcesOf(defGraph.nocomments()));
+    }
+
+    public BooleanType getMemo() {
+	return new BooleanType(memoCache() != null);
+    }
+
+    public void setMemo(BooleanType on) {
+	if (on.getValue()) {
+	    if (memo == null) {
+		memo = new MemoCache();
+	    }
+	} else {
+	    memo = null;
+	}
+    }
+
+    public NumberType getMemohits() {
+	MemoCache cache = memoCache();
+	return new NumberType(cache == null ? 0 : cache.getHits());
+    }
+
+    public NumberType getMemomisses() {
+	MemoCache cache = memoCache();
+	return new NumberType(cache == null ? 0 : cache.getMisses());
     }
 
     // -----------------------------------------------------------
@@ -379,8 +655,3 @@ public class ActorType extends LambdaType {
      * pCG member functions.
      */
 }
-
-class ConceptCounts {
-    public int inCount = 0;
-    public int outCount = 0;
-}
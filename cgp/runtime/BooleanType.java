@@ -52,6 +52,10 @@ public class BooleanType extends Type {
 	}
     }
 
+    public int hashCode() {
+	return value ? 1231 : 1237;
+    }
+
     public Type eqOp(Type other) {
 	Type result = UndefinedType.undefined;
 	if (other instanceof BooleanType) {
@@ -28,6 +28,7 @@
 package cgp.runtime;
 
 import cgp.runtime.GraphException;
+import cgp.runtime.InterpreterContext;
 import cgp.runtime.KBase;
 import cgp.runtime.NumberType;
 import cgp.runtime.StringType;
@@ -84,13 +85,13 @@ public class ConceptType extends Type {
 
     // Constructors.
     public ConceptType(Concept c) {
-	kbase = Type.getKBStack().peek(); // where am I *now*
+	kbase = InterpreterContext.currentKBase(); // where am I *now*
 	value = c;
 	setType("concept");
     }
 
     public ConceptType(String s) {
-	kbase = Type.getKBStack().peek(); // where am I *now*
+	kbase = InterpreterContext.currentKBase(); // where am I *now*
 	value = parseConcept(s);
 	setType("concept");
     }
@@ -178,6 +179,36 @@ public class ConceptType extends Type {
 	return true;
     }
 
+    /**
+     * A hash code consistent with equals(), i.e. built only from the
+     * type label, designator value, and descriptor. The quantifier
+     * is left out since it is rarely present and leaving it out does
+     * not violate the equals/hashCode contract. Blank and undefined
+     * descriptors hash the same since equals() treats them as equal.
+     */
+    public int hashCode() {
+	int hash = 0;
+
+	notio.ConceptType type = value.getType();
+	if (type != null && type.getLabel() != null) {
+	    hash = type.getLabel().hashCode();
+	}
+
+	if (hasDesignator()) {
+	    hash = 31*hash + getDesignatorValue().hashCode();
+	}
+
+	Referent ref = value.getReferent();
+	if (ref != null) {
+	    Graph desc = ref.getDescriptor();
+	    if (desc != null && !desc.isBlank()) {
+		hash = 31*hash + GraphType.fingerprint(desc);
+	    }
+	}
+
+	return hash;
+    }
+
     public Type eqOp(Type other) {
 	Type result = UndefinedType.undefined;
 	if (other instanceof ConceptType) {
@@ -201,16 +232,17 @@ public class ConceptType extends Type {
     public String toString() {
 	StringWriter w = new StringWriter();
 	Generator gen = null;
-	if (cgp.CGP.LFOpt) {
+	InterpreterContext context = Type.getContext();
+	if (context.getLFOpt()) {
 	    gen = new LFGenerator();
 	} else {
 	    // CGIF.
 	    try {
 		gen = (Generator)
-		        (Class.forName(cgp.CGP.CGIFGenOpt)).newInstance();
+		        (Class.forName(context.getCGIFGenOpt())).newInstance();
 	    } catch (Exception e) {
 		String msg = "error creating CGIF generator " + 
-		             cgp.CGP.CGIFGenOpt;
+		             context.getCGIFGenOpt();
 		throw new GraphException(msg);
 	    }
 	}
@@ -258,11 +290,14 @@ public class ConceptType extends Type {
 		// the object which is the purported CG source, and
 		// create the currently set CGIF parser.
 		notio.Parser parser;
-		parser = cgp.CGP.createCGParser(cgp.CGP.CGIFParserOpt, 
-						s, kb, tc);
-		c = parser.parseConcept();
+		parser = cgp.CGP.createCGParser(Type.getContext().
+						getCGIFParserOpt(), s, kb, tc);
+		// The parser may add types to the KB's hierarchies.
+		synchronized (kbase.getTypeLock()) {
+		    c = parser.parseConcept();
+		}
 	    } catch (Exception e2) {
-		System.out.println(e2);
+		Type.getContext().getOut().println(e2);
 		throw new GraphException("error parsing concept");
 	    }
 	}
@@ -434,13 +469,22 @@ public class ConceptType extends Type {
      * quantifier, only marker/literal designator and descriptor.
      */
     public boolean restriction(ConceptType otherCT) {
+	return restriction(otherCT, true);
+    }
+
+    /**
+     * Attempt to restrict this concept as for restriction(ConceptType),
+     * optionally mapping any coreference variable designator in this 
+     * concept to the supplied concept's referent in the knowledge base.
+     */
+    public boolean restriction(ConceptType otherCT, boolean bindVars) {
 	boolean typeRestriction = false;
 	boolean referentRestriction = false;
 
 	// Type restriction?
 	notio.ConceptType thisType = value.getType();
 	notio.ConceptType otherType = otherCT.getValue().getType();
-	if (thisType.hasProperSubType(otherType)) {
+	if (kbase.getConceptLattice().properlySubsumes(thisType, otherType)) {
 	    value.setType(otherType);
 	    typeRestriction = true;
 	}
@@ -461,7 +505,7 @@ public class ConceptType extends Type {
 		    // Marker or literal referent restriction from generic or
 		    // name designator.
 		    this.setDesignatorValue(otherCT.getDesignatorValue());
-		    if (wasNameDesignator) {
+		    if (wasNameDesignator && bindVars) {
 			kbase.addCorefVarMapping(nameDesignator,
 						 otherCT.getDesignatorValue());
 		    }
@@ -473,7 +517,7 @@ public class ConceptType extends Type {
 			// name designator.
 			GraphType descGraph = (GraphType)desc;
 			this.setDescriptor(descGraph);
-			if (wasNameDesignator) {
+			if (wasNameDesignator && bindVars) {
 			    kbase.addCorefVarMapping(nameDesignator,
 						     descGraph);
 			}
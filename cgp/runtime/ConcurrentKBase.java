@@ -0,0 +1,202 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * A knowledge base which may be shared by threads, e.g. those of a
+ * program embedding several interpreters, any number of which may
+ * query it while another changes it.
+ *
+ * Readers never take a lock. The graph store and coreference variables
+ * are held as snapshots which are never changed once published. A
+ * writer copies the current snapshot, changes the copy and publishes it
+ * in a single volatile write, so a reader sees either all or none of a
+ * change, and a query (exact match, projection, _KB.graphs) runs
+ * against one consistent snapshot throughout. Writers are serialised
+ * by this object's monitor, and a batch of changes, e.g. those exported
+ * by an overlay (see KBase.commitExports()), is published at once.
+ *
+ * The store published by a change shares most of its graphs with the
+ * one before it (see GraphStore.successor()), so a change costs a copy
+ * of only a few of them, while a query falls through a few layers of
+ * store. An overlay of a ConcurrentKBase (see KBase(KBase, boolean)) is
+ * given the snapshot current at the time and is unaffected by later
+ * changes, so a thread may use one to make many changes cheaply and
+ * commit them in a single batch.
+ *
+ * Notio's type hierarchies are not snapshotted, so types should be
+ * declared before the knowledge base is shared. Type declarations are
+ * nevertheless serialised with other changes.
+ */
+
+package cgp.runtime;
+
+import cgp.runtime.GraphStore;
+import cgp.runtime.GraphType;
+import cgp.runtime.KBase;
+import cgp.runtime.KBaseListener;
+import cgp.runtime.Namespace;
+import cgp.runtime.Type;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+public class ConcurrentKBase extends KBase {
+    // Instance fields.
+    private volatile GraphStore graphs;
+    private volatile Namespace corefVars;
+
+    // Constructors.
+    public ConcurrentKBase() {
+	super();
+	graphs = super.getGraphStore();
+	corefVars = super.getCorefVars();
+    }
+
+    /**
+     * Create a concurrent copy of an existing KBase.
+     */
+    public ConcurrentKBase(KBase otherKBase) {
+	super(otherKBase, false);
+	graphs = super.getGraphStore();
+	corefVars = super.getCorefVars();
+    }
+
+    // Public methods.
+
+    /**
+     * Return the current snapshot of this knowledge base's graphs,
+     * which must not be changed.
+     */
+    public GraphStore getGraphStore() {
+	return graphs;
+    }
+
+    /**
+     * Return the current snapshot of this knowledge base's coreference
+     * variables, which must not be changed.
+     */
+    public Namespace getCorefVars() {
+	return corefVars;
+    }
+
+    public synchronized void addConceptType(String typeName) {
+	super.addConceptType(typeName);
+    }
+
+    public synchronized void linkConceptTypes(String superTypeName, 
+					      String typeName) {
+	super.linkConceptTypes(superTypeName, typeName);
+    }
+
+    public synchronized void addRelationType(String typeName) {
+	super.addRelationType(typeName);
+    }
+
+    public synchronized void linkRelationTypes(String superTypeName, 
+					       String typeName) {
+	super.linkRelationTypes(superTypeName, typeName);
+    }
+
+    public void assertGraph(GraphType g, boolean bindVars) {
+	g = g.copy();
+	if (bindVars) {
+	    bindCorefVars(g);
+	}
+	synchronized (this) {
+	    if (!graphs.contains(g)) {
+		GraphStore store = graphs.successor();
+		store.add(g);
+		graphs = store;
+		graphAsserted(g);
+	    }
+	}
+    }
+
+    public void retract(GraphType g, boolean bindVars) {
+	if (bindVars) {
+	    g = g.copy();
+	    bindCorefVars(g);
+	}
+	synchronized (this) {
+	    if (graphs.contains(g)) {
+		GraphStore store = graphs.successor();
+		GraphType removed = store.remove(g);
+		graphs = store;
+		graphRetracted(removed);
+	    }
+	}
+    }
+
+    public synchronized void addListener(KBaseListener listener) {
+	super.addListener(listener);
+    }
+
+    public synchronized void removeListener(KBaseListener listener) {
+	super.removeListener(listener);
+    }
+
+    /**
+     * Add a coreferent variable mapping.
+     */
+    public synchronized void addCorefVarMapping(String name, Type value) {
+	Namespace vars = corefVars.copy();
+	vars.def(name, value);
+	corefVars = vars;
+    }
+
+    // Protected methods.
+
+    /**
+     * Apply a list of [Boolean assert?, GraphType] pairs to a single
+     * copy of the graph store and publish it, so that readers see all
+     * of the changes or none of them. Listeners are told of each change
+     * once the batch has been published.
+     */
+    protected synchronized void applyChanges(LinkedList changes) {
+	GraphStore store = graphs.successor();
+	LinkedList applied = new LinkedList(); // changes which took effect
+	Iterator it = changes.iterator();
+	while (it.hasNext()) {
+	    Boolean isAssertion = (Boolean)it.next();
+	    GraphType g = (GraphType)it.next();
+	    if (isAssertion.booleanValue()) {
+		if (store.add(g)) {
+		    applied.add(isAssertion);
+		    applied.add(g);
+		}
+	    } else {
+		g = store.remove(g);
+		if (g != null) {
+		    applied.add(isAssertion);
+		    applied.add(g);
+		}
+	    }
+	}
+	graphs = store;
+
+	it = applied.iterator();
+	while (it.hasNext()) {
+	    boolean isAssertion = ((Boolean)it.next()).booleanValue();
+	    GraphType g = (GraphType)it.next();
+	    if (isAssertion) {
+		graphAsserted(g);
+	    } else {
+		graphRetracted(g);
+	    }
+	}
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * The methods of a Type subclass through which pCG member functions
+ * are invoked and attributes accessed.
+ *
+ * Searching a class's methods by name on each member function call or
+ * attribute access is costly, so this is done at most once per class
+ * and name. Member functions are indexed by name and then number of
+ * parameters. Each attribute name is mapped to its getter and setter
+ * method the first time it is accessed, whether or not there is one.
+ * Methods are invoked through method handles (see MemberHandle).
+ *
+ * Tables are shared by all threads and read without locking, since
+ * every member function call and attribute access consults one: the
+ * tables and their accessor maps are concurrent maps, and the member
+ * functions of a class are never changed once its table is built.
+ */
+
+package cgp.runtime;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class DispatchTable {
+    // Static fields.
+    static private ConcurrentHashMap tables = 
+	new ConcurrentHashMap(); // Class -> DispatchTable
+    static private MemberHandle[] NO_MEMBERS = new MemberHandle[0];
+    static private Object NONE = new Object(); // no such accessor
+
+    // Instance fields.
+    private HashMap memberFuncs; // String -> MemberHandle[][], by arity
+    private ConcurrentHashMap getters; // String -> MemberHandle, or NONE
+    private ConcurrentHashMap setters; // String -> MemberHandle, or NONE
+
+    // Constructors.
+    private DispatchTable(Class theClass) {
+	Method[] methods = theClass.getMethods();
+
+	// Group the methods by name, retaining the order of getMethods().
+	HashMap byName = new HashMap(); // String -> LinkedList
+	for (int i=0;i<methods.length;i++) {
+	    LinkedList named = (LinkedList)byName.get(methods[i].getName());
+	    if (named == null) {
+		named = new LinkedList();
+		byName.put(methods[i].getName(), named);
+	    }
+	    named.add(methods[i]);
+	}
+
+	memberFuncs = new HashMap();
+	Iterator names = byName.keySet().iterator();
+	while (names.hasNext()) {
+	    String name = (String)names.next();
+	    Method[] named = (Method[])((LinkedList)byName.get(name)).
+		toArray(new Method[0]);
+
+	    int maxArity = 0;
+	    for (int i=0;i<named.length;i++) {
+		maxArity = Math.max(maxArity,
+				    named[i].getParameterTypes().length);
+	    }
+
+	    MemberHandle[][] byArity = new MemberHandle[maxArity+1][];
+	    for (int arity=0;arity<=maxArity;arity++) {
+		LinkedList candidates = new LinkedList();
+		for (int i=0;i<named.length;i++) {
+		    if (named[i].getParameterTypes().length == arity) {
+			candidates.add(new MemberHandle(named[i]));
+		    }
+		}
+		byArity[arity] = 
+		    (MemberHandle[])candidates.toArray(NO_MEMBERS);
+	    }
+	    memberFuncs.put(name, byArity);
+	}
+
+	getters = new ConcurrentHashMap();
+	setters = new ConcurrentHashMap();
+    }
+
+    // Private methods.
+
+    /**
+     * Convert an attribute name to the name of its getter or setter,
+     * e.g. type to getType.
+     */
+    private static String accessorName(String prefix, String name) {
+	StringBuffer nameBuf = new StringBuffer(name);
+	nameBuf.setCharAt(0, Character.toUpperCase(nameBuf.charAt(0)));
+	return prefix + nameBuf.toString();
+    }
+
+    /**
+     * Return the first method with the specified name and number of
+     * parameters, or null if there is none.
+     */
+    private MemberHandle findAccessor(String methodName, int arity) {
+	MemberHandle[] candidates = getCandidates(methodName, arity);
+	return candidates.length == 0 ? null : candidates[0];
+    }
+
+    /**
+     * Return the accessor cached in the specified map for the specified
+     * attribute, finding and caching it first if need be.
+     */
+    private MemberHandle getAccessor(ConcurrentHashMap accessors, 
+				     String prefix, String name, int arity) {
+	Object accessor = accessors.get(name);
+	if (accessor == null) {
+	    accessor = findAccessor(accessorName(prefix, name), arity);
+	    if (accessor == null) {
+		accessor = NONE;
+	    }
+	    accessors.putIfAbsent(name, accessor);
+	}
+	return accessor == NONE ? null : (MemberHandle)accessor;
+    }
+
+    // Public methods.
+
+    /**
+     * Return the dispatch table of the specified class.
+     */
+    static public DispatchTable forClass(Class theClass) {
+	DispatchTable table = (DispatchTable)tables.get(theClass);
+	if (table == null) {
+	    // Another thread may build the same table meanwhile, in
+	    // which case the first one cached is used by both.
+	    table = new DispatchTable(theClass);
+	    DispatchTable cached = 
+		(DispatchTable)tables.putIfAbsent(theClass, table);
+	    if (cached != null) {
+		table = cached;
+	    }
+	}
+	return table;
+    }
+
+    /**
+     * Return the methods with the specified name and number of
+     * parameters, in the order given by getMethods().
+     */
+    public MemberHandle[] getCandidates(String methodName, int arity) {
+	MemberHandle[][] byArity = 
+	    (MemberHandle[][])memberFuncs.get(methodName);
+	if (byArity == null || arity >= byArity.length) {
+	    return NO_MEMBERS;
+	}
+	return byArity[arity];
+    }
+
+    /**
+     * Can the specified actual parameters be passed to the specified 
+     * method? This distinguishes between overloaded Java methods (e.g. 
+     * project(Graph) vs project(GraphType)), whose order in getMethods() 
+     * is unspecified.
+     */
+    static public boolean isApplicable(MemberHandle method, 
+				       Object[] actuals) {
+	Class[] formals = method.getParameterTypes();
+	if (formals.length != actuals.length) {
+	    return false;
+	}
+	for (int i=0;i<formals.length;i++) {
+	    if (actuals[i] != null && !formals[i].isInstance(actuals[i])) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Return the member function to which the specified actual parameters
+     * may be passed, or null if there is none. Note that since pCG member
+     * functions will generally take parameters of type Type, rather than
+     * more specific types, methods with the same name may only be
+     * confidently distinguished in terms of parameter number.
+     */
+    public MemberHandle getMemberFunc(String methodName, Object[] actuals) {
+	MemberHandle[] candidates = getCandidates(methodName, actuals.length);
+	for (int i=0;i<candidates.length;i++) {
+	    if (isApplicable(candidates[i], actuals)) {
+		return candidates[i];
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Return the getter for the specified attribute, i.e. a method with
+     * no parameters, or null if there is none.
+     */
+    public MemberHandle getGetter(String name) {
+	return getAccessor(getters, "get", name, 0);
+    }
+
+    /**
+     * Return the setter for the specified attribute, i.e. a method with
+     * a single parameter, or null if there is none.
+     */
+    public MemberHandle getSetter(String name) {
+	return getAccessor(setters, "set", name, 1);
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * An exception which is thrown by the exit statement to end the program
+ * with the specified exit code. The pCG command (see cgp.CGP) exits the
+ * JVM with this code, whereas a program run via cgp.Engine ends without
+ * affecting the JVM.
+ */
+
+package cgp.runtime;
+
+import java.lang.RuntimeException;
+
+public class ExitException extends RuntimeException {
+    // Instance fields.
+    private int exitCode;
+
+    // Constructors.
+    public ExitException(int exitCode) {
+	super("exit " + exitCode);
+	this.exitCode = exitCode;
+    }
+
+    // Public methods.
+
+    public int getExitCode() {
+	return exitCode;
+    }
+}
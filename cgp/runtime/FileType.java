@@ -24,6 +24,7 @@
 package cgp.runtime;
 
 import cgp.runtime.GraphType;
+import cgp.runtime.KBase;
 import cgp.runtime.ListType;
 import cgp.runtime.Type;
 import cgp.runtime.UndefinedType;
@@ -53,15 +54,15 @@ public class FileType extends Type {
 	origPath = path;
 	if (path.startsWith("<")) {
 	    this.path = path.substring(1);
-	    file = new File(this.path);
+	    file = Type.getContext().resolveFile(this.path);
 	    reader = new BufferedReader(new FileReader(file));
 	} else if (path.startsWith(">")) {
 	    this.path = path.substring(1);
-	    file = new File(this.path);
+	    file = Type.getContext().resolveFile(this.path);
 	    writer = new BufferedWriter(new FileWriter(file));
 	} else {
 	    this.path = path;
-	    file = new File(this.path);
+	    file = Type.getContext().resolveFile(this.path);
 	    reader =  new BufferedReader(new FileReader(file));
 	}
 
@@ -140,10 +141,18 @@ public class FileType extends Type {
 	Type result = UndefinedType.undefined;
 
 	if (reader != null) {
-	    CGIFParser parser = new CGIFParser();
-	    parser.initializeParser(file, Type.getKBStack().peek().getKB(),
-				    new TranslationContext());
-	    Graph[] graphs = parser.parseGraphStream();
+	    // The stream may declare types (see AntlrCGIFParser), which
+	    // are the KB's own rather than any KB it was derived from.
+	    KBase kbase = Type.getKBStack().peek();
+	    kbase.ownTypes();
+	    Graph[] graphs;
+	    synchronized (kbase.getTypeLock()) {
+		CGIFParser parser = new CGIFParser();
+		parser.initializeParser(file, kbase.getKB(),
+					new TranslationContext());
+		graphs = parser.parseGraphStream();
+	    }
+	    kbase.typesChanged();
 	    ListType gList = new ListType();
 	    for (int i=0;i<graphs.length;i++) {
 		gList.append(new GraphType(graphs[i]));
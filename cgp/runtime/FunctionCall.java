@@ -0,0 +1,124 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * A series of calls to a pCG function from Java code, e.g. a member 
+ * function which applies a function to each element of a list.
+ *
+ * The function's local scope (and closure environment, if any) is pushed
+ * once by begin() and popped by end(), rather than for each call, and is
+ * cleared at the start of each call. The execution of the function's body
+ * is left to the execution engine which created this (see FunctionCaller).
+ */
+
+package cgp.runtime;
+
+import antlr.RecognitionException;
+import antlr.SemanticException;
+import antlr.collections.AST;
+
+import cgp.runtime.FormalParameter;
+import cgp.runtime.FunctionType;
+import cgp.runtime.MemoCache;
+import cgp.runtime.Scope;
+import cgp.runtime.ScopeStack;
+import cgp.runtime.Type;
+import cgp.runtime.UndefinedType;
+
+abstract public class FunctionCall {
+    // Instance fields.
+    private FunctionType func;
+    private ScopeStack scopes;
+    private Scope locals;
+    private int depth; // of the scope stack before begin()
+
+    // Constructors.
+
+    /**
+     * Prepare to call the specified function, pushing the specified 
+     * scope for its locals onto the specified stack.
+     */
+    protected FunctionCall(FunctionType func, ScopeStack scopes, 
+			   Scope locals) {
+	this.func = func;
+	this.scopes = scopes;
+	this.locals = locals;
+    }
+
+    // Protected methods.
+
+    /**
+     * Execute the specified function body, returning true if a return 
+     * statement was executed.
+     */
+    abstract protected boolean execute(AST body) throws RecognitionException;
+
+    // Public methods.
+
+    public void begin() {
+	depth = scopes.depth();
+	scopes.push(locals);
+	if (func.getEnv() != null) {
+	    scopes.push(func.getEnv());
+	}
+    }
+
+    /**
+     * Call the function with the specified actual parameters, returning
+     * its return value.
+     */
+    public Type call(Type[] actuals) throws RecognitionException {
+	FormalParameter[] formals = func.getFormals();
+	if (formals.length != actuals.length) {
+	    String msg = "parameter list length mismatch";
+	    throw new SemanticException(msg);
+	}
+
+	MemoCache memo = func.memoCache();
+	if (memo != null) {
+	    Type[] cached = memo.lookup(actuals);
+	    if (cached != null) {
+		return cached[0];
+	    }
+	}
+
+	locals.clear();
+	for (int i=0;i<formals.length;i++) {
+	    locals.def(formals[i].getName(), actuals[i]);
+	}
+	locals.def("me", func);
+
+	Type r = UndefinedType.undefined;
+	if (execute(func.getCode())) {
+	    r = scopes.peek().getReturnValue();
+	}
+	if (memo != null) {
+	    memo.store(actuals, new Type[] { r });
+	}
+	return r;
+    }
+
+    /**
+     * Pop the function's scopes, and any left above them should a call
+     * have failed.
+     */
+    public void end() {
+	while (scopes.depth() > depth) {
+	    scopes.pop();
+	}
+    }
+}
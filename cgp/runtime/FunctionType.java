@@ -25,6 +25,7 @@ package cgp.runtime;
 
 import antlr.collections.AST;
 import cgp.runtime.FormalParameter;
+import cgp.runtime.MemoCache;
 import cgp.runtime.Scope;
 import cgp.runtime.ScopeStack;
 
@@ -37,6 +38,7 @@ public class FunctionType extends Type {
     private FormalParameter[] formals;
     private AST code;
     private Scope env;
+    private MemoCache memo; // of results, if memoized
 
     // Constructors.
     public FunctionType(String name, FormalParameter[] formals, AST code) {
@@ -87,6 +89,30 @@ public class FunctionType extends Type {
 	return env;
     }
 
+    /**
+     * Return the cache of this function's results, or null if the
+     * function is not memoized.
+     */
+    public MemoCache memoCache() {
+	return memo;
+    }
+
+    /**
+     * Return a copy of this function whose results are cached, keyed by
+     * the values of the actual parameters. This is only valid if the
+     * function has no side effects and its result depends upon its
+     * parameters alone, so a closure, whose result may depend upon its
+     * environment, may not be memoized.
+     */
+    public FunctionType memoized() {
+	if (env != null) {
+	    operationError("memoize");
+	}
+	FunctionType func = new FunctionType(name, formals, code);
+	func.memo = new MemoCache();
+	return func;
+    }
+
     public String toString() {
 	return getType() + " " + name + "; arity " + formals.length;
     }    
@@ -104,6 +130,18 @@ public class FunctionType extends Type {
 	return new NumberType(formals.length);
     }
 
+    public BooleanType getMemo() {
+	return new BooleanType(memo != null);
+    }
+
+    public NumberType getMemohits() {
+	return new NumberType(memo == null ? 0 : memo.getHits());
+    }
+
+    public NumberType getMemomisses() {
+	return new NumberType(memo == null ? 0 : memo.getMisses());
+    }
+
     // -----------------------------------------------------------
 
     /**
@@ -0,0 +1,522 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * The set of structurally equivalent graphs held by a knowledge base.
+ *
+ * Graphs are bucketed by their structural fingerprint (see
+ * GraphType.hashCode()) so that asserting, retracting and exact
+ * matching only need to compare a graph against the few graphs which
+ * share its fingerprint, rather than against every graph in the set.
+ * The order in which graphs were asserted is preserved since pCG
+ * programs see it via _KB.graphs, and projection matching returns
+ * the first graph (in that order) which a filter projects onto.
+ *
+ * A graph's fingerprint is computed when it is added, so a graph must
+ * not be mutated while it is a member of a store. A KBase therefore
+ * adds only copies of its own, and hands out only copies (see
+ * KBase.assertGraph() and KBase.getAssertedGraphs()).
+ *
+ * An inverted index from relation type label to the graphs containing
+ * relations of that type is also maintained. Projection of a filter
+ * graph onto a target graph (see GraphType.project()) needs as many
+ * compatible (filter, target) relation pairs as there are relations in
+ * the smaller of the two graphs, so the index is used to count, for
+ * each graph, an upper bound on the number of such pairs from the
+ * relation type labels alone. Graphs whose bound falls short can never
+ * accept the filter and are not worth a projection attempt.
+ *
+ * A store may be an overlay of a parent store, in which case it holds
+ * only the graphs added to it and a record of which of the parent's
+ * graphs it has removed; all reads fall through to the parent. Graphs
+ * added to an overlay come after all of the parent's graphs in order.
+ * The parent must not be changed while the overlay is in use.
+ *
+ * A store may also be copied, e.g. so that a change can be made to the
+ * copy while readers continue to use the original. Each graph's
+ * fingerprint is kept with it so that copying doesn't recompute it.
+ * Copying a large store for each change would cost time in proportion
+ * to its size though, so successor() copies only a store's own graphs
+ * while they are few, and otherwise leaves the store unchanged beneath
+ * a new, empty overlay. Layers so left are merged as they come to be
+ * of similar size, like the digits of a binary counter carrying, so
+ * that there are only logarithmically many of them for reads to fall
+ * through and each graph is copied a logarithmic number of times.
+ */
+
+package cgp.runtime;
+
+import cgp.runtime.GraphType;
+import cgp.runtime.TypeLattice;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+
+import notio.Graph;
+import notio.Relation;
+import notio.RelationType;
+
+public class GraphStore {
+    // Static fields.
+    private static final int LAYER_LIMIT = 32; // see successor()
+
+    private static Comparator SEQUENCE_ORDER = new Comparator() {
+	    public int compare(Object o1, Object o2) {
+		long s1 = ((Entry)o1).seq;
+		long s2 = ((Entry)o2).seq;
+		return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+	    }
+	};
+
+    // Instance fields.
+    private LinkedHashMap graphs; // Key -> Entry
+    private HashMap relationIndex; // relation type label -> (Entry -> int[])
+    private HashMap relationTypes; // relation type label -> RelationType
+    private long nextSeq;
+    private GraphStore parent; // null unless this is an overlay
+    private HashMap removed; // Key -> parent's graph removed from an overlay
+
+    // Constructors.
+    public GraphStore() {
+	graphs = new LinkedHashMap();
+	relationIndex = new HashMap();
+	relationTypes = new HashMap();
+	nextSeq = 0;
+    }
+
+    /**
+     * Create an overlay of the specified store.
+     */
+    public GraphStore(GraphStore parent) {
+	this();
+	this.parent = parent;
+	this.removed = new HashMap();
+    }
+
+    // Private methods.
+
+    private void index(Entry e) {
+	Relation[] relations = e.graph.getValue().getRelations();
+	for (int i=0;i<relations.length;i++) {
+	    RelationType type = relations[i].getType();
+	    String label = type.getLabel();
+	    HashMap postings = (HashMap)relationIndex.get(label);
+	    if (postings == null) {
+		postings = new HashMap();
+		relationIndex.put(label, postings);
+		relationTypes.put(label, type);
+	    }
+	    int[] count = (int[])postings.get(e);
+	    if (count == null) {
+		postings.put(e, new int[] { 1 });
+	    } else {
+		count[0]++;
+	    }
+	}
+    }
+
+    private void unindex(Entry e) {
+	Relation[] relations = e.graph.getValue().getRelations();
+	for (int i=0;i<relations.length;i++) {
+	    String label = relations[i].getType().getLabel();
+	    HashMap postings = (HashMap)relationIndex.get(label);
+	    if (postings != null && postings.remove(e) != null &&
+		postings.isEmpty()) {
+		relationIndex.remove(label);
+		relationTypes.remove(label);
+	    }
+	}
+    }
+
+    /**
+     * Return the number of changes held by this store itself rather
+     * than by its parent.
+     */
+    private int layerSize() {
+	return graphs.size() + (removed != null ? removed.size() : 0);
+    }
+
+    /**
+     * Return a new store equivalent to this overlay which falls through
+     * to its parent's parent instead, neither this store nor its parent
+     * being changed.
+     */
+    private GraphStore mergeWithParent() {
+	GraphStore store = parent.copy();
+	Iterator it = removed.values().iterator();
+	while (it.hasNext()) {
+	    store.remove((GraphType)it.next());
+	}
+	it = graphs.values().iterator();
+	while (it.hasNext()) {
+	    store.add(((Entry)it.next()).graph);
+	}
+	return store;
+    }
+
+    // Public methods.
+
+    /**
+     * Return the graph in this store which is structurally
+     * equivalent to the specified graph, or null.
+     */
+    public GraphType find(GraphType g) {
+	return find(new Key(g));
+    }
+
+    private GraphType find(Key k) {
+	Entry e = (Entry)graphs.get(k);
+	if (e != null) {
+	    return e.graph;
+	}
+	if (parent != null && !removed.containsKey(k)) {
+	    return parent.find(k);
+	}
+	return null;
+    }
+
+    /**
+     * Is a graph structurally equivalent to the specified
+     * graph in this store?
+     */
+    public boolean contains(GraphType g) {
+	return find(g) != null;
+    }
+
+    /**
+     * Add the specified graph unless a structurally equivalent
+     * graph is already present. Returns true if the graph was added.
+     */
+    public boolean add(GraphType g) {
+	Key k = new Key(g);
+	if (find(k) != null) {
+	    return false;
+	}
+	Entry e = new Entry(g, nextSeq++);
+	graphs.put(k, e);
+	index(e);
+	return true;
+    }
+
+    /**
+     * Remove the graph which is structurally equivalent to the
+     * specified graph, returning it, or null if there was none.
+     */
+    public GraphType remove(GraphType g) {
+	Key k = new Key(g);
+	Entry e = (Entry)graphs.remove(k);
+	if (e != null) {
+	    unindex(e);
+	    return e.graph;
+	}
+	if (parent != null && !removed.containsKey(k)) {
+	    GraphType h = parent.find(k);
+	    if (h != null) {
+		removed.put(k, h);
+	    }
+	    return h;
+	}
+	return null;
+    }
+
+    public int size() {
+	if (parent != null) {
+	    return parent.size() - removed.size() + graphs.size();
+	}
+	return graphs.size();
+    }
+
+    /**
+     * Is this an overlay of another store?
+     */
+    public boolean isOverlay() {
+	return parent != null;
+    }
+
+    /**
+     * Return a copy of this store which may be changed without
+     * affecting this one. The graphs themselves are shared, as is the
+     * parent of an overlay.
+     */
+    public GraphStore copy() {
+	GraphStore store = new GraphStore();
+	store.graphs = new LinkedHashMap(graphs);
+	store.relationTypes = new HashMap(relationTypes);
+	// Each posting's count is fixed once its entry has been
+	// indexed, so only the postings maps need to be copied.
+	Iterator it = relationIndex.keySet().iterator();
+	while (it.hasNext()) {
+	    Object label = it.next();
+	    store.relationIndex.put(label, 
+				    new HashMap((HashMap)relationIndex.get(label)));
+	}
+	store.nextSeq = nextSeq;
+	store.parent = parent;
+	if (removed != null) {
+	    store.removed = new HashMap(removed);
+	}
+	return store;
+    }
+
+    /**
+     * Return a store which may be changed without affecting this one,
+     * as copy() does, but which may share this store rather than copy
+     * it (see above). Neither this store nor any it falls through to
+     * may be changed thereafter.
+     */
+    public GraphStore successor() {
+	if (layerSize() < LAYER_LIMIT) {
+	    return copy();
+	}
+	GraphStore layer = this;
+	while (layer.parent != null && 
+	       layer.parent.layerSize() <= layer.layerSize()) {
+	    layer = layer.mergeWithParent();
+	}
+	return new GraphStore(layer);
+    }
+
+    /**
+     * Iterate over the graphs in the order they were added.
+     */
+    public Iterator iterator() {
+	return toList().iterator();
+    }
+
+    /**
+     * Return the graphs in the order they were added.
+     */
+    public LinkedList toList() {
+	LinkedList list;
+	if (parent != null) {
+	    list = withoutRemoved(parent.toList());
+	} else {
+	    list = new LinkedList();
+	}
+	Iterator it = graphs.values().iterator();
+	while (it.hasNext()) {
+	    list.add(((Entry)it.next()).graph);
+	}
+	return list;
+    }
+
+    /**
+     * Return the specified list of the parent's graphs less any
+     * removed from this overlay.
+     */
+    private LinkedList withoutRemoved(LinkedList parentGraphs) {
+	if (removed.isEmpty()) {
+	    return parentGraphs;
+	}
+	// The removed graphs are those the parent holds, so they may be
+	// recognised by identity rather than by fingerprint.
+	IdentityHashMap removedGraphs = new IdentityHashMap();
+	Iterator it = removed.values().iterator();
+	while (it.hasNext()) {
+	    removedGraphs.put(it.next(), Boolean.TRUE);
+	}
+	LinkedList list = new LinkedList();
+	it = parentGraphs.iterator();
+	while (it.hasNext()) {
+	    GraphType g = (GraphType)it.next();
+	    if (!removedGraphs.containsKey(g)) {
+		list.add(g);
+	    }
+	}
+	return list;
+    }
+
+    /**
+     * Return, in the order they were added, the graphs onto which the
+     * specified filter graph could possibly be projected. Any graph left
+     * out is one for which GraphType.project() is certain to fail, so
+     * trying the filter against each returned graph in turn gives the
+     * same first projection as trying it against every graph.
+     */
+    public LinkedList projectionCandidates(Graph filter, 
+					   TypeLattice relationLattice) {
+	Relation[] filterRelations = filter.getRelations();
+	LinkedList candidates;
+	if (parent != null) {
+	    candidates = withoutRemoved(parent.projectionCandidates(filter,
+							     relationLattice));
+	} else {
+	    candidates = new LinkedList();
+	}
+
+	if (filterRelations.length == 0) {
+	    // A projection requires at least one matching relation.
+	    return candidates;
+	}
+
+	// For each graph, count the (filter, target) relation pairs
+	// whose types are compatible. The subtype closure of each filter
+	// relation's type is found among the indexed type labels.
+	HashMap bounds = new HashMap(); // Entry -> int[]
+	Iterator it = relationTypes.keySet().iterator();
+	while (it.hasNext()) {
+	    String label = (String)it.next();
+	    RelationType type = (RelationType)relationTypes.get(label);
+	    int compatible = 0;
+	    for (int j=0;j<filterRelations.length;j++) {
+		if (relationLattice.subsumes(filterRelations[j].getType(),
+					     type)) {
+		    compatible++;
+		}
+	    }
+	    if (compatible == 0) continue;
+
+	    HashMap postings = (HashMap)relationIndex.get(label);
+	    Iterator postingIt = postings.keySet().iterator();
+	    while (postingIt.hasNext()) {
+		Entry e = (Entry)postingIt.next();
+		int pairs = compatible * ((int[])postings.get(e))[0];
+		int[] bound = (int[])bounds.get(e);
+		if (bound == null) {
+		    bounds.put(e, new int[] { pairs });
+		} else {
+		    bound[0] += pairs;
+		}
+	    }
+	}
+
+	// Keep those graphs with enough pairs to match every relation
+	// of the smaller graph, in the order they were added.
+	LinkedList entries = new LinkedList();
+	it = bounds.keySet().iterator();
+	while (it.hasNext()) {
+	    Entry e = (Entry)it.next();
+	    int leastCount = Math.min(e.relationCount, filterRelations.length);
+	    if (((int[])bounds.get(e))[0] >= leastCount) {
+		entries.add(e);
+	    }
+	}
+	Collections.sort(entries, SEQUENCE_ORDER);
+
+	it = entries.iterator();
+	while (it.hasNext()) {
+	    candidates.add(((Entry)it.next()).graph);
+	}
+
+	return candidates;
+    }
+
+    /**
+     * Return, in the order they were added, the graphs which have for
+     * each of the specified relations at least one relation of the same
+     * type or a subtype, i.e. the only graphs onto which a filter with
+     * those relations could be projected by Projector, which requires
+     * every filter relation to be matched.
+     */
+    public LinkedList coveringCandidates(Relation[] required,
+					 TypeLattice relationLattice) {
+	LinkedList candidates;
+	if (parent != null) {
+	    candidates = withoutRemoved(parent.coveringCandidates(required,
+							     relationLattice));
+	} else {
+	    candidates = new LinkedList();
+	}
+
+	if (required.length == 0) {
+	    Iterator it = graphs.values().iterator();
+	    while (it.hasNext()) {
+		candidates.add(((Entry)it.next()).graph);
+	    }
+	    return candidates;
+	}
+
+	// Intersect, over the required relations, the sets of graphs
+	// containing a relation of a compatible type.
+	HashSet covering = null;
+	for (int i=0;i<required.length && 
+		 (covering == null || !covering.isEmpty());i++) {
+	    HashSet matching = new HashSet();
+	    Iterator it = relationTypes.keySet().iterator();
+	    while (it.hasNext()) {
+		String label = (String)it.next();
+		RelationType type = (RelationType)relationTypes.get(label);
+		if (relationLattice.subsumes(required[i].getType(), type)) {
+		    matching.addAll(((HashMap)relationIndex.get(label)).
+				    keySet());
+		}
+	    }
+	    if (covering == null) {
+		covering = matching;
+	    } else {
+		covering.retainAll(matching);
+	    }
+	}
+
+	LinkedList entries = new LinkedList(covering);
+	Collections.sort(entries, SEQUENCE_ORDER);
+	Iterator it = entries.iterator();
+	while (it.hasNext()) {
+	    candidates.add(((Entry)it.next()).graph);
+	}
+
+	return candidates;
+    }
+
+    public String toString() {
+	return toList().toString();
+    }
+
+    /**
+     * A graph's membership of this store.
+     */
+    private static class Entry {
+	GraphType graph;
+	long seq; // order of addition
+	int relationCount;
+
+	Entry(GraphType graph, long seq) {
+	    this.graph = graph;
+	    this.seq = seq;
+	    this.relationCount = graph.getValue().getNumberOfRelations();
+	}
+    }
+
+    /**
+     * A graph and its fingerprint, by which graphs are looked up
+     * according to structural equivalence.
+     */
+    private static class Key {
+	GraphType graph;
+	int hash;
+
+	Key(GraphType graph) {
+	    this.graph = graph;
+	    this.hash = graph.hashCode();
+	}
+
+	public boolean equals(Object other) {
+	    return other instanceof Key && hash == ((Key)other).hash &&
+		graph.equals(((Key)other).graph);
+	}
+
+	public int hashCode() {
+	    return hash;
+	}
+    }
+}
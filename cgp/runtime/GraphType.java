@@ -27,20 +27,23 @@
 
 package cgp.runtime;
 
-import cgp.CGP;
 
 import cgp.runtime.GraphException;
+import cgp.runtime.InterpreterContext;
 import cgp.runtime.KBase;
 import cgp.runtime.ListType;
 import cgp.runtime.NumberType;
+import cgp.runtime.Projector;
 import cgp.runtime.StringType;
 import cgp.runtime.Type;
+import cgp.runtime.TypeLattice;
 import cgp.runtime.UndefinedType;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.PrintStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -150,19 +153,19 @@ public class GraphType extends Type {
 
     // Constructors.
     public GraphType(Graph g) {
-	kbase = Type.getKBStack().peek(); // where am I *now*
+	kbase = InterpreterContext.currentKBase(); // where am I *now*
 	value = g.copy(COPYING_SCHEME);
 	setType("graph");
     }
 
     public GraphType(String s) {
-	kbase = Type.getKBStack().peek(); // where am I *now*
+	kbase = InterpreterContext.currentKBase(); // where am I *now*
 	value = parseGraph(s).copy(COPYING_SCHEME);
 	setType("graph");
     }
 
     public GraphType(File f) {
-	kbase = Type.getKBStack().peek(); // where am I *now*
+	kbase = InterpreterContext.currentKBase(); // where am I *now*
 	value = parseGraph(f).copy(COPYING_SCHEME);
 	setType("graph");
     }
@@ -173,7 +176,7 @@ public class GraphType extends Type {
     // with actors present. This constructor creates a new graph
     // from a single relation, and its arguments.
     public GraphType(Relation r) {
-	kbase = Type.getKBStack().peek(); // where am I *now*
+	kbase = InterpreterContext.currentKBase(); // where am I *now*
 
 	// Create a graph from an existing relation.
 	// Copies must be made of the relation and its
@@ -207,8 +210,8 @@ public class GraphType extends Type {
 
     public boolean equals(Object other) {
 	
-	Graph otherGraph = ((GraphType)other).getValue();
 	if (other instanceof GraphType) {
+	    Graph otherGraph = ((GraphType)other).getValue();
 	    boolean equal = false;
 
 	    // First check whether both graphs are blank (i.e. have no
@@ -262,6 +265,47 @@ public class GraphType extends Type {
 	}
     }
 
+    /**
+     * Structural graph hash code, consistent with equals().
+     *
+     * @see GraphType.fingerprint(Graph)
+     */
+    public int hashCode() {
+	return fingerprint(value);
+    }
+
+    /**
+     * Compute a structural fingerprint of the specified graph such
+     * that two graphs which are equal according to equals() always
+     * have the same fingerprint. Blank graphs all hash to zero. Since
+     * equals() compares concepts position by position, the concept
+     * hashes are combined in order, whereas relations are only
+     * required to match as a whole, so their type labels are combined
+     * independently of order.
+     */
+    public static int fingerprint(Graph g) {
+	if (g == null || g.isBlank()) {
+	    return 0;
+	}
+
+	Concept[] concepts = g.getConcepts();
+	int hash = concepts.length;
+	for (int i=0;i<concepts.length;i++) {
+	    hash = 31*hash + new ConceptType(concepts[i]).hashCode();
+	}
+
+	Relation[] relations = g.getRelations();
+	int relationHash = relations.length;
+	for (int i=0;i<relations.length;i++) {
+	    String label = relations[i].getType().getLabel();
+	    if (label != null) {
+		relationHash += label.hashCode();
+	    }
+	}
+
+	return 31*hash + relationHash;
+    }
+
     /** 
      * Check designator and marker equivalence together
      * by iterating over each concept's designator (which
@@ -314,16 +358,17 @@ public class GraphType extends Type {
 
 	try {
 	    Generator gen = null;
-	    if (cgp.CGP.LFOpt) {
+	    InterpreterContext context = Type.getContext();
+	    if (context.getLFOpt()) {
 		gen = new LFGenerator();
 	    } else {
 		// CGIF.
 		try {
 		    gen = (Generator)
-			(Class.forName(cgp.CGP.CGIFGenOpt)).newInstance();
+			(Class.forName(context.getCGIFGenOpt())).newInstance();
 		} catch (Exception e) {
 		    String msg = "error creating CGIF generator " + 
-			         cgp.CGP.CGIFGenOpt;
+			         context.getCGIFGenOpt();
 		    throw new GraphException(msg);
 		}
 	    }
@@ -390,20 +435,24 @@ public class GraphType extends Type {
 		// the object which is the purported CG source, and
 		// create the currently set CGIF parser.
 		notio.Parser parser;
+		String parserClass = Type.getContext().getCGIFParserOpt();
 		if (o instanceof File) {
-		    parser = cgp.CGP.createCGParser(cgp.CGP.CGIFParserOpt, 
+		    parser = cgp.CGP.createCGParser(parserClass,
 						    (File)o, kb, tc);
 		} else if (o instanceof String) {
-		    parser = cgp.CGP.createCGParser(cgp.CGP.CGIFParserOpt, 
+		    parser = cgp.CGP.createCGParser(parserClass,
 						    (String)o, kb, tc);
 		} else {
 		    throw new GraphException("error parsing graph: can only"+
 					     "use string or file");
 		}
 
-		g = parser.parseGraph();
+		// The parser may add types to the KB's hierarchies.
+		synchronized (kbase.getTypeLock()) {
+		    g = parser.parseGraph();
+		}
 	    } catch (Exception e2) {
-		System.out.println(e2);
+		Type.getContext().getOut().println(e2);
 		throw new GraphException("error parsing graph as LF/CGIF");
 	    }
 	}
@@ -422,7 +471,8 @@ public class GraphType extends Type {
 	    return false;
 	} else {
 	    for (int i=0;i<c1.length;i++) {
-		if (!c1[i].getType().hasSubType(c2[i].getType())) {
+		if (!kbase.getConceptLattice().subsumes(c1[i].getType(),
+							c2[i].getType())) {
 		    return false;
 		}		
 	    }
@@ -439,7 +489,8 @@ public class GraphType extends Type {
      * The test here is for signature compatibility only, not restrictability.
      */
     private boolean areRelationsCompatible(Relation r1, Relation r2) {
-	if (!r1.getType().hasSubType(r2.getType())) {
+	if (!kbase.getRelationLattice().subsumes(r1.getType(),
+						 r2.getType())) {
 	    return false;
 	}
 
@@ -464,6 +515,16 @@ public class GraphType extends Type {
      * filter graph may have more or less nodes than the target.
      */
     public Graph project(Graph filter) {
+	return project(filter, true);
+    }
+
+    /**
+     * Project the specified graph onto this graph as for project(Graph),
+     * optionally mapping coreference variables in the filter to the
+     * referents they are restricted to in the knowledge base. Without
+     * such mapping, a projection has no side effects.
+     */
+    public Graph project(Graph filter, boolean bindVars) {
 	// Get the relations in this graph and the count of same.
 	Relation[] targetRelations = value.getRelations();
 	int targetCount = value.getNumberOfRelations();
@@ -481,9 +542,12 @@ public class GraphType extends Type {
 	Graph projection = filter.copy(COPYING_SCHEME);
 	Relation[] projectionRelations = projection.getRelations();
 
-	if (CGP.isTraceOn()) {
-	    System.out.println("TRACE: projection = filter -> " + 
-			       new GraphType(projection));
+	PrintStream trace = Type.getContext().isTraceOn() ?
+	    Type.getContext().getOut() : null;
+
+	if (trace != null) {
+	    trace.println("TRACE: projection = filter -> " + 
+			  new GraphType(projection));
 	}
 
 	// Find the relations in the filter graph which match those
@@ -515,14 +579,14 @@ public class GraphType extends Type {
 	    }
 	}
 
-	if (CGP.isTraceOn()) {
-	    System.out.println("");
+	if (trace != null) {
+	    trace.println("");
 	    for (int i=0;i<matchingRelations.length;i++) {
-		System.out.println("TRACE: " + i + ": target " + 
-				   targetRelations[i].getType().getLabel() +
-				   " matches " +
-				   (matchingRelations[i] == null ? "nothing" :
-				   matchingRelations[i].getType().getLabel()));
+		trace.println("TRACE: " + i + ": target " + 
+			      targetRelations[i].getType().getLabel() +
+			      " matches " +
+			      (matchingRelations[i] == null ? "nothing" :
+			      matchingRelations[i].getType().getLabel()));
 		
 	    }
 	}
@@ -537,9 +601,9 @@ public class GraphType extends Type {
 	// it may be a valid thing to want to do.
 	int leastCount = targetCount < filterCount ? targetCount : filterCount;
 
-	if (CGP.isTraceOn()) {
-	    System.out.println("matches: " + matches);
-	    System.out.println("least count: " + leastCount);
+	if (trace != null) {
+	    trace.println("matches: " + matches);
+	    trace.println("least count: " + leastCount);
 	}
 
 	if (matches == 0 || leastCount != matches) {
@@ -564,7 +628,8 @@ public class GraphType extends Type {
 		
 		// Restrict filter relation type to target's type
 		// if the latter is a proper subtype of the former.
-		if (match.getType().hasProperSubType(target.getType())) {
+		if (kbase.getRelationLattice().
+		    properlySubsumes(match.getType(), target.getType())) {
 		    match.setType(target.getType());
 		}
 		
@@ -578,14 +643,14 @@ public class GraphType extends Type {
 		    ConceptType matchArg = new ConceptType(matchArgs[j]);
 		    ConceptType targetArg = new ConceptType(targetArgs[j]);
 		    if (!matchArg.equals(targetArg)) {
-			if (!matchArg.restriction(targetArg)) {
+			if (!matchArg.restriction(targetArg, bindVars)) {
 			    // No valid projection.
 			    return null;
 			}
 		    }
-		    if (CGP.isTraceOn()) {
-			System.out.println("TRACE: current projection -> " + 
-					   new GraphType(projection));
+		    if (trace != null) {
+			trace.println("TRACE: current projection -> " + 
+				      new GraphType(projection));
 		    }
 		}
 	    }
@@ -877,6 +942,19 @@ public class GraphType extends Type {
 	return result;
     }
 
+    /**
+     * Return a list of every projection of the specified filter
+     * graph onto this graph.
+     *
+     * @see Projector
+     */
+    public ListType projectAll(GraphType filterGraph) {
+	LinkedList results = new LinkedList();
+	new Projector(filterGraph.getValue(), kbase).
+	    projectAll(value, Integer.MAX_VALUE, results);
+	return new ListType(results);
+    }
+
     /**
      * Join operation.
      * Attempt to join the specified graph onto this graph and
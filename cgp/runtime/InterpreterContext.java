@@ -0,0 +1,293 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * The state of a single run of a pCG program: its scope and knowledge
+ * base stacks, the means by which Java code may call its functions,
+ * the streams to which it prints, the directory against which it
+ * resolves relative file names, and the options in effect.
+ *
+ * Runtime types find the context of the program they belong to via
+ * Type.getContext(), which returns the context bound to the current
+ * thread (see Type.setContext()), so any number of programs may run
+ * at once in one JVM provided that each runs in threads of its own.
+ * A thread inherits the context of the thread which created it.
+ *
+ * A new context takes its options from those of cgp.CGP, which thus
+ * act as defaults, e.g. as set from the command line; a program's
+ * option statements change only its own context.
+ *
+ * Sub-actors executed in parallel are run by a pool of worker threads
+ * shared by all contexts, one per processor, so however many runs and
+ * nested actors are under way, the number of threads stays bounded.
+ */
+
+package cgp.runtime;
+
+import cgp.runtime.FunctionCaller;
+import cgp.runtime.KBase;
+import cgp.runtime.KnowledgeBaseStack;
+import cgp.runtime.ScopeStack;
+import cgp.runtime.Type;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+public class InterpreterContext {
+    // Static fields.
+    static private ExecutorService workers; // created when first needed
+    static private int workerCount = 
+	Runtime.getRuntime().availableProcessors();
+
+    // Instance fields.
+    private ScopeStack scopes;
+    private KnowledgeBaseStack kbases;
+    private FunctionCaller functionCaller;
+    private PrintStream out; // null for System.out
+    private PrintStream err; // null for System.err
+    private File directory; // null for the JVM's working directory
+
+    // Options.
+    private boolean traceOn;
+    private boolean LFOpt;
+    private String CGIFParserOpt;
+    private String CGIFGenOpt;
+    private boolean incrementalOpt;
+    private boolean parallelActorsOpt;
+    private boolean memoActorsOpt;
+
+    // Constructors.
+    public InterpreterContext() {
+	scopes = new ScopeStack();
+	kbases = new KnowledgeBaseStack();
+	traceOn = false;
+	LFOpt = cgp.CGP.LFOpt;
+	CGIFParserOpt = cgp.CGP.CGIFParserOpt;
+	CGIFGenOpt = cgp.CGP.CGIFGenOpt;
+	incrementalOpt = cgp.CGP.IncrementalOpt;
+	parallelActorsOpt = cgp.CGP.ParallelActorsOpt;
+	memoActorsOpt = cgp.CGP.MemoActorsOpt;
+    }
+
+    // Static methods.
+
+    /**
+     * Return the KB at the top of the KB stack of the current thread's
+     * context, or null if it has none, e.g. when Java code asserts a
+     * graph in a KBase other than during a run of a program.
+     */
+    static public KBase currentKBase() {
+	InterpreterContext context = Type.getContext();
+	if (context == null || context.kbases.depth() == 0) {
+	    return null;
+	}
+	return context.kbases.peek();
+    }
+
+    /**
+     * Return the pool of worker threads which execute sub-actors in
+     * parallel. Its threads are daemons, so they don't keep the JVM
+     * alive once the program has finished.
+     */
+    static public synchronized ExecutorService getWorkers() {
+	if (workers == null) {
+	    workers = Executors.newFixedThreadPool(workerCount,
+		new ThreadFactory() {
+		    public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "pCG worker");
+			t.setDaemon(true);
+			return t;
+		    }
+		});
+	}
+	return workers;
+    }
+
+    static public int getWorkerCount() {
+	return workerCount;
+    }
+
+    // Public methods.
+
+    /**
+     * Return a context with the same options as this one whose stacks
+     * are forks of this one's (see ScopeStack.fork()), e.g. for a
+     * thread executing sub-actors in parallel. The caller is expected
+     * to set its function caller.
+     */
+    public InterpreterContext fork() {
+	InterpreterContext context = new InterpreterContext();
+	context.scopes = scopes.fork();
+	context.kbases = kbases.fork();
+	context.out = out;
+	context.err = err;
+	context.directory = directory;
+	context.traceOn = traceOn;
+	context.LFOpt = LFOpt;
+	context.CGIFParserOpt = CGIFParserOpt;
+	context.CGIFGenOpt = CGIFGenOpt;
+	context.incrementalOpt = incrementalOpt;
+	context.parallelActorsOpt = parallelActorsOpt;
+	context.memoActorsOpt = memoActorsOpt;
+	return context;
+    }
+
+    public ScopeStack getScopeStack() {
+	return scopes;
+    }
+
+    public KnowledgeBaseStack getKBStack() {
+	return kbases;
+    }
+
+    /**
+     * Set the means by which pCG functions are called from Java code,
+     * as provided by the execution engine.
+     */
+    public void setFunctionCaller(FunctionCaller caller) {
+	functionCaller = caller;
+    }
+
+    public FunctionCaller getFunctionCaller() {
+	return functionCaller;
+    }
+
+    /**
+     * Set the stream to which the program prints, or pass null for
+     * whatever System.out is at the time.
+     */
+    public void setOut(PrintStream out) {
+	this.out = out;
+    }
+
+    public PrintStream getOut() {
+	return out != null ? out : System.out;
+    }
+
+    /**
+     * Set the stream to which the program's error messages are
+     * printed, or pass null for whatever System.err is at the time.
+     */
+    public void setErr(PrintStream err) {
+	this.err = err;
+    }
+
+    public PrintStream getErr() {
+	return err != null ? err : System.err;
+    }
+
+    /**
+     * Set the directory against which the program's relative file
+     * names are resolved, or pass null for the JVM's working directory.
+     */
+    public void setDirectory(File directory) {
+	this.directory = directory;
+    }
+
+    public File getDirectory() {
+	return directory;
+    }
+
+    /**
+     * Return the file with the specified name, relative to this
+     * context's directory unless the name is absolute.
+     */
+    public File resolveFile(String name) {
+	File file = new File(name);
+	if (directory == null || file.isAbsolute()) {
+	    return file;
+	}
+	return new File(directory, name);
+    }
+
+    public void setTraceMode(boolean state) {
+	traceOn = state;
+    }
+
+    public boolean isTraceOn() {
+	return traceOn;
+    }
+
+    /**
+     * Should graphs and concepts be output in linear form?
+     */
+    public void setLFOpt(boolean state) {
+	LFOpt = state;
+    }
+
+    public boolean getLFOpt() {
+	return LFOpt;
+    }
+
+    /**
+     * The class name of the CGIF parser.
+     */
+    public void setCGIFParserOpt(String parserClass) {
+	CGIFParserOpt = parserClass;
+    }
+
+    public String getCGIFParserOpt() {
+	return CGIFParserOpt;
+    }
+
+    /**
+     * The class name of the CGIF generator.
+     */
+    public void setCGIFGenOpt(String generatorClass) {
+	CGIFGenOpt = generatorClass;
+    }
+
+    public String getCGIFGenOpt() {
+	return CGIFGenOpt;
+    }
+
+    /**
+     * Should process rules be matched incrementally?
+     */
+    public void setIncrementalOpt(boolean state) {
+	incrementalOpt = state;
+    }
+
+    public boolean getIncrementalOpt() {
+	return incrementalOpt;
+    }
+
+    /**
+     * Should independent sub-actors be executed concurrently?
+     */
+    public void setParallelActorsOpt(boolean state) {
+	parallelActorsOpt = state;
+    }
+
+    public boolean getParallelActorsOpt() {
+	return parallelActorsOpt;
+    }
+
+    /**
+     * Should the results of all actors be cached?
+     */
+    public void setMemoActorsOpt(boolean state) {
+	memoActorsOpt = state;
+    }
+
+    public boolean getMemoActorsOpt() {
+	return memoActorsOpt;
+    }
+}
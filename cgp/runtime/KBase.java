@@ -39,7 +39,13 @@
 
 package cgp.runtime;
 
+import cgp.runtime.GraphStore;
 import cgp.runtime.GraphType;
+import cgp.runtime.InterpreterContext;
+import cgp.runtime.KBaseListener;
+import cgp.runtime.ListType;
+import cgp.runtime.NumberType;
+import cgp.runtime.Projector;
 import cgp.runtime.Scope;
 import cgp.runtime.Type;
 
@@ -58,7 +64,7 @@ import notio.RelationType;
 
 public class KBase extends Type {
     // Static fields.
-    static private String KBASE_NAME = "_KB";
+    static public final String KBASE_NAME = "_KB";
  
     // Instance fields.
     private KnowledgeBase kb;
@@ -66,8 +72,15 @@ public class KBase extends Type {
     private RelationTypeHierarchy relationTypes;
     private TreeSet conceptTypeNames;
     private TreeSet relationTypeNames;
-    private LinkedList graphs;
+    private TypeLattice conceptLattice;
+    private TypeLattice relationLattice;
+    private Object typeLock; // guards the type hierarchies and names
+    private boolean sharedTypes; // are the types those of another KBase?
+    private GraphStore graphs;
     private Namespace corefVars;
+    private KBase parent; // the KBase this one was derived from, or null
+    private LinkedList exports; // pending [Boolean assert?, GraphType] pairs
+    private LinkedList listeners; // KBaseListeners
 
     // Constructors.
     public KBase() {
@@ -80,6 +93,13 @@ public class KBase extends Type {
 	relationTypes = kb.getRelationTypeHierarchy();
 	relationTypes.setCaseSensitiveLabels(true);
 
+	// Compiled forms of the type hierarchies for fast subsumption
+	// tests. These are shared by all KBases sharing the hierarchies.
+	typeLock = new Object();
+	conceptLattice = new TypeLattice(conceptTypes, typeLock);
+	relationLattice = new TypeLattice(relationTypes, typeLock);
+	sharedTypes = false;
+
 	// Create repository for type names. They will be used to
 	// look up types in the hierarchies.
 	conceptTypeNames = new TreeSet();
@@ -94,7 +114,7 @@ public class KBase extends Type {
 	addConceptType("Condition");
 
 	// Create an empty set of structurally equivalent graphs.
-	graphs = new LinkedList();
+	graphs = new GraphStore();
 
 	// Create a respository for coreferent variable mappings.
 	// This is a restricted form of corefernce sets, designed
@@ -103,23 +123,44 @@ public class KBase extends Type {
 	// during process execution.
 	corefVars = new Namespace();
 
-	// Localise special _KB variable.
-	Type.getScopeStack().peek().def(KBASE_NAME, this);
+	// Nothing to export from a top-level KBase.
+	exports = new LinkedList();
+
+	listeners = new LinkedList();
+
+	localise();
 
 	setType("KnowledgeBase");
     }
 
     public KBase(KBase otherKBase) {
+	this(otherKBase, false);
+    }
+
+    /**
+     * Create a new KBase derived from an existing one, either by
+     * copying it or as an overlay of it.
+     *
+     * An overlay records only its own assertions and retractions as a
+     * delta over the other KBase's graphs and coreference variables,
+     * with reads falling through to the latter, so it is created in
+     * constant time. Unlike a copy, it shares the other KBase's graph
+     * objects, and the other KBase must not be changed while the
+     * overlay is in use. Changes destined for the other KBase should
+     * be made via exportAssertion() and exportRetraction() instead.
+     *
+     * Either way, the new KBase shares the other KBase's types until
+     * it declares one, when it takes types of its own (see ownTypes()),
+     * so the other KBase's types are never changed through it.
+     */
+    public KBase(KBase otherKBase, boolean overlay) {
 	// Create a new KBase by copying an existing one.
 
-	// Copy the Notio KnowledgeBase.
+	// Share the Notio KnowledgeBase's components.
 	//
-	// Does the following *really* copy the KnowledgeBase
-	// components? (TBD)
-	//
-	// Only the marker set could be mutated in pCG since
-	// type declarations are only permitted as top-level
-	// statements, not within functions or processes.
+	// The type hierarchies, the type names and their lattices
+	// are shared until this KBase declares a type. Only the
+	// marker set could otherwise be mutated in pCG.
 	KnowledgeBase otherKB = otherKBase.getKB();
 	kb = new KnowledgeBase(otherKB.getConceptTypeHierarchy(),
 			       otherKB.getRelationTypeHierarchy(),
@@ -129,140 +170,212 @@ public class KBase extends Type {
 	// Get type hierarchies.
 	conceptTypes = kb.getConceptTypeHierarchy();
 	relationTypes = kb.getRelationTypeHierarchy();
+	conceptTypeNames = otherKBase.getConceptTypeNames();
+	relationTypeNames = otherKBase.getRelationTypeNames();
+	conceptLattice = otherKBase.getConceptLattice();
+	relationLattice = otherKBase.getRelationLattice();
+	typeLock = otherKBase.getTypeLock();
+	sharedTypes = true;
+
+	parent = otherKBase;
+	exports = new LinkedList();
+	listeners = new LinkedList();
+
+	if (overlay) {
+	    // Graphs and coreference variables fall through to the
+	    // other KBase's unless asserted, retracted or defined here.
+	    graphs = new GraphStore(otherKBase.getGraphStore());
+	    corefVars = new Namespace(otherKBase.getCorefVars());
+	} else {
+	    // Copy the graph set.
+	    // Graphs in this set *might* be mutated.
+	    graphs = new GraphStore();
+	    Iterator it = otherKBase.getGraphStore().iterator();
+	    while (it.hasNext()) {
+		graphs.add(new GraphType(((GraphType)it.next()).getValue()));
+	    }
 
-	// Copy the type names.
-	// These don't have to be cloned since they won't be mutated.
-	conceptTypeNames = new TreeSet();
-	conceptTypeNames.addAll(otherKBase.getConceptTypeNames());
-	relationTypeNames = new TreeSet();
-	relationTypeNames.addAll(otherKBase.getRelationTypeNames());
-	
-	// Copy the graph set.
-	// Graphs in this set *might* be mutated.
-	graphs = new LinkedList();
-	LinkedList otherGraphs = otherKBase.getAssertedGraphs();
-	for (int i=0;i<otherGraphs.size();i++) {
-	    graphs.add(new GraphType(((GraphType)otherGraphs.get(i)).
-				     getValue()));
+	    // Get a copy of the coreference variables so others can
+	    // be added to this KBase without contaminating the original.
+	    corefVars = otherKBase.getCorefVars().copy();
 	}
 
-	// Get a copy of the coreference variables so others can
-	// be added to this KBase without contaminating the original.
-	corefVars = otherKBase.getCorefVars().copy();
-
-	// Localise special _KB variable.
-	Type.getScopeStack().peek().def(KBASE_NAME, this);
+	localise();
 
 	setType("KnowledgeBase");	
     }
 
     // Private methods.
 
-    private String describeConceptTypes() {
-	String str = "";
-	Iterator it = conceptTypeNames.iterator();
-	
-	while (it.hasNext()) {
-	    String name = (String)it.next();
-	    ConceptType ct = conceptTypes.getTypeByLabel(name);
+    /**
+     * Localise special _KB variable, if a program is being run.
+     */
+    private void localise() {
+	InterpreterContext context = Type.getContext();
+	if (context != null && context.getScopeStack().depth() > 0) {
+	    context.getScopeStack().peek().def(KBASE_NAME, this);
+	}
+    }
 
-	    str += name + " has";
+    /**
+     * Add a copy of each type of one concept type hierarchy, linked as
+     * in the latter, to another which has only the universal and absurd
+     * types.
+     */
+    private static void copyConceptTypes(ConceptTypeHierarchy from,
+					 ConceptTypeHierarchy to) {
+	ConceptType universal = 
+	    from.getTypeByLabel(ConceptTypeHierarchy.UNIVERSAL_TYPE_LABEL);
+	ConceptType absurd =
+	    from.getTypeByLabel(ConceptTypeHierarchy.ABSURD_TYPE_LABEL);
+	ConceptType[] types = universal.getProperSubTypes();
+
+	for (int i=0;i<types.length;i++) {
+	    if (types[i] != absurd) {
+		to.addTypeToHierarchy(new ConceptType(types[i].getLabel()));
+	    }
+	}
 
-	    ConceptType[] superTypes = ct.getImmediateSuperTypes();
-	    if (superTypes.length == 0) {
-		str += " no supertypes"; 
-	    } else {
-		str += " supertypes ";
-		for (int i=0;i<superTypes.length;i++) {
-		    str += superTypes[i].getLabel();
-		    if (i < superTypes.length-1) {
-			str += ", ";
+	for (int i=0;i<types.length;i++) {
+	    if (types[i] != absurd) {
+		ConceptType ct = to.getTypeByLabel(types[i].getLabel());
+		ConceptType[] superTypes = types[i].getImmediateSuperTypes();
+		for (int j=0;j<superTypes.length;j++) {
+		    if (superTypes[j] != universal) {
+			to.addSuperTypeToType(ct, 
+			    to.getTypeByLabel(superTypes[j].getLabel()));
 		    }
 		}
 	    }
+	}
+    }
 
-	    str += " and";
+    /**
+     * Add a copy of each type of one relation type hierarchy, linked
+     * as in the latter, to another which has only the universal and 
+     * absurd types.
+     */
+    private static void copyRelationTypes(RelationTypeHierarchy from,
+					  RelationTypeHierarchy to) {
+	RelationType universal = 
+	    from.getTypeByLabel(RelationTypeHierarchy.UNIVERSAL_TYPE_LABEL);
+	RelationType absurd =
+	    from.getTypeByLabel(RelationTypeHierarchy.ABSURD_TYPE_LABEL);
+	RelationType[] types = universal.getProperSubTypes();
+
+	for (int i=0;i<types.length;i++) {
+	    if (types[i] != absurd) {
+		to.addTypeToHierarchy(new RelationType(types[i].getLabel(),
+						       types[i].getValence()));
+	    }
+	}
 
-	    ConceptType[] subTypes = ct.getImmediateSubTypes();
-	    if (subTypes.length == 0) {
-		str += " no subtypes"; 
-	    } else {
-		str += " subtypes ";
-		for (int i=0;i<subTypes.length;i++) {
-		    str += subTypes[i].getLabel();
-		    if (i < subTypes.length-1) {
-			str += ", ";
+	for (int i=0;i<types.length;i++) {
+	    if (types[i] != absurd) {
+		RelationType rt = to.getTypeByLabel(types[i].getLabel());
+		RelationType[] superTypes = types[i].getImmediateSuperTypes();
+		for (int j=0;j<superTypes.length;j++) {
+		    if (superTypes[j] != universal) {
+			to.addSuperTypeToType(rt, 
+			    to.getTypeByLabel(superTypes[j].getLabel()));
 		    }
 		}
 	    }
-
-	    str += ".\n";
 	}
-
-	return str;
     }
 
-    private String describeRelationTypes() {
+    private String describeConceptTypes() {
 	String str = "";
-	Iterator it = relationTypeNames.iterator();
-	
-	while (it.hasNext()) {
-	    String name = (String)it.next();
-	    RelationType ct = relationTypes.getTypeByLabel(name);
-
-	    str += name + " has";
 
-	    RelationType[] superTypes = ct.getImmediateSuperTypes();
-	    if (superTypes.length == 0) {
-		str += " no supertypes"; 
-	    } else {
-		str += " supertypes ";
-		for (int i=0;i<superTypes.length;i++) {
-		    str += superTypes[i].getLabel();
-		    if (i < superTypes.length-1) {
-			str += ", ";
+	synchronized (typeLock) {
+	    Iterator it = conceptTypeNames.iterator();
+
+	    while (it.hasNext()) {
+		String name = (String)it.next();
+		ConceptType ct = conceptTypes.getTypeByLabel(name);
+
+		str += name + " has";
+
+		ConceptType[] superTypes = ct.getImmediateSuperTypes();
+		if (superTypes.length == 0) {
+		    str += " no supertypes"; 
+		} else {
+		    str += " supertypes ";
+		    for (int i=0;i<superTypes.length;i++) {
+			str += superTypes[i].getLabel();
+			if (i < superTypes.length-1) {
+			    str += ", ";
+			}
 		    }
 		}
-	    }
 
-	    str += " and";
-
-	    RelationType[] subTypes = ct.getImmediateSubTypes();
-	    if (subTypes.length == 0) {
-		str += " no subtypes "; 
-	    } else {
-		str += " subtypes ";
-		for (int i=0;i<subTypes.length;i++) {
-		    str += subTypes[i].getLabel();
-		    if (i < subTypes.length-1) {
-			str += ", ";
+		str += " and";
+
+		ConceptType[] subTypes = ct.getImmediateSubTypes();
+		if (subTypes.length == 0) {
+		    str += " no subtypes"; 
+		} else {
+		    str += " subtypes ";
+		    for (int i=0;i<subTypes.length;i++) {
+			str += subTypes[i].getLabel();
+			if (i < subTypes.length-1) {
+			    str += ", ";
+			}
 		    }
 		}
-	    }
 
-	    str += ".\n";
+		str += ".\n";
+	    }
 	}
 
 	return str;
     }
 
-    /**
-     * Return the specified graph's index in the list
-     * or -1 if it is not present. The search is based
-     * upon structural graph equivalence.
-     */
-    private int graphLocation(GraphType g) {
-	int index = -1;
+    private String describeRelationTypes() {
+	String str = "";
 
-	for (int i=0;i<graphs.size();i++) {
-	    GraphType h = (GraphType)graphs.get(i);
-	    if (g.equals(h)) {
-		index = i;
-		break;
+	synchronized (typeLock) {
+	    Iterator it = relationTypeNames.iterator();
+
+	    while (it.hasNext()) {
+		String name = (String)it.next();
+		RelationType ct = relationTypes.getTypeByLabel(name);
+
+		str += name + " has";
+
+		RelationType[] superTypes = ct.getImmediateSuperTypes();
+		if (superTypes.length == 0) {
+		    str += " no supertypes"; 
+		} else {
+		    str += " supertypes ";
+		    for (int i=0;i<superTypes.length;i++) {
+			str += superTypes[i].getLabel();
+			if (i < superTypes.length-1) {
+			    str += ", ";
+			}
+		    }
+		}
+
+		str += " and";
+
+		RelationType[] subTypes = ct.getImmediateSubTypes();
+		if (subTypes.length == 0) {
+		    str += " no subtypes "; 
+		} else {
+		    str += " subtypes ";
+		    for (int i=0;i<subTypes.length;i++) {
+			str += subTypes[i].getLabel();
+			if (i < subTypes.length-1) {
+			    str += ", ";
+			}
+		    }
+		}
+
+		str += ".\n";
 	    }
 	}
 
-	return index;
+	return str;
     }
 
     // Public methods.
@@ -271,7 +384,21 @@ public class KBase extends Type {
 	return kb;
     }
 
+    /**
+     * Return copies of the graphs in the set, in the order they were
+     * asserted. The graphs held by the knowledge base are never handed
+     * out, since changing one would invalidate the graph set.
+     */
     public LinkedList getAssertedGraphs() {
+	LinkedList copies = new LinkedList();
+	Iterator it = getGraphStore().iterator();
+	while (it.hasNext()) {
+	    copies.add(((GraphType)it.next()).copy());
+	}
+	return copies;
+    }
+
+    public GraphStore getGraphStore() {
 	return graphs;
     }
 
@@ -287,6 +414,76 @@ public class KBase extends Type {
 	return relationTypeNames;
     }
 
+    public TypeLattice getConceptLattice() {
+	return conceptLattice;
+    }
+
+    public TypeLattice getRelationLattice() {
+	return relationLattice;
+    }
+
+    /**
+     * Return the lock which guards this KBase's type hierarchies and
+     * type names, and is shared by the KBases sharing them. A CGIF
+     * parser may add types to the hierarchies of the Notio knowledge
+     * base it is given (see getKB()) as it parses, so it must hold 
+     * this lock while doing so.
+     */
+    public Object getTypeLock() {
+	return typeLock;
+    }
+
+    /**
+     * Give this KBase types of its own if it shares those of the KBase
+     * it was derived from, so that it may declare types without 
+     * changing the latter's, e.g. a run of a program by an Engine, or
+     * a job run by a Daemon, starting from a shared KBase. The types
+     * are copied along with their names, and a lattice compiled for
+     * each copy. Graphs shared with the other KBase still refer to its
+     * types, but types are matched by label, so they are compared with
+     * those of the copy as they would have been with the originals.
+     */
+    public void ownTypes() {
+	if (!sharedTypes) {
+	    return;
+	}
+
+	ConceptTypeHierarchy newConceptTypes = new ConceptTypeHierarchy();
+	newConceptTypes.setCaseSensitiveLabels(true);
+	RelationTypeHierarchy newRelationTypes = new RelationTypeHierarchy();
+	newRelationTypes.setCaseSensitiveLabels(true);
+	TreeSet newConceptTypeNames;
+	TreeSet newRelationTypeNames;
+
+	synchronized (typeLock) {
+	    copyConceptTypes(conceptTypes, newConceptTypes);
+	    copyRelationTypes(relationTypes, newRelationTypes);
+	    newConceptTypeNames = new TreeSet(conceptTypeNames);
+	    newRelationTypeNames = new TreeSet(relationTypeNames);
+	}
+
+	kb = new KnowledgeBase(newConceptTypes, newRelationTypes,
+			       kb.getMarkerSet(), kb.getOutermostContext());
+	conceptTypes = newConceptTypes;
+	relationTypes = newRelationTypes;
+	conceptTypeNames = newConceptTypeNames;
+	relationTypeNames = newRelationTypeNames;
+	typeLock = new Object();
+	conceptLattice = new TypeLattice(conceptTypes, typeLock);
+	relationLattice = new TypeLattice(relationTypes, typeLock);
+	sharedTypes = false;
+    }
+
+    /**
+     * Tell this KBase that its type hierarchies may have been changed
+     * other than by the methods below, e.g. by a CGIF parser reading
+     * type declarations (see FileType.readGraphStream()).
+     */
+    public void typesChanged() {
+	conceptLattice.invalidate();
+	relationLattice.invalidate();
+    }
+
     public String toString() {
 	// Might want to split out types from graphs later
 	// and add marker set.
@@ -301,7 +498,7 @@ public class KBase extends Type {
 
 	       "Graphs\n" +
 	       "------\n" +
-	       graphs + "\n";
+	       getGraphStore() + "\n";
     }
 
     /**
@@ -309,11 +506,13 @@ public class KBase extends Type {
      * already been added.
      */
     public void addConceptType(String typeName) {
-	ConceptType ct = conceptTypes.getTypeByLabel(typeName);
-
-	if (ct == null) {
-	    conceptTypeNames.add(typeName);
-	    conceptTypes.addTypeToHierarchy(new ConceptType(typeName));
+	if (conceptTypes.getTypeByLabel(typeName) == null) {
+	    ownTypes();
+	    synchronized (typeLock) {
+		conceptTypeNames.add(typeName);
+		conceptTypes.addTypeToHierarchy(new ConceptType(typeName));
+	    }
+	    conceptLattice.invalidate();
 	}
     }
 
@@ -321,19 +520,29 @@ public class KBase extends Type {
      * Add a concept type to the hierarchy if it has not
      * already been added, and add an immediate supertype.
      * It is a precondition that the supertype has already
-     * been added via addConceptType(String). 
+     * been added via addConceptType(String). Nothing is
+     * changed if the types are already so related.
      */
     public void linkConceptTypes(String superTypeName, String typeName) {
 	ConceptType ct = conceptTypes.getTypeByLabel(typeName);
-
-	if (ct == null) {
-	    conceptTypeNames.add(typeName);
-	    ct = new ConceptType(typeName);
-	    conceptTypes.addTypeToHierarchy(ct);
+	ConceptType sct = conceptTypes.getTypeByLabel(superTypeName);
+	if (ct != null && sct != null && conceptLattice.subsumes(sct, ct)) {
+	    return;
 	}
 
-	ConceptType sct = conceptTypes.getTypeByLabel(superTypeName);
-	conceptTypes.addSuperTypeToType(ct, sct);
+	ownTypes();
+	synchronized (typeLock) {
+	    ct = conceptTypes.getTypeByLabel(typeName);
+	    if (ct == null) {
+		conceptTypeNames.add(typeName);
+		ct = new ConceptType(typeName);
+		conceptTypes.addTypeToHierarchy(ct);
+	    }
+
+	    sct = conceptTypes.getTypeByLabel(superTypeName);
+	    conceptTypes.addSuperTypeToType(ct, sct);
+	}
+	conceptLattice.invalidate();
     }
 
     /**
@@ -341,11 +550,13 @@ public class KBase extends Type {
      * already been added.
      */
     public void addRelationType(String typeName) {
-	RelationType rt = relationTypes.getTypeByLabel(typeName);
-
-	if (rt == null) {
-	    relationTypeNames.add(typeName);
-	    relationTypes.addTypeToHierarchy(new RelationType(typeName));
+	if (relationTypes.getTypeByLabel(typeName) == null) {
+	    ownTypes();
+	    synchronized (typeLock) {
+		relationTypeNames.add(typeName);
+		relationTypes.addTypeToHierarchy(new RelationType(typeName));
+	    }
+	    relationLattice.invalidate();
 	}
     }
 
@@ -353,19 +564,29 @@ public class KBase extends Type {
      * Add a relation type to the hierarchy if it has not
      * already been added, and add an immediate supertype.
      * It is a precondition that the supertype has already
-     * been added via addRelationType(String). 
+     * been added via addRelationType(String). Nothing is
+     * changed if the types are already so related.
      */
     public void linkRelationTypes(String superTypeName, String typeName) {
 	RelationType rt = relationTypes.getTypeByLabel(typeName);
-
-	if (rt == null) {
-	    relationTypeNames.add(typeName);
-	    rt = new RelationType(typeName);
-	    relationTypes.addTypeToHierarchy(rt);
+	RelationType srt = relationTypes.getTypeByLabel(superTypeName);
+	if (rt != null && srt != null && relationLattice.subsumes(srt, rt)) {
+	    return;
 	}
 
-	RelationType srt = relationTypes.getTypeByLabel(superTypeName);
-	relationTypes.addSuperTypeToType(rt, srt);
+	ownTypes();
+	synchronized (typeLock) {
+	    rt = relationTypes.getTypeByLabel(typeName);
+	    if (rt == null) {
+		relationTypeNames.add(typeName);
+		rt = new RelationType(typeName);
+		relationTypes.addTypeToHierarchy(rt);
+	    }
+
+	    srt = relationTypes.getTypeByLabel(superTypeName);
+	    relationTypes.addSuperTypeToType(rt, srt);
+	}
+	relationLattice.invalidate();
     }
 
     /**
@@ -373,9 +594,8 @@ public class KBase extends Type {
      * by reference to the current knowledge base.
      */
     public void bindCorefVars(GraphType g) {
-	LinkedList conceptList = g.getConcepts().getValue();
 	cgp.runtime.ConceptType[] concepts =
-	    (cgp.runtime.ConceptType[])conceptList.
+	    (cgp.runtime.ConceptType[])g.getConcepts().asList().
 	    toArray(new cgp.runtime.ConceptType[0]);
 	for (int i=0;i<concepts.length;i++) {
 	    if (concepts[i].hasVarDesignator()) {
@@ -394,9 +614,10 @@ public class KBase extends Type {
      * structurally equivalent graph has already been 
      * asserted.
      *
-     * Coreferent variables in the graph are optionally first bound,
-     * a copy being taken to prevent side effects on the original
-     * graph.
+     * A copy of the graph is asserted, so that neither the original
+     * nor the graph held by the knowledge base can be changed through
+     * the other (see GraphStore). Coreferent variables in the copy are
+     * optionally first bound.
      *
      * Markers in the graph's concepts are added to the 
      * knowledge base's marker set (TBD). May not be 
@@ -404,13 +625,11 @@ public class KBase extends Type {
      * direct comparison.
      */
     public void assertGraph(GraphType g, boolean bindVars) {
+	g = g.copy();
 	if (bindVars) {
-	    g = g.copy();
 	    bindCorefVars(g);
 	}
-	if (graphLocation(g) == -1) {
-	    graphs.add(g);
-	}
+	addGraph(g);
     }
 
     /**
@@ -430,9 +649,9 @@ public class KBase extends Type {
 	    g = g.copy();
 	    bindCorefVars(g);
 	}
-	int index = graphLocation(g);
-	if (index >= 0) {
-	    graphs.remove(index);
+	GraphType removed = graphs.remove(g);
+	if (removed != null) {
+	    graphRetracted(removed);
 	}
     }
 
@@ -450,24 +669,77 @@ public class KBase extends Type {
 	retract(g, true);
     }
     
+    /**
+     * Register an object to be told of graphs asserted in or 
+     * retracted from this KBase. Changes to other KBases, e.g. 
+     * the one this was derived from, are not reported.
+     */
+    public void addListener(KBaseListener listener) {
+	listeners.add(listener);
+    }
+
+    public void removeListener(KBaseListener listener) {
+	listeners.remove(listener);
+    }
+
+    /**
+     * Add a graph which no one else holds to the graph set unless a
+     * structurally equivalent graph is already present.
+     */
+    protected void addGraph(GraphType g) {
+	if (graphs.add(g)) {
+	    graphAsserted(g);
+	}
+    }
+
+    /**
+     * Tell listeners that the specified graph has been asserted.
+     */
+    protected void graphAsserted(GraphType g) {
+	Iterator it = listeners.iterator();
+	while (it.hasNext()) {
+	    ((KBaseListener)it.next()).graphAsserted(g);
+	}
+    }
+
+    /**
+     * Tell listeners that the specified graph has been retracted.
+     */
+    protected void graphRetracted(GraphType g) {
+	Iterator it = listeners.iterator();
+	while (it.hasNext()) {
+	    ((KBaseListener)it.next()).graphRetracted(g);
+	}
+    }
+
     /**
      * Does the specified graph exactly match a graph in the set?
      */
     public boolean exactMatch(GraphType g) {
-	return graphLocation(g) >= 0;
+	return getGraphStore().contains(g);
     }
 
     /**
-     * Does the specified graph project onto a graph in the set?
+     * Does the specified graph project onto a graph in the set? The
+     * coreference variables of the graph are bound by the projection
+     * which is returned, and by no other projection attempted.
      */
     public GraphType projectionMatch(GraphType g) {
 	Graph p = null;
 	Graph source = g.getValue();
 
-	for (int i=0;i<graphs.size();i++) {
-	    GraphType h = (GraphType)graphs.get(i);
-	    p = h.project(source);
+	// Only graphs which the relation index says could accept
+	// the projection need be tried. A failed attempt may restrict
+	// concepts before failing, so variables are only bound once
+	// a projection is found.
+	Iterator it = getGraphStore().projectionCandidates(source, 
+							   relationLattice).
+	    iterator();
+	while (it.hasNext()) {
+	    GraphType h = (GraphType)it.next();
+	    p = h.project(source, false);
 	    if (p != null) {
+		h.project(source, true);
 		break;
 	    }
 	}
@@ -475,6 +747,84 @@ public class KBase extends Type {
 	return p != null ? new GraphType(p) : null;
     }
 
+    /**
+     * Return every projection of the specified filter graph onto the
+     * graphs in the set, up to the specified number, in the order the
+     * graphs were asserted. Unlike projectionMatch(), every (non-actor)
+     * relation of the filter must be matched, and no coreference
+     * variable mappings are added.
+     *
+     * @see Projector
+     */
+    public LinkedList projectAll(GraphType g, int limit) {
+	LinkedList results = new LinkedList();
+	Projector projector = new Projector(g.getValue(), this);
+
+	// Only graphs with a compatible relation for each of the
+	// filter's relations need be tried.
+	Iterator it = getGraphStore().
+	    coveringCandidates(projector.getRelations(), relationLattice).
+	    iterator();
+	while (it.hasNext() && results.size() < limit) {
+	    GraphType h = (GraphType)it.next();
+	    projector.projectAll(h.getValue(), limit - results.size(),
+				 results);
+	}
+
+	return results;
+    }
+
+    /**
+     * Record a graph to be asserted in the KBase this one was derived
+     * from when commitExports() is called. Coreference variables are
+     * expected to have been bound already. A copy of the graph is taken
+     * now, so later changes to the graph are not exported.
+     */
+    public void exportAssertion(GraphType g) {
+	exports.add(Boolean.TRUE);
+	exports.add(g.copy());
+    }
+
+    /**
+     * Record a graph to be retracted from the KBase this one was
+     * derived from when commitExports() is called. Coreference 
+     * variables are expected to have been bound already. A copy of the
+     * graph is taken now, as for exportAssertion().
+     */
+    public void exportRetraction(GraphType g) {
+	exports.add(Boolean.FALSE);
+	exports.add(g.copy());
+    }
+
+    /**
+     * Apply all pending exported assertions and retractions to the
+     * KBase this one was derived from, as a single batch and in the
+     * order they were made. Deferring them until this KBase is no
+     * longer in use means an overlay never sees its parent change.
+     */
+    public void commitExports() {
+	parent.applyChanges(exports);
+	exports.clear();
+    }
+
+    /**
+     * Apply a list of [Boolean assert?, GraphType] pairs to this KBase
+     * in order. Coreference variables are expected to have been bound
+     * already, and the graphs to be held by no one else.
+     */
+    protected void applyChanges(LinkedList changes) {
+	Iterator it = changes.iterator();
+	while (it.hasNext()) {
+	    boolean isAssertion = ((Boolean)it.next()).booleanValue();
+	    GraphType g = (GraphType)it.next();
+	    if (isAssertion) {
+		addGraph(g);
+	    } else {
+		retract(g, false); // false = don't bind vars
+	    }
+	}
+    }
+
     /**
      * Add a coreferent variable mapping.
      */
@@ -487,7 +837,7 @@ public class KBase extends Type {
      * May return undefined.
      */
     public Type getCorefVarValue(String name) {
-	return corefVars.get(name);
+	return getCorefVars().get(name);
     }
 
    // -----------------------------------------------------------
@@ -496,7 +846,7 @@ public class KBase extends Type {
      * Getter and setter methods for attributes.
      */
     public ListType getGraphs() {
-	return new ListType(graphs);
+	return new ListType(getAssertedGraphs());
     }
 
     public StringType getConcepttypes() {
@@ -508,7 +858,7 @@ public class KBase extends Type {
     }
 
     public ListType getCorefvars() {
-	return new ListType(corefVars.getMappings());
+	return new ListType(getCorefVars().getMappings());
     }
 
     // -----------------------------------------------------------
@@ -516,4 +866,20 @@ public class KBase extends Type {
     /**
      * pCG member functions.
      */
+
+    /**
+     * Return a list of every projection of the specified filter
+     * graph onto the graphs in this KB.
+     */
+    public ListType projectAll(GraphType g) {
+	return new ListType(projectAll(g, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Return a list of at most the specified number of projections
+     * of the specified filter graph onto the graphs in this KB.
+     */
+    public ListType projectAll(GraphType g, NumberType limit) {
+	return new ListType(projectAll(g, (int)limit.getValue()));
+    }
 }
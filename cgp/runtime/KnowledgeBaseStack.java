@@ -56,4 +56,14 @@ public class KnowledgeBaseStack {
     public KBase peek() {
 	return (KBase)stack.getLast();
     }
+
+    /**
+     * Return a new stack holding the same KBs as this one, to
+     * which further KBs may be pushed independently of this one.
+     */
+    public KnowledgeBaseStack fork() {
+	KnowledgeBaseStack s = new KnowledgeBaseStack();
+	s.stack.addAll(stack);
+	return s;
+    }
 }
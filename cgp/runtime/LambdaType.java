@@ -62,6 +62,18 @@ public class LambdaType extends Type {
 	this.body = new GraphType(body);
 	setType("lambda");
     }
+
+    /**
+     * Call this constructor from a subclass which determines the
+     * body itself, sharing the definition's defining graph.
+     */
+    protected LambdaType(LambdaType definition) {
+	this.name = definition.name;
+	this.formals = definition.formals;
+	this.defGraph = definition.defGraph;
+	this.body = null;
+	setType("lambda");
+    }
  
     // Public methods.
 
@@ -135,7 +147,7 @@ public class LambdaType extends Type {
     }
 
     public GraphType getDefgraph() {
-	return body;
+	return getBody();
     }
 
     // -----------------------------------------------------------
@@ -28,4 +28,23 @@ package cgp.runtime;
 import java.lang.RuntimeException;
 
 public class LastException extends RuntimeException {
+    // Static fields.
+
+    // Since the exception carries no information, a single instance
+    // is thrown whenever a "last" statement is executed.
+    static public final LastException signal = new LastException();
+
+    // Constructors.
+    private LastException() {
+    }
+
+    // Public methods.
+
+    /**
+     * No stack trace is captured, since one is never reported and an
+     * inner loop may be left this way many times over.
+     */
+    public Throwable fillInStackTrace() {
+	return this;
+    }
 }
@@ -18,69 +18,202 @@
  *
  * List type class for pCG expressions.
  *
+ * The elements are held in a growable circular array, so that indexing
+ * takes constant time, as do appending and prepending (amortised over
+ * the doubling of the array when full). Java code should access the
+ * elements via size(), get(), iterator() or asList().
+ *
  * David Benn, June-July 2000
  */
 
 package cgp.runtime;
 
+import antlr.RecognitionException;
+
 import cgp.runtime.BooleanType;
+import cgp.runtime.FunctionCall;
+import cgp.runtime.FunctionType;
 import cgp.runtime.Type;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 public class ListType extends Type {
+    // Static fields.
+    static private int MIN_CAPACITY = 8; // must be a power of 2
+
     // Fields.
-    private LinkedList theList;
+    private Type[] elements; // length is a power of 2
+    private int head; // index of the first element
+    private int size;
 
     // Constructors.
     public ListType() {
-	theList = new LinkedList();
-	setType("list");
+	this(0);
     }
 
-    public ListType(LinkedList list) {
-	this();
-	theList = list;
+    public ListType(Collection values) {
+	this(values.size());
+	Iterator it = values.iterator();
+	while (it.hasNext()) {
+	    addLast((Type)it.next());
+	}
     }
 
     public ListType(Type[] values) {
-	this();
+	this(values.length);
 	for (int i=0;i<values.length;i++) {
-	    theList.add(values[i]);
+	    addLast(values[i]);
+	}
+    }
+
+    private ListType(int expectedSize) {
+	int capacity = MIN_CAPACITY;
+	while (capacity < expectedSize) {
+	    capacity <<= 1;
+	}
+	elements = new Type[capacity];
+	head = 0;
+	size = 0;
+	setType("list");
+    }
+
+    // Private methods.
+
+    private int slot(int index) {
+	return (head + index) & (elements.length - 1);
+    }
+
+    private void ensureCapacity() {
+	if (size == elements.length) {
+	    Type[] larger = new Type[elements.length << 1];
+	    for (int i=0;i<size;i++) {
+		larger[i] = elements[slot(i)];
+	    }
+	    elements = larger;
+	    head = 0;
 	}
     }
 
     // Public methods.
 
-    public LinkedList getValue() {
-	return theList;
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Return the element at the specified (zero-based) index.
+     */
+    public Type get(int index) {
+	if (index < 0 || index >= size) {
+	    throw new IndexOutOfBoundsException("invalid list index: " +
+						(index+1));
+	}
+	return elements[slot(index)];
+    }
+
+    /**
+     * Set the element at the specified (zero-based) index.
+     */
+    public void set(int index, Type x) {
+	if (index < 0 || index >= size) {
+	    throw new IndexOutOfBoundsException("invalid list index: " +
+						(index+1));
+	}
+	elements[slot(index)] = x;
+    }
+
+    public void addFirst(Type x) {
+	ensureCapacity();
+	head = (head - 1) & (elements.length - 1);
+	elements[head] = x;
+	size++;
+    }
+
+    public void addLast(Type x) {
+	ensureCapacity();
+	elements[slot(size)] = x;
+	size++;
+    }
+
+    public Type[] toArray() {
+	Type[] values = new Type[size];
+	for (int i=0;i<size;i++) {
+	    values[i] = elements[slot(i)];
+	}
+	return values;
+    }
+
+    /**
+     * Return an iterator over the elements, in order.
+     */
+    public Iterator iterator() {
+	return new Iterator() {
+		private int next = 0;
+
+		public boolean hasNext() {
+		    return next < size;
+		}
+
+		public Object next() {
+		    if (next >= size) {
+			throw new NoSuchElementException();
+		    }
+		    return elements[slot(next++)];
+		}
+
+		public void remove() {
+		    throw new UnsupportedOperationException();
+		}
+	    };
+    }
+
+    /**
+     * Return a view of this list as a java.util.List, through which
+     * elements may be got and set but not added or removed.
+     */
+    public List asList() {
+	return new AbstractList() {
+		public int size() {
+		    return size;
+		}
+
+		public Object get(int index) {
+		    return ListType.this.get(index);
+		}
+
+		public Object set(int index, Object x) {
+		    Type old = ListType.this.get(index);
+		    ListType.this.set(index, (Type)x);
+		    return old;
+		}
+	    };
     }
 
     public String toString() {
-	String listStr = "";
-	if (theList.size() > 0) {
-	    Iterator it = theList.iterator();
-	    listStr = "{";
-	    while (it.hasNext()) {
-		listStr += it.next();
-		if (it.hasNext()) listStr += ", ";
-	    }	
-	    listStr += "}";
-	} else {
-	    listStr = "{}";
+	if (size == 0) {
+	    return "{}";
+	}
+	StringBuffer listStr = new StringBuffer("{");
+	for (int i=0;i<size;i++) {
+	    if (i > 0) listStr.append(", ");
+	    listStr.append(elements[slot(i)]);
 	}
-	return listStr;
+	listStr.append("}");
+	return listStr.toString();
     }    
 
     public boolean equals(Object other) {
 	if (other instanceof ListType) {
-	    LinkedList l = ((ListType)other).getValue();
-	    if (l.size() == theList.size()) {
-		Iterator it1 = theList.iterator();
-		Iterator it2 = l.iterator();
-		while (it1.hasNext()) {
-		    Type x = (Type)it1.next();
-		    Type y = (Type)it2.next();
+	    ListType l = (ListType)other;
+	    if (l.size() == size) {
+		for (int i=0;i<size;i++) {
+		    Type x = get(i);
+		    Type y = l.get(i);
 		    if (!x.equals(y)) return false;
 		}	    
 	    } else {
@@ -92,6 +225,19 @@ public class ListType extends Type {
 	return true;
     }
 
+    /**
+     * Combine the element hashes in order, consistent with equals(). A
+     * list which is mutated after being added to a set or used as a map
+     * key will not be found again.
+     */
+    public int hashCode() {
+	int hash = 1;
+	for (int i=0;i<size;i++) {
+	    hash = 31*hash + elements[slot(i)].hashCode();
+	}
+	return hash;
+    }
+
     public Type eqOp(Type other) {
 	Type result = UndefinedType.undefined;
 	if (other instanceof ListType) {
@@ -119,8 +265,8 @@ public class ListType extends Type {
     public Type getNthOp(Type n) {
 	if (n instanceof NumberType) {
 	    int index = (int)((NumberType)n).getValue() - 1;
-	    if (index >= 0 && index < theList.size()) {
-		return (Type)theList.get(index);
+	    if (index >= 0 && index < size) {
+		return elements[slot(index)];
 	    } else {		
 		throw new IndexOutOfBoundsException("invalid list index: "+n);
 	    }
@@ -137,8 +283,8 @@ public class ListType extends Type {
     public void setNthOp(Type n, Type value) {
 	if (n instanceof NumberType) {
 	    int index = (int)((NumberType)n).getValue() - 1;
-	    if (index >= 0 && index < theList.size()) {
-		theList.set(index, value);
+	    if (index >= 0 && index < size) {
+		elements[slot(index)] = value;
 	    } else {		
 		throw new IndexOutOfBoundsException("invalid list index: "+n);
 	    }
@@ -153,7 +299,7 @@ public class ListType extends Type {
      * Getter and setter methods for attributes.
      */
     public NumberType getLength() {
-	return new NumberType(theList.size());
+	return new NumberType(size);
     }
 
     // -----------------------------------------------------------
@@ -168,9 +314,8 @@ public class ListType extends Type {
      */
     public BooleanType hasMember(Type x) {
 	boolean found = false;
-	Iterator it = theList.iterator();
-	while (it.hasNext()) {
-	    Type y = (Type)it.next();
+	for (int i=0;i<size;i++) {
+	    Type y = elements[slot(i)];
 	    found = x.equals(y);
 	    if (found) break;
 	}
@@ -183,10 +328,8 @@ public class ListType extends Type {
      * Note that this may be the outermost list.
      */
     public Type member(Type x) {
-	Iterator it = theList.iterator();
-
-	while (it.hasNext()) {
-	    Type y = (Type)it.next();
+	for (int i=0;i<size;i++) {
+	    Type y = elements[slot(i)];
 	    if (x.equals(y)) {
 		// x and y are structurally equivalent.
 		return this;
@@ -208,7 +351,7 @@ public class ListType extends Type {
      * Prepend a value to this list and return the mutated list.
      */
     public ListType prepend(Type x) {
-	theList.addFirst(x);
+	addFirst(x);
 	return this;
     }
 
@@ -216,7 +359,7 @@ public class ListType extends Type {
      * Append a value to this list and return the mutated list.
      */
     public ListType append(Type x) {
-	theList.addLast(x);
+	addLast(x);
 	return this;
     }
 
@@ -226,11 +369,148 @@ public class ListType extends Type {
      */
     public ListType merge(Type x) {
 	if (x instanceof ListType) {
-	    theList.addAll(((ListType)x).getValue());
+	    Type[] values = ((ListType)x).toArray();
+	    for (int i=0;i<values.length;i++) {
+		addLast(values[i]);
+	    }
 	    return this;
 	} else {
 	    operationError("merge");
 	}
 	return this; // keep javac happy
     }
+
+    /**
+     * Return a new list of the results of calling the specified function
+     * with each element of this list.
+     */
+    public ListType map(FunctionType f) throws RecognitionException {
+	ListType result = new ListType(size);
+	FunctionCall call = Type.getFunctionCaller().newCall(f);
+	call.begin();
+	try {
+	    for (int i=0;i<size;i++) {
+		result.addLast(call.call(new Type[] { elements[slot(i)] }));
+	    }
+	} finally {
+	    call.end();
+	}
+	return result;
+    }
+
+    /**
+     * Return a new list of those elements of this list for which the
+     * specified function returns true.
+     */
+    public ListType filter(FunctionType f) throws RecognitionException {
+	ListType result = new ListType();
+	FunctionCall call = Type.getFunctionCaller().newCall(f);
+	call.begin();
+	try {
+	    for (int i=0;i<size;i++) {
+		Type x = elements[slot(i)];
+		Type keep = call.call(new Type[] { x });
+		if (!(keep instanceof BooleanType)) {
+		    operationError("filter");
+		}
+		if (((BooleanType)keep).getValue()) {
+		    result.addLast(x);
+		}
+	    }
+	} finally {
+	    call.end();
+	}
+	return result;
+    }
+
+    /**
+     * Combine the elements of this list, from first to last, by calling
+     * the specified function with the result so far (initially the 
+     * specified value) and the next element, and return the result.
+     */
+    public Type reduce(FunctionType f, Type init) 
+	throws RecognitionException {
+	Type result = init;
+	FunctionCall call = Type.getFunctionCaller().newCall(f);
+	call.begin();
+	try {
+	    for (int i=0;i<size;i++) {
+		result = call.call(new Type[] { result, elements[slot(i)] });
+	    }
+	} finally {
+	    call.end();
+	}
+	return result;
+    }
+
+    /**
+     * Return a new list of the elements of this list, stably sorted by
+     * the specified function, which given two elements returns a number
+     * less than, equal to or greater than zero as the first is to be 
+     * ordered before, with or after the second.
+     */
+    public ListType sort(FunctionType f) throws RecognitionException {
+	final FunctionCall call = Type.getFunctionCaller().newCall(f);
+	Type[] values = toArray();
+	call.begin();
+	try {
+	    Arrays.sort(values, new Comparator() {
+		    public int compare(Object x, Object y) {
+			Type order;
+			try {
+			    order = call.call(new Type[] { (Type)x, (Type)y });
+			} catch (RecognitionException e) {
+			    throw new CallFailure(e);
+			}
+			if (!(order instanceof NumberType)) {
+			    operationError("sort");
+			}
+			double n = ((NumberType)order).getValue();
+			return n < 0 ? -1 : (n > 0 ? 1 : 0);
+		    }
+		});
+	} catch (CallFailure e) {
+	    throw e.failure;
+	} finally {
+	    call.end();
+	}
+	return new ListType(values);
+    }
+
+    /**
+     * Return a new list of the first n elements of this list, or all
+     * of them if there are fewer.
+     */
+    public ListType take(NumberType n) {
+	int count = Math.max(0, Math.min(size, (int)n.getValue()));
+	ListType result = new ListType(count);
+	for (int i=0;i<count;i++) {
+	    result.addLast(elements[slot(i)]);
+	}
+	return result;
+    }
+
+    /**
+     * Return a new list of the elements of this list after the first n.
+     */
+    public ListType drop(NumberType n) {
+	int start = Math.max(0, Math.min(size, (int)n.getValue()));
+	ListType result = new ListType(size - start);
+	for (int i=start;i<size;i++) {
+	    result.addLast(elements[slot(i)]);
+	}
+	return result;
+    }
+
+    /**
+     * The failure of a call of a pCG function from a comparator, which
+     * may not throw a checked exception.
+     */
+    private static class CallFailure extends RuntimeException {
+	RecognitionException failure;
+
+	CallFailure(RecognitionException failure) {
+	    this.failure = failure;
+	}
+    }
 }
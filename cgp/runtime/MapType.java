@@ -0,0 +1,183 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Map type class for pCG expressions, e.g. {| "one": 1, "two": 2 |}.
+ *
+ * A map associates keys of any type with values, and is held in a hash
+ * table so that a key's value may be found, set or removed in constant
+ * time on average. Keys are compared via equals() and hashCode(), and
+ * are kept in the order in which they were first added. A key's value
+ * may be selected and set like a list element, e.g. m["one"] and
+ * m["three"] = 3, and the value of a key not in the map is undefined.
+ */
+
+package cgp.runtime;
+
+import cgp.runtime.BooleanType;
+import cgp.runtime.ListType;
+import cgp.runtime.NumberType;
+import cgp.runtime.Type;
+import cgp.runtime.UndefinedType;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class MapType extends Type {
+    // Fields.
+    private LinkedHashMap entries; // Type -> Type
+
+    // Constructors.
+    public MapType() {
+	entries = new LinkedHashMap();
+	setType("map");
+    }
+
+    public MapType(Map values) {
+	entries = new LinkedHashMap(values);
+	setType("map");
+    }
+
+    // Public methods.
+
+    public int size() {
+	return entries.size();
+    }
+
+    public String toString() {
+	if (entries.isEmpty()) {
+	    return "{|:|}";
+	}
+	StringBuffer mapStr = new StringBuffer("{|");
+	Iterator it = entries.entrySet().iterator();
+	while (it.hasNext()) {
+	    Map.Entry entry = (Map.Entry)it.next();
+	    mapStr.append(entry.getKey());
+	    mapStr.append(": ");
+	    mapStr.append(entry.getValue());
+	    if (it.hasNext()) mapStr.append(", ");
+	}
+	mapStr.append("|}");
+	return mapStr.toString();
+    }
+
+    /**
+     * Two maps are equal if they have the same keys, each with an equal
+     * value, regardless of order.
+     */
+    public boolean equals(Object other) {
+	if (other instanceof MapType) {
+	    return entries.equals(((MapType)other).entries);
+	} else {
+	    return false;
+	}
+    }
+
+    public int hashCode() {
+	return entries.hashCode();
+    }
+
+    public Type eqOp(Type other) {
+	Type result = UndefinedType.undefined;
+	if (other instanceof MapType) {
+	    result = new BooleanType(this.equals(other));
+	} else {
+	    super.eqOp(other);
+	}
+	return result;
+    }
+
+    public Type neOp(Type other) {
+	Type result = UndefinedType.undefined;
+	if (other instanceof MapType) {
+	    result = new BooleanType(!this.equals(other));
+	} else {
+	    super.neOp(other);
+	}
+	return result;
+    }
+
+    /**
+     * Return the value of the specified key, or undefined if the key
+     * is not in this map.
+     */
+    public Type getNthOp(Type key) {
+	Type value = (Type)entries.get(key);
+	return value == null ? UndefinedType.undefined : value;
+    }
+
+    /**
+     * Set the value of the specified key, adding the key to this map
+     * if necessary.
+     */
+    public void setNthOp(Type key, Type value) {
+	entries.put(key, value);
+    }
+
+    // -----------------------------------------------------------
+
+    /**
+     * Getter and setter methods for attributes.
+     */
+    public NumberType getLength() {
+	return new NumberType(entries.size());
+    }
+
+    /**
+     * Return a list of this map's keys.
+     */
+    public ListType getKeys() {
+	return new ListType(entries.keySet());
+    }
+
+    /**
+     * Return a list of this map's values, in the order of its keys.
+     */
+    public ListType getValues() {
+	return new ListType(entries.values());
+    }
+
+    // -----------------------------------------------------------
+
+    /**
+     * pCG member functions.
+     */
+
+    /**
+     * Is key in this map?
+     */
+    public BooleanType hasKey(Type key) {
+	return new BooleanType(entries.containsKey(key));
+    }
+
+    /**
+     * Set the value of a key and return the mutated map.
+     */
+    public MapType put(Type key, Type value) {
+	entries.put(key, value);
+	return this;
+    }
+
+    /**
+     * Remove a key and its value from this map, if present, and
+     * return the mutated map.
+     */
+    public MapType remove(Type key) {
+	entries.remove(key);
+	return this;
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * A public method of a Type subclass through which a pCG member
+ * function is invoked or an attribute accessed (see DispatchTable).
+ *
+ * The method is invoked through a MethodHandle adapted to take the
+ * receiver and an array of arguments as Objects and return an Object,
+ * so that every method may be invoked exactly in the same way. The
+ * handle is made when the method is first invoked. The method's
+ * parameter types are kept to choose between overloaded methods.
+ */
+
+package cgp.runtime;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+public class MemberHandle {
+    // Static fields.
+    static private MethodType INVOKER_TYPE = 
+	MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    // Instance fields.
+    private Method method;
+    private Class[] parameterTypes;
+    private volatile MethodHandle handle; // null until first invoked
+
+    // Constructors.
+    public MemberHandle(Method method) {
+	this.method = method;
+	parameterTypes = method.getParameterTypes();
+    }
+
+    // Private methods.
+
+    private MethodHandle makeHandle() throws IllegalAccessException {
+	MethodHandle h = MethodHandles.publicLookup().unreflect(method);
+	return h.asSpreader(Object[].class, parameterTypes.length).
+	    asType(INVOKER_TYPE);
+    }
+
+    // Public methods.
+
+    public String getName() {
+	return method.getName();
+    }
+
+    public Class[] getParameterTypes() {
+	return parameterTypes;
+    }
+
+    /**
+     * Invoke the method on the specified receiver with the specified
+     * arguments, which must be of the method's parameter types (see
+     * DispatchTable.isApplicable()). Whatever the method throws is
+     * thrown as is, rather than wrapped as by Method.invoke().
+     */
+    public Object invoke(Object receiver, Object[] args) throws Throwable {
+	MethodHandle h = handle;
+	if (h == null) {
+	    h = makeHandle();
+	    handle = h;
+	}
+	return (Object)h.invokeExact(receiver, args);
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * A bounded cache of the results of an actor's activations, or of a
+ * memoized function's calls.
+ *
+ * An entry maps the values of an activation's source concept designators
+ * to those of its sink concept designators, or a call's arguments to its
+ * result. When full, the least recently
+ * used entry is evicted. Counts of lookups which did and did not find an
+ * entry are kept. Memoizing an actor is only valid if it is a function of
+ * its sources, i.e. if its sub-actors have no side effects.
+ *
+ * Lists, sets, maps, graphs and concepts may be changed in place, so such
+ * values are copied when stored and again each time they are returned.
+ * Otherwise a caller which changed a cached result, or an argument after
+ * the call, would change what every later lookup sees.
+ */
+
+package cgp.runtime;
+
+import cgp.runtime.ConceptType;
+import cgp.runtime.GraphType;
+import cgp.runtime.ListType;
+import cgp.runtime.MapType;
+import cgp.runtime.SetType;
+import cgp.runtime.Type;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class MemoCache {
+    // Static fields.
+    static public int DEFAULT_CAPACITY = 1024;
+
+    // Instance fields.
+    private LinkedHashMap entries; // Key -> Type[], in access order
+    private int hits;
+    private int misses;
+
+    // Constructors.
+    public MemoCache() {
+	this(DEFAULT_CAPACITY);
+    }
+
+    public MemoCache(final int capacity) {
+	entries = new LinkedHashMap(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+		    return size() > capacity;
+		}
+	    };
+	hits = 0;
+	misses = 0;
+    }
+
+    // Private methods.
+
+    /**
+     * Return a copy of the specified value which shares nothing that
+     * may be changed in place with the original, or the value itself
+     * if it is immutable.
+     */
+    private static Type copyOf(Type value) {
+	if (value instanceof ListType) {
+	    Type[] elements = ((ListType)value).toArray();
+	    return new ListType(copyOf(elements));
+	} else if (value instanceof SetType) {
+	    SetType set = new SetType();
+	    Iterator it = ((SetType)value).iterator();
+	    while (it.hasNext()) {
+		set.add(copyOf((Type)it.next()));
+	    }
+	    return set;
+	} else if (value instanceof MapType) {
+	    MapType map = new MapType();
+	    Iterator it = ((MapType)value).getKeys().iterator();
+	    while (it.hasNext()) {
+		Type key = (Type)it.next();
+		map.put(copyOf(key), copyOf(value.getNthOp(key)));
+	    }
+	    return map;
+	} else if (value instanceof GraphType) {
+	    return ((GraphType)value).copy();
+	} else if (value instanceof ConceptType) {
+	    return ((ConceptType)value).copy();
+	} else {
+	    return value;
+	}
+    }
+
+    private static Type[] copyOf(Type[] values) {
+	Type[] copies = new Type[values.length];
+	for (int i=0;i<values.length;i++) {
+	    copies[i] = copyOf(values[i]);
+	}
+	return copies;
+    }
+
+    // Public methods.
+
+    /**
+     * Return the sink values stored for the specified source values,
+     * or null if there are none.
+     */
+    public synchronized Type[] lookup(Type[] sources) {
+	Type[] sinks = (Type[])entries.get(new Key(sources));
+	if (sinks != null) {
+	    hits++;
+	    return copyOf(sinks);
+	} else {
+	    misses++;
+	    return null;
+	}
+    }
+
+    /**
+     * Store the sink values resulting from the specified source values.
+     */
+    public synchronized void store(Type[] sources, Type[] sinks) {
+	entries.put(new Key(copyOf(sources)), copyOf(sinks));
+    }
+
+    public synchronized int getHits() {
+	return hits;
+    }
+
+    public synchronized int getMisses() {
+	return misses;
+    }
+
+    public synchronized int size() {
+	return entries.size();
+    }
+
+    /**
+     * A tuple of source values.
+     */
+    private static class Key {
+	Type[] values;
+	int hash;
+
+	Key(Type[] values) {
+	    this.values = values;
+	    hash = values.length;
+	    for (int i=0;i<values.length;i++) {
+		hash = 31*hash + values[i].hashCode();
+	    }
+	}
+
+	public boolean equals(Object other) {
+	    if (!(other instanceof Key)) {
+		return false;
+	    }
+	    Type[] otherValues = ((Key)other).values;
+	    if (otherValues.length != values.length) {
+		return false;
+	    }
+	    for (int i=0;i<values.length;i++) {
+		if (!values[i].equals(otherValues[i])) {
+		    return false;
+		}
+	    }
+	    return true;
+	}
+
+	public int hashCode() {
+	    return hash;
+	}
+    }
+}
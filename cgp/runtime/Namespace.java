@@ -29,6 +29,7 @@ import java.util.Iterator;
 
 public class Namespace {
     private HashMap table;
+    private Namespace parent; // names not defined here are looked up here
 
     public Namespace() {
 	table = new HashMap();
@@ -38,21 +39,68 @@ public class Namespace {
 	table = map;
     }
 
+    /**
+     * Create a namespace whose definitions override those of the
+     * specified namespace, without changing it.
+     */
+    public Namespace(Namespace parent) {
+	table = new HashMap();
+	this.parent = parent;
+    }
+
     public void def(String name, Type value) {
 	table.put(name, value);
     }
 
+    /**
+     * Remove the names defined in this namespace, but not those of 
+     * any parent.
+     */
+    public void clear() {
+	table.clear();
+    }
+
     public Type get(String name) {
 	Type value = (Type)table.get(name);
-	if (value == null) value = UndefinedType.undefined;
+	if (value == null) {
+	    if (parent != null) {
+		value = parent.get(name);
+	    } else {
+		value = UndefinedType.undefined;
+	    }
+	}
 	return value;
     }
 
+    /**
+     * Return all mappings visible in this namespace, including
+     * those of any parent not overridden here.
+     */
+    private HashMap flatten() {
+	if (parent == null) {
+	    return table;
+	}
+	HashMap all = new HashMap();
+	HashMap inherited = parent.flatten();
+	Iterator it = inherited.keySet().iterator();
+	while (it.hasNext()) {
+	    Object name = it.next();
+	    all.put(name, inherited.get(name));
+	}
+	it = table.keySet().iterator();
+	while (it.hasNext()) {
+	    Object name = it.next();
+	    all.put(name, table.get(name));
+	}
+	return all;
+    }
+
     /**
      * Return the names in this namespace.
      */
     public String[] getNames() {
 	int i = 0;
+	HashMap table = flatten();
 	String[] names = new String[table.size()];
 
 	Iterator it = table.keySet().iterator();
@@ -70,6 +118,7 @@ public class Namespace {
      */
     public Namespace copy() {
 	HashMap newTable = new HashMap();
+	HashMap table = flatten();
 	Iterator it = table.keySet().iterator();
 	while (it.hasNext()) {
 	    String name = (String)it.next();
@@ -83,6 +132,7 @@ public class Namespace {
      */
     public StringType[] getMappings() {
 	int i = 0;
+	HashMap table = flatten();
 	StringType[] mappings = new StringType[table.size()];
 	Iterator it = table.keySet().iterator();
 	while (it.hasNext()) {
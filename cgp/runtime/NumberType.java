@@ -54,6 +54,14 @@ public class NumberType extends Type {
 	}
     }
 
+    public int hashCode() {
+	// 0.0 and -0.0 are equal according to equals(), so they
+	// must hash the same.
+	if (value == 0) return 0;
+	long bits = Double.doubleToLongBits(value);
+	return (int)(bits ^ (bits >>> 32));
+    }
+
     public Type gtOp(Type other) {
 	Type result = UndefinedType.undefined;
 	if (other instanceof NumberType) {
@@ -27,7 +27,10 @@ import antlr.collections.AST;
 
 import cgp.runtime.FormalParameter;
 import cgp.runtime.Rule;
+import cgp.runtime.RuleNetwork;
+import cgp.runtime.SlotLayout;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 
 public class ProcessType extends Type {
@@ -36,14 +39,22 @@ public class ProcessType extends Type {
     private FormalParameter[] formals;
     private AST initialBlock;
     private Rule[] rules;
+    private SlotLayout layout; // of the process's scope, if known
+    private volatile Object[] network; // { key, RuleNetwork } or null
 
     // Constructors.
     public ProcessType(String name, FormalParameter[] formals, 
 		       AST initialBlock, Rule[] rules) {
+	this(name, formals, initialBlock, rules, null);
+    }
+
+    public ProcessType(String name, FormalParameter[] formals, 
+		       AST initialBlock, Rule[] rules, SlotLayout layout) {
 	this.name = name;
 	this.formals = formals;
 	this.initialBlock = initialBlock;
 	this.rules = rules;
+	this.layout = layout;
 	setType("process");
     }
 
@@ -65,6 +76,32 @@ public class ProcessType extends Type {
 	return rules;
     }
 
+    public SlotLayout getLayout() {
+	return layout;
+    }
+
+    /**
+     * Return the network into which the process's rules were compiled
+     * (see RuleNetwork) for the specified key, or null if there is
+     * none. Key elements are compared by equals().
+     */
+    public RuleNetwork getRuleNetwork(Object[] key) {
+	Object[] entry = network;
+	if (entry == null || 
+	    !Arrays.equals(key, (Object[])entry[0])) {
+	    return null;
+	}
+	return (RuleNetwork)entry[1];
+    }
+
+    /**
+     * Cache the network into which the process's rules were compiled
+     * for the specified key, replacing any other.
+     */
+    public void setRuleNetwork(Object[] key, RuleNetwork compiled) {
+	network = new Object[] { key, compiled };
+    }
+
     public String toString() {
 	return getType() + " " + name + "; arity " + formals.length;
     }    
@@ -0,0 +1,491 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * A projection engine which finds every projection of a filter graph
+ * onto a target graph.
+ *
+ * A projection maps each concept of the filter to a concept of the
+ * target and each conceptual relation of the filter to a relation of
+ * the target, such that:
+ *
+ *  - a filter concept's type is the same as or a supertype of its
+ *    image's type;
+ *  - a filter concept with a designator (other than a *x or ?x
+ *    coreference variable) or a descriptor has an image with an
+ *    equivalent designator or descriptor;
+ *  - filter concepts with the same coreference variable have images
+ *    with the same designator value (or are the same concept);
+ *  - a filter relation's type is the same as or a supertype of its
+ *    image's type, the two have the same number of input and output
+ *    arcs, and the image of each of the filter relation's arguments is
+ *    the corresponding argument of the image relation.
+ *
+ * Unlike GraphType.project(), which pairs relations greedily, this is
+ * a backtracking search, so graphs with more than one compatible
+ * relation, e.g. [Person: X]->(Has)->[Friend: A] and
+ * [Person: X]->(Has)->[Friend: B], are handled properly. Actors in
+ * either graph take no part in matching, so a filter may still carry
+ * actors for later execution.
+ *
+ * The candidate images of each filter concept and relation are
+ * filtered by type and referent before the search starts, and the
+ * relations are then matched most selective first, preferring those
+ * connected to concepts already mapped, so that arcs and coreference
+ * variables are checked as early as possible.
+ *
+ * Each projection is returned as a copy of the filter restricted to
+ * the target, as GraphType.project() does, except that no coreference
+ * variable mappings are added to the knowledge base.
+ */
+
+package cgp.runtime;
+
+import cgp.runtime.ConceptType;
+import cgp.runtime.GraphType;
+import cgp.runtime.KBase;
+import cgp.runtime.Type;
+import cgp.runtime.TypeLattice;
+import cgp.runtime.UndefinedType;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import notio.Actor;
+import notio.Concept;
+import notio.Graph;
+import notio.Relation;
+
+public class Projector {
+    // Static fields.
+    private static final int GENERIC = 0; // no referent or a variable
+    private static final int DESIGNATED = 1;
+    private static final int DESCRIBED = 2;
+
+    // Instance fields.
+    private Graph filter;
+    private TypeLattice conceptLattice;
+    private TypeLattice relationLattice;
+
+    // The filter's concepts and their referent constraints.
+    private Concept[] concepts;
+    private HashMap conceptIndices; // Concept -> Integer
+    private int[] kinds;
+    private Type[] referents; // designator value or descriptor
+    private String[] variables; // coreference variable names or null
+
+    // The filter's non-actor relations and their arguments.
+    private int[] relationIndices; // into filter.getRelations()
+    private Relation[] relations;
+    private int[][] arguments; // concept indices
+    private int[] isolated; // concepts which are no relation's argument
+
+    // Search state for the current target.
+    private Concept[] targetConcepts;
+    private HashMap targetIndices; // Concept -> Integer
+    private Type[] targetDesignators; // or null
+    private Type[] targetDescriptors; // or null
+    private byte[][] conforms; // filter x target concept: 0=?, 1=yes, 2=no
+    private Relation[][] relationCandidates; // per step
+    private Concept[][] conceptCandidates; // per isolated concept
+    private int[] plan; // relation order
+    private int[] images; // filter concept -> target concept index or -1
+    private Relation[] relationImages;
+    private HashMap bindings; // variable -> binding
+    private List results;
+    private int limit;
+
+    // Constructors.
+
+    /**
+     * Prepare to project the specified filter graph, with types
+     * taken from the specified knowledge base's hierarchies.
+     */
+    public Projector(Graph filter, KBase kbase) {
+	this.filter = filter;
+	conceptLattice = kbase.getConceptLattice();
+	relationLattice = kbase.getRelationLattice();
+
+	concepts = filter.getConcepts();
+	conceptIndices = new HashMap();
+	kinds = new int[concepts.length];
+	referents = new Type[concepts.length];
+	variables = new String[concepts.length];
+	for (int i=0;i<concepts.length;i++) {
+	    conceptIndices.put(concepts[i], new Integer(i));
+	    ConceptType c = new ConceptType(concepts[i]);
+	    if (c.hasVarDesignator()) {
+		kinds[i] = GENERIC;
+		variables[i] = ((StringType)c.getDesignatorValue()).getValue();
+	    } else if (c.hasBoundDesignator()) {
+		kinds[i] = DESIGNATED;
+		referents[i] = c.getDesignatorValue();
+	    } else if (descriptorOf(c) != null) {
+		kinds[i] = DESCRIBED;
+		referents[i] = descriptorOf(c);
+	    } else {
+		kinds[i] = GENERIC;
+	    }
+	}
+
+	Relation[] all = filter.getRelations();
+	LinkedList nonActors = new LinkedList();
+	for (int i=0;i<all.length;i++) {
+	    if (!(all[i] instanceof Actor)) {
+		nonActors.add(new Integer(i));
+	    }
+	}
+	relationIndices = new int[nonActors.size()];
+	relations = new Relation[nonActors.size()];
+	arguments = new int[nonActors.size()][];
+	boolean[] isArgument = new boolean[concepts.length];
+	int numArguments = 0;
+	for (int i=0;i<relations.length;i++) {
+	    relationIndices[i] = ((Integer)nonActors.get(i)).intValue();
+	    relations[i] = all[relationIndices[i]];
+	    Concept[] args = relations[i].getArguments();
+	    arguments[i] = new int[args.length];
+	    for (int j=0;j<args.length;j++) {
+		int k = ((Integer)conceptIndices.get(args[j])).intValue();
+		arguments[i][j] = k;
+		if (!isArgument[k]) {
+		    isArgument[k] = true;
+		    numArguments++;
+		}
+	    }
+	}
+	isolated = new int[concepts.length - numArguments];
+	for (int i=0, j=0;i<concepts.length;i++) {
+	    if (!isArgument[i]) {
+		isolated[j++] = i;
+	    }
+	}
+    }
+
+    // Private methods.
+
+    /**
+     * Return the concept's non-blank descriptor, or null.
+     */
+    private static GraphType descriptorOf(ConceptType c) {
+	Type desc = c.getDescriptor();
+	if (desc instanceof GraphType &&
+	    !((GraphType)desc).getValue().isBlank()) {
+	    return (GraphType)desc;
+	}
+	return null;
+    }
+
+    /**
+     * Can the ith filter concept be mapped to the jth target concept,
+     * ignoring arcs and coreference variables?
+     */
+    private boolean conformsTo(int i, int j) {
+	if (conforms[i][j] == 0) {
+	    boolean ok = conceptLattice.subsumes(concepts[i].getType(),
+						 targetConcepts[j].getType());
+	    if (ok && kinds[i] == DESIGNATED) {
+		ok = targetDesignators[j] != null &&
+		     referents[i].equals(targetDesignators[j]);
+	    } else if (ok && kinds[i] == DESCRIBED) {
+		ok = targetDescriptors[j] != null &&
+		     referents[i].equals(targetDescriptors[j]);
+	    }
+	    conforms[i][j] = (byte)(ok ? 1 : 2);
+	}
+	return conforms[i][j] == 1;
+    }
+
+    private int targetIndexOf(Concept c) {
+	return ((Integer)targetIndices.get(c)).intValue();
+    }
+
+    /**
+     * Is the target relation a possible image of the filter relation,
+     * considering each argument on its own?
+     */
+    private boolean isCandidate(int r, Relation target) {
+	Relation source = relations[r];
+	if (target instanceof Actor ||
+	    !relationLattice.subsumes(source.getType(), target.getType()) ||
+	    source.getInputArguments().length !=
+	    target.getInputArguments().length ||
+	    source.getOutputArguments().length !=
+	    target.getOutputArguments().length) {
+	    return false;
+	}
+	Concept[] args = target.getArguments();
+	for (int j=0;j<args.length;j++) {
+	    if (!conformsTo(arguments[r][j], targetIndexOf(args[j]))) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Order the relations, most selective first but preferring those
+     * with an argument among the concepts mapped by earlier relations.
+     */
+    private void makePlan() {
+	plan = new int[relations.length];
+	boolean[] planned = new boolean[relations.length];
+	boolean[] reached = new boolean[concepts.length];
+	for (int n=0;n<plan.length;n++) {
+	    int best = -1;
+	    boolean bestConnected = false;
+	    for (int r=0;r<relations.length;r++) {
+		if (planned[r]) continue;
+		boolean connected = false;
+		for (int j=0;j<arguments[r].length;j++) {
+		    connected |= reached[arguments[r][j]];
+		}
+		if (best == -1 ||
+		    (connected && !bestConnected) ||
+		    (connected == bestConnected &&
+		     relationCandidates[r].length <
+		     relationCandidates[best].length)) {
+		    best = r;
+		    bestConnected = connected;
+		}
+	    }
+	    plan[n] = best;
+	    planned[best] = true;
+	    for (int j=0;j<arguments[best].length;j++) {
+		reached[arguments[best][j]] = true;
+	    }
+	}
+    }
+
+    /**
+     * The value a coreference variable is bound to when its concept
+     * is mapped to the specified target concept.
+     */
+    private Object bindingOf(int j) {
+	if (targetDesignators[j] != null) {
+	    return targetDesignators[j];
+	} else if (targetDescriptors[j] != null) {
+	    return targetDescriptors[j];
+	} else {
+	    return targetConcepts[j];
+	}
+    }
+
+    /**
+     * Map the ith filter concept to the jth target concept, if this is
+     * consistent with the mapping so far. Any new variable binding is
+     * pushed onto the trail. Returns false if inconsistent.
+     */
+    private boolean map(int i, int j, LinkedList trail) {
+	if (images[i] != -1) {
+	    return images[i] == j;
+	}
+	if (variables[i] != null) {
+	    Object binding = bindingOf(j);
+	    Object bound = bindings.get(variables[i]);
+	    if (bound == null) {
+		bindings.put(variables[i], binding);
+		trail.add(variables[i]);
+	    } else if (!bound.equals(binding)) {
+		return false;
+	    }
+	}
+	images[i] = j;
+	trail.add(new Integer(i));
+	return true;
+    }
+
+    private void undo(LinkedList trail) {
+	while (!trail.isEmpty()) {
+	    Object o = trail.removeLast();
+	    if (o instanceof Integer) {
+		images[((Integer)o).intValue()] = -1;
+	    } else {
+		bindings.remove(o);
+	    }
+	}
+    }
+
+    /**
+     * Extend the mapping from the specified step onwards: first the
+     * relations in plan order, then the isolated concepts. Returns
+     * false once the limit on the number of results is reached.
+     */
+    private boolean search(int step) {
+	if (step == relations.length + isolated.length) {
+	    results.add(new GraphType(restrictedCopy()));
+	    return results.size() < limit;
+	}
+
+	LinkedList trail = new LinkedList();
+	if (step < relations.length) {
+	    int r = plan[step];
+	    Relation[] candidates = relationCandidates[r];
+	    for (int k=0;k<candidates.length;k++) {
+		Concept[] args = candidates[k].getArguments();
+		boolean consistent = true;
+		for (int j=0;j<args.length && consistent;j++) {
+		    consistent = map(arguments[r][j], targetIndexOf(args[j]),
+				     trail);
+		}
+		if (consistent) {
+		    relationImages[r] = candidates[k];
+		    if (!search(step+1)) {
+			return false;
+		    }
+		}
+		undo(trail);
+	    }
+	} else {
+	    int n = step - relations.length;
+	    Concept[] candidates = conceptCandidates[n];
+	    for (int k=0;k<candidates.length;k++) {
+		if (map(isolated[n], targetIndexOf(candidates[k]), trail)) {
+		    if (!search(step+1)) {
+			return false;
+		    }
+		}
+		undo(trail);
+	    }
+	}
+
+	return true;
+    }
+
+    /**
+     * Copy the filter and restrict it according to the current mapping.
+     * Types are restricted to those of the images, and generic concepts
+     * take their image's designator or descriptor.
+     */
+    private Graph restrictedCopy() {
+	Graph projection = filter.copy(GraphType.COPYING_SCHEME);
+
+	Relation[] projectionRelations = projection.getRelations();
+	for (int r=0;r<relations.length;r++) {
+	    Relation match = projectionRelations[relationIndices[r]];
+	    if (relationLattice.properlySubsumes(match.getType(),
+						 relationImages[r].getType())) {
+		match.setType(relationImages[r].getType());
+	    }
+	}
+
+	Concept[] projectionConcepts = projection.getConcepts();
+	for (int i=0;i<projectionConcepts.length;i++) {
+	    Concept match = projectionConcepts[i];
+	    int j = images[i];
+	    if (conceptLattice.properlySubsumes(match.getType(),
+						targetConcepts[j].getType())) {
+		match.setType(targetConcepts[j].getType());
+	    }
+	    if (kinds[i] == GENERIC) {
+		ConceptType c = new ConceptType(match);
+		if (targetDesignators[j] != null) {
+		    c.setDesignatorValue(targetDesignators[j]);
+		} else if (targetDescriptors[j] != null) {
+		    c.setDescriptor((GraphType)targetDescriptors[j]);
+		}
+	    }
+	}
+
+	return projection;
+    }
+
+    // Public methods.
+
+    /**
+     * Add to the list each projection of the filter onto the
+     * specified target graph, up to the specified number of
+     * projections. Returns the number of projections added.
+     */
+    public int projectAll(Graph target, int limit, List results) {
+	int before = results.size();
+	if (limit <= 0) {
+	    return 0;
+	}
+
+	targetConcepts = target.getConcepts();
+	targetIndices = new HashMap();
+	targetDesignators = new Type[targetConcepts.length];
+	targetDescriptors = new Type[targetConcepts.length];
+	for (int j=0;j<targetConcepts.length;j++) {
+	    targetIndices.put(targetConcepts[j], new Integer(j));
+	    ConceptType c = new ConceptType(targetConcepts[j]);
+	    if (c.hasBoundDesignator()) {
+		targetDesignators[j] = c.getDesignatorValue();
+	    } else {
+		targetDescriptors[j] = descriptorOf(c);
+	    }
+	}
+	conforms = new byte[concepts.length][targetConcepts.length];
+
+	// Filter the candidate images of each relation and isolated
+	// concept, giving up if any has none.
+	Relation[] targetRelations = target.getRelations();
+	relationCandidates = new Relation[relations.length][];
+	for (int r=0;r<relations.length;r++) {
+	    LinkedList candidates = new LinkedList();
+	    for (int k=0;k<targetRelations.length;k++) {
+		if (isCandidate(r, targetRelations[k])) {
+		    candidates.add(targetRelations[k]);
+		}
+	    }
+	    if (candidates.isEmpty()) {
+		return 0;
+	    }
+	    relationCandidates[r] = (Relation[])
+		candidates.toArray(new Relation[candidates.size()]);
+	}
+	conceptCandidates = new Concept[isolated.length][];
+	for (int n=0;n<isolated.length;n++) {
+	    LinkedList candidates = new LinkedList();
+	    for (int j=0;j<targetConcepts.length;j++) {
+		if (conformsTo(isolated[n], j)) {
+		    candidates.add(targetConcepts[j]);
+		}
+	    }
+	    if (candidates.isEmpty()) {
+		return 0;
+	    }
+	    conceptCandidates[n] = (Concept[])
+		candidates.toArray(new Concept[candidates.size()]);
+	}
+
+	makePlan();
+	images = new int[concepts.length];
+	for (int i=0;i<images.length;i++) {
+	    images[i] = -1;
+	}
+	relationImages = new Relation[relations.length];
+	bindings = new HashMap();
+	this.results = results;
+	this.limit = before + limit;
+
+	search(0);
+
+	this.results = null;
+	return results.size() - before;
+    }
+
+    /**
+     * Return the filter's non-actor relations, all of which must be
+     * matched by a projection.
+     */
+    public Relation[] getRelations() {
+	return relations;
+    }
+}
@@ -27,4 +27,24 @@ package cgp.runtime;
 import java.lang.RuntimeException;
 
 public class ReturnException extends RuntimeException {
+    // Static fields.
+
+    // Since the exception carries no information, a single instance
+    // is thrown whenever a return statement is executed.
+    static public final ReturnException signal = new ReturnException();
+
+    // Constructors.
+    private ReturnException() {
+    }
+
+    // Public methods.
+
+    /**
+     * The stack trace is never used, and capturing it on each throw is
+     * costly when the interpreter's own call stack is deep, as it is in
+     * recursive pCG functions.
+     */
+    public Throwable fillInStackTrace() {
+	return this;
+    }
 }
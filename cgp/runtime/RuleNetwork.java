@@ -0,0 +1,387 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * An incremental matching network for the preconditions of a process's
+ * rules, after the fashion of Forgy's Rete algorithm.
+ *
+ * Rules whose precondition graphs are all known in advance (i.e. are
+ * graph literals without actors) may be compiled into the network. Each
+ * distinct precondition graph becomes a pattern node which records the
+ * graphs of the process's KB it matches, in KB order, as graphs are
+ * asserted and retracted. The network listens to the KB for this, so
+ * each change costs one match attempt per pattern, rather than every
+ * rule's preconditions being tested against every graph in the KB on
+ * every cycle of the process. The set of compiled rules whose
+ * preconditions are currently satisfied is kept up to date as pattern
+ * nodes change.
+ *
+ * A network is compiled once for a process (see ProcessType) and a
+ * network for each call of the process is then created from it, sharing
+ * the compiled rules but with pattern nodes of its own, which are first
+ * matched against the graphs already in the call's KB by start().
+ *
+ * A pattern matches the KB as the interpreter's matchFound() would have
+ * it: if a structurally equivalent graph is present, or if the first
+ * graph in KB order onto which the pattern projects gives a projection
+ * with no unbound coreference variables. A rule is satisfied when each
+ * of its preconditions matches, or for a negated precondition, does not.
+ *
+ * The interpreter need not test a rule which is not satisfied, and this
+ * must not change the outcome. The network projects copies of its
+ * patterns without binding their coreference variables, so its matching
+ * has no side effects. Testing a rule collects matches and binds the
+ * variables of each precondition graph which projects onto the KB (see
+ * KBase.projectionMatch()), up to the first precondition to fail, and
+ * skip() does the same for a rule which is not tested.
+ */
+
+package cgp.runtime;
+
+import cgp.runtime.ConceptType;
+import cgp.runtime.GraphStore;
+import cgp.runtime.GraphType;
+import cgp.runtime.KBase;
+import cgp.runtime.KBaseListener;
+import cgp.runtime.ListType;
+import cgp.runtime.TypeLattice;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+
+import notio.Concept;
+import notio.Graph;
+
+public class RuleNetwork implements KBaseListener {
+    // Instance fields.
+    private HashMap patternIndices; // GraphType -> Integer
+    private ArrayList patternGraphs; // index -> GraphType
+    private ArrayList patternRules; // index -> LinkedList of rule indices
+    private int[][] rulePatterns; // per rule, or null if not compiled
+    private boolean[][] ruleNegations;
+    private KBase kbase; // null until created for a call
+    private Pattern[] nodes; // index -> Pattern
+    private BitSet satisfied; // compiled rules currently satisfied
+    private boolean started;
+
+    // Constructors.
+
+    /**
+     * Create a network into which the rules of a process with the 
+     * specified number of rules may be compiled.
+     */
+    public RuleNetwork(int numRules) {
+	patternIndices = new HashMap();
+	patternGraphs = new ArrayList();
+	patternRules = new ArrayList();
+	rulePatterns = new int[numRules][];
+	ruleNegations = new boolean[numRules][];
+    }
+
+    /**
+     * Create a network for a call of a process, with the rules compiled
+     * into the specified network, to be matched against the specified
+     * KB. The compiled network is not changed, and may be shared by 
+     * calls under way at once.
+     */
+    public RuleNetwork(RuleNetwork compiled, KBase kbase) {
+	patternIndices = compiled.patternIndices;
+	patternGraphs = compiled.patternGraphs;
+	patternRules = compiled.patternRules;
+	rulePatterns = compiled.rulePatterns;
+	ruleNegations = compiled.ruleNegations;
+	this.kbase = kbase;
+	nodes = new Pattern[patternGraphs.size()];
+	for (int i=0;i<nodes.length;i++) {
+	    nodes[i] = new Pattern((GraphType)patternGraphs.get(i), i);
+	}
+	satisfied = new BitSet(rulePatterns.length);
+	started = false;
+    }
+
+    // Private methods.
+
+    private void updateRule(int rule) {
+	int[] indices = rulePatterns[rule];
+	boolean allMatch = true;
+	for (int j=0;j<indices.length && allMatch;j++) {
+	    allMatch = nodes[indices[j]].isMatched() != ruleNegations[rule][j];
+	}
+	if (allMatch) {
+	    satisfied.set(rule);
+	} else {
+	    satisfied.clear(rule);
+	}
+    }
+
+    private void updateRules(Pattern node) {
+	Iterator it = ((LinkedList)patternRules.get(node.index)).iterator();
+	while (it.hasNext()) {
+	    updateRule(((Integer)it.next()).intValue());
+	}
+    }
+
+    // Public methods.
+
+    /**
+     * Compile the ith rule, given its precondition graphs and
+     * their negation status. Must be called before networks are
+     * created from this one for calls of the process.
+     */
+    public void compileRule(int rule, GraphType[] preconditions,
+			    boolean[] negations) {
+	int[] indices = new int[preconditions.length];
+	for (int j=0;j<preconditions.length;j++) {
+	    // Identical preconditions share a node.
+	    Integer index = (Integer)patternIndices.get(preconditions[j]);
+	    if (index == null) {
+		index = new Integer(patternGraphs.size());
+		patternIndices.put(preconditions[j], index);
+		patternGraphs.add(preconditions[j]);
+		patternRules.add(new LinkedList());
+	    }
+	    ((LinkedList)patternRules.get(index.intValue())).
+		add(new Integer(rule));
+	    indices[j] = index.intValue();
+	}
+	rulePatterns[rule] = indices;
+	ruleNegations[rule] = negations;
+    }
+
+    /**
+     * Match the patterns against the graphs already in the KB
+     * and start listening for changes to it.
+     */
+    public void start() {
+	GraphStore store = kbase.getGraphStore();
+	for (int i=0;i<nodes.length;i++) {
+	    nodes[i].prime(store, kbase.getRelationLattice());
+	}
+
+	for (int i=0;i<rulePatterns.length;i++) {
+	    if (rulePatterns[i] != null) {
+		updateRule(i);
+	    }
+	}
+
+	kbase.addListener(this);
+	started = true;
+    }
+
+    /**
+     * Stop listening for changes to the KB.
+     */
+    public void stop() {
+	if (started) {
+	    kbase.removeListener(this);
+	    started = false;
+	}
+    }
+
+    /**
+     * Was the ith rule compiled into the network?
+     */
+    public boolean isCompiled(int rule) {
+	return rulePatterns[rule] != null;
+    }
+
+    /**
+     * Are the preconditions of the compiled ith rule satisfied by
+     * the KB's current content?
+     */
+    public boolean isSatisfied(int rule) {
+	return satisfied.get(rule);
+    }
+
+    /**
+     * Do what testing the compiled ith rule, which is not satisfied,
+     * would have done: append to the specified list the graph matched
+     * by each of the rule's preconditions in turn, up to and including
+     * the first to fail, binding their coreference variables as
+     * matching them would have.
+     */
+    public void skip(int rule, ListType matches) {
+	int[] indices = rulePatterns[rule];
+	for (int j=0;j<indices.length;j++) {
+	    Pattern node = nodes[indices[j]];
+	    node.bindVars();
+	    GraphType match = node.match();
+	    if (match != null) {
+		matches.append(match);
+	    }
+	    if (node.isMatched() == ruleNegations[rule][j]) {
+		break;
+	    }
+	}
+    }
+
+    public void graphAsserted(GraphType g) {
+	for (int i=0;i<nodes.length;i++) {
+	    if (nodes[i].add(g)) {
+		updateRules(nodes[i]);
+	    }
+	}
+    }
+
+    public void graphRetracted(GraphType g) {
+	for (int i=0;i<nodes.length;i++) {
+	    if (nodes[i].remove(g)) {
+		updateRules(nodes[i]);
+	    }
+	}
+    }
+
+    /**
+     * A precondition graph and the KB graphs it matches.
+     */
+    private static class Pattern {
+	GraphType graph;
+	int index;
+	int exactMatches; // 0 or 1 since the KB holds no equivalent graphs
+	LinkedHashMap projections; // graph -> projection, null if unbound
+	boolean matched;
+
+	Pattern(GraphType graph, int index) {
+	    this.graph = graph;
+	    this.index = index;
+	    exactMatches = 0;
+	    projections = new LinkedHashMap();
+	    matched = false;
+	}
+
+	boolean isMatched() {
+	    return matched;
+	}
+
+	/**
+	 * Return the graph matchFound() would collect for this pattern:
+	 * a copy of the pattern if an equivalent graph is present, else
+	 * the projection onto the first graph, or null if neither.
+	 */
+	GraphType match() {
+	    if (!matched) {
+		return null;
+	    } else if (exactMatches > 0) {
+		return graph.copy();
+	    } else {
+		Iterator it = projections.values().iterator();
+		return new GraphType((Graph)it.next());
+	    }
+	}
+
+	/**
+	 * Bind the coreference variables of the pattern as matching it
+	 * would, i.e. by projecting it onto the first graph onto which
+	 * it projects, unless an equivalent graph is present.
+	 */
+	void bindVars() {
+	    if (exactMatches == 0 && !projections.isEmpty()) {
+		Iterator it = projections.keySet().iterator();
+		((GraphType)it.next()).project(graph.getValue(), true);
+	    }
+	}
+
+	/**
+	 * Recompute whether the pattern matches, returning true if
+	 * that has changed.
+	 */
+	private boolean update() {
+	    boolean wasMatched = matched;
+	    if (exactMatches > 0) {
+		matched = true;
+	    } else if (projections.isEmpty()) {
+		matched = false;
+	    } else {
+		// Only the first projection in KB order counts.
+		Iterator it = projections.values().iterator();
+		matched = it.next() != null;
+	    }
+	    return matched != wasMatched;
+	}
+
+	/**
+	 * Try to project the pattern onto a graph of the KB, recording
+	 * the projection, or null if its variables are not all bound.
+	 * Returns false if there is no projection.
+	 */
+	private boolean project(GraphType g) {
+	    Graph p = g.project(graph.getValue(), false);
+	    if (p == null) {
+		return false;
+	    }
+	    boolean allBound = true;
+	    Concept[] concepts = p.getConcepts();
+	    for (int i=0;i<concepts.length && allBound;i++) {
+		allBound = !new ConceptType(concepts[i]).hasVarDesignator();
+	    }
+	    projections.put(g, allBound ? p : null);
+	    return true;
+	}
+
+	/**
+	 * Match the pattern against the graphs already in the KB. Only
+	 * those which the store's relation index says could accept a
+	 * projection need be tried.
+	 */
+	void prime(GraphStore store, TypeLattice relationLattice) {
+	    if (store.contains(graph)) {
+		exactMatches++;
+	    }
+	    Iterator it = store.projectionCandidates(graph.getValue(), 
+						     relationLattice).
+		iterator();
+	    while (it.hasNext()) {
+		GraphType g = (GraphType)it.next();
+		if (!graph.equals(g)) {
+		    project(g);
+		}
+	    }
+	    update();
+	}
+
+	/**
+	 * Match the pattern against a graph newly in the KB, which
+	 * comes after all others in KB order.
+	 */
+	boolean add(GraphType g) {
+	    if (graph.equals(g)) {
+		exactMatches++;
+	    } else if (!project(g)) {
+		return false;
+	    }
+	    return update();
+	}
+
+	/**
+	 * Forget a graph no longer in the KB.
+	 */
+	boolean remove(GraphType g) {
+	    if (graph.equals(g)) {
+		exactMatches--;
+	    } else if (projections.containsKey(g)) {
+		projections.remove(g);
+	    } else {
+		return false;
+	    }
+	    return update();
+	}
+    }
+}
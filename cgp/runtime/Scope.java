@@ -24,15 +24,33 @@
 package cgp.runtime;
 
 import cgp.runtime.Namespace;
+import cgp.runtime.SlotLayout;
 import cgp.runtime.Type;
 import cgp.runtime.UndefinedType;
 
+import java.util.LinkedList;
+
 public class Scope extends Namespace {
     private Type retVal;
+    private SlotLayout layout; // null if names are only hashed
+    private Type[] slots; // null entries are undefined
 
     public Scope() {
 	super();
 	retVal = UndefinedType.undefined;
+	layout = null;
+	slots = null;
+    }
+
+    /**
+     * Create a scope in which names with a slot in the specified
+     * layout are held in an array rather than hashed.
+     */
+    public Scope(SlotLayout layout) {
+	super();
+	retVal = UndefinedType.undefined;
+	this.layout = layout;
+	slots = new Type[layout.size()];
     }
 
     public void setReturnValue(Type x) {
@@ -42,4 +60,71 @@ public class Scope extends Namespace {
     public Type getReturnValue() {
 	return retVal;
     }
+
+    public SlotLayout getLayout() {
+	return layout;
+    }
+
+    /**
+     * Return the value in the ith slot, or null if undefined.
+     */
+    public Type getSlot(int i) {
+	return slots[i];
+    }
+
+    public void setSlot(int i, Type x) {
+	slots[i] = x;
+    }
+
+    public void def(String name, Type value) {
+	int i = layout == null ? -1 : layout.indexOf(name);
+	if (i >= 0) {
+	    slots[i] = value;
+	} else {
+	    super.def(name, value);
+	}
+    }
+
+    /**
+     * Remove all names and the return value, leaving this scope as if
+     * newly created.
+     */
+    public void clear() {
+	super.clear();
+	retVal = UndefinedType.undefined;
+	if (slots != null) {
+	    for (int i=0;i<slots.length;i++) {
+		slots[i] = null;
+	    }
+	}
+    }
+
+    public Type get(String name) {
+	int i = layout == null ? -1 : layout.indexOf(name);
+	if (i >= 0) {
+	    return slots[i] == null ? UndefinedType.undefined : slots[i];
+	} else {
+	    return super.get(name);
+	}
+    }
+
+    /**
+     * Return the names in this scope, including those in slots.
+     */
+    public String[] getNames() {
+	String[] hashed = super.getNames();
+	if (layout == null) {
+	    return hashed;
+	}
+	LinkedList names = new LinkedList();
+	for (int i=0;i<hashed.length;i++) {
+	    names.add(hashed[i]);
+	}
+	for (int i=0;i<slots.length;i++) {
+	    if (slots[i] != null) {
+		names.add(layout.getName(i));
+	    }
+	}
+	return (String[])names.toArray(new String[0]);
+    }
 }
@@ -25,31 +25,64 @@
 package cgp.runtime;
 
 import cgp.runtime.Scope;
+import cgp.runtime.SlotLayout;
 import cgp.runtime.Type;
-import java.util.LinkedList;
 
 public class ScopeStack {
-    private LinkedList stack;
+    private Scope[] stack;
+    private int depth;
+
+    // The number of scopes above the outermost one which have no slot
+    // layout, e.g. closure environments. Such a scope may hold any name,
+    // including those otherwise only defined in the outermost scope.
+    private int unlaidScopes;
 
     public ScopeStack() {
-	stack = new LinkedList();
+	stack = new Scope[16];
+	depth = 0;
+	unlaidScopes = 0;
     }
 
     public int depth() {
-	return stack.size();
+	return depth;
     }
 
     public Scope push(Scope s) {
-	stack.addLast(s);
+	if (depth == stack.length) {
+	    Scope[] larger = new Scope[2*depth];
+	    System.arraycopy(stack, 0, larger, 0, depth);
+	    stack = larger;
+	}
+	if (depth > 0 && s.getLayout() == null) {
+	    unlaidScopes++;
+	}
+	stack[depth++] = s;
 	return s;
     }
 
     public Scope pop() {
-	return (Scope)stack.removeLast();
+	Scope s = stack[--depth];
+	stack[depth] = null;
+	if (depth > 0 && s.getLayout() == null) {
+	    unlaidScopes--;
+	}
+	return s;
     }
 
     public Scope peek() {
-	return (Scope)stack.getLast();
+	return stack[depth-1];
+    }
+
+    /**
+     * Return a new stack holding the same scopes as this one, to
+     * which further scopes may be pushed independently of this one.
+     */
+    public ScopeStack fork() {
+	ScopeStack s = new ScopeStack();
+	for (int i=0;i<depth;i++) {
+	    s.push(stack[i]);
+	}
+	return s;
     }
 
     /**
@@ -58,7 +91,7 @@ public class ScopeStack {
      * Precondition: i is >= 0 or < stack depth.
      */
     public Scope getFrame(int i) {
-	return (Scope)stack.get(i);
+	return stack[i];
     }
 
     /**
@@ -66,10 +99,40 @@ public class ScopeStack {
      */
     public Type find(String name) {
 	Type value = UndefinedType.undefined;
-	for (int i=stack.size()-1;i>=0;i--) {
-	    value = ((Scope)stack.get(i)).get(name);
+	for (int i=depth-1;i>=0;i--) {
+	    value = stack[i].get(name);
 	    if (!(value instanceof UndefinedType)) break;
 	}
 	return value;
     }
+
+    /**
+     * Find a name known to have the specified slot in the specified
+     * layout. If the innermost scope has that layout and the slot is
+     * defined, that is the name's value, otherwise this is as for 
+     * find().
+     */
+    public Type findLocal(String name, SlotLayout layout, int slot) {
+	Scope top = stack[depth-1];
+	if (top.getLayout() == layout) {
+	    Type value = top.getSlot(slot);
+	    if (value != null && !(value instanceof UndefinedType)) {
+		return value;
+	    }
+	}
+	return find(name);
+    }
+
+    /**
+     * Find a name known to be defined in no scope with a slot layout
+     * other than the outermost one. Unless there are scopes without
+     * a layout above the outermost, that is the only scope in which
+     * the name may be found, otherwise this is as for find().
+     */
+    public Type findGlobal(String name) {
+	if (unlaidScopes == 0) {
+	    return stack[0].get(name);
+	}
+	return find(name);
+    }
 }
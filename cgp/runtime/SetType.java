@@ -0,0 +1,187 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Set type class for pCG expressions, e.g. {| 1, "two", `[Cat]` |}.
+ *
+ * The members are held in a hash table, so that adding, removing and
+ * testing for a member take constant time on average, rather than time
+ * proportional to the number of members as for a list. Members are
+ * compared via equals() and hashCode(), and are kept in the order in
+ * which they were first added.
+ */
+
+package cgp.runtime;
+
+import cgp.runtime.BooleanType;
+import cgp.runtime.ListType;
+import cgp.runtime.NumberType;
+import cgp.runtime.Type;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+public class SetType extends Type {
+    // Fields.
+    private LinkedHashSet members;
+
+    // Constructors.
+    public SetType() {
+	members = new LinkedHashSet();
+	setType("set");
+    }
+
+    public SetType(Collection values) {
+	members = new LinkedHashSet(values);
+	setType("set");
+    }
+
+    // Public methods.
+
+    public int size() {
+	return members.size();
+    }
+
+    public Iterator iterator() {
+	return members.iterator();
+    }
+
+    public String toString() {
+	if (members.isEmpty()) {
+	    return "{||}";
+	}
+	StringBuffer setStr = new StringBuffer("{|");
+	Iterator it = members.iterator();
+	while (it.hasNext()) {
+	    setStr.append(it.next());
+	    if (it.hasNext()) setStr.append(", ");
+	}
+	setStr.append("|}");
+	return setStr.toString();
+    }
+
+    /**
+     * Two sets are equal if they have the same members, regardless
+     * of order.
+     */
+    public boolean equals(Object other) {
+	if (other instanceof SetType) {
+	    return members.equals(((SetType)other).members);
+	} else {
+	    return false;
+	}
+    }
+
+    public int hashCode() {
+	return members.hashCode();
+    }
+
+    public Type eqOp(Type other) {
+	Type result = UndefinedType.undefined;
+	if (other instanceof SetType) {
+	    result = new BooleanType(this.equals(other));
+	} else {
+	    super.eqOp(other);
+	}
+	return result;
+    }
+
+    public Type neOp(Type other) {
+	Type result = UndefinedType.undefined;
+	if (other instanceof SetType) {
+	    result = new BooleanType(!this.equals(other));
+	} else {
+	    super.neOp(other);
+	}
+	return result;
+    }
+
+    // -----------------------------------------------------------
+
+    /**
+     * Getter and setter methods for attributes.
+     */
+    public NumberType getLength() {
+	return new NumberType(members.size());
+    }
+
+    /**
+     * Return a list of this set's members.
+     */
+    public ListType getMembers() {
+	return new ListType(members);
+    }
+
+    // -----------------------------------------------------------
+
+    /**
+     * pCG member functions.
+     */
+
+    /**
+     * Is x a member of this set?
+     */
+    public BooleanType hasMember(Type x) {
+	return new BooleanType(members.contains(x));
+    }
+
+    /**
+     * Add a value to this set and return the mutated set.
+     */
+    public SetType add(Type x) {
+	members.add(x);
+	return this;
+    }
+
+    /**
+     * Remove a value from this set, if present, and return the
+     * mutated set.
+     */
+    public SetType remove(Type x) {
+	members.remove(x);
+	return this;
+    }
+
+    /**
+     * Return a new set of the members of this set and another.
+     */
+    public SetType union(SetType other) {
+	SetType result = new SetType(members);
+	result.members.addAll(other.members);
+	return result;
+    }
+
+    /**
+     * Return a new set of the members of this set which are also
+     * members of another.
+     */
+    public SetType intersection(SetType other) {
+	SetType result = new SetType(members);
+	result.members.retainAll(other.members);
+	return result;
+    }
+
+    /**
+     * Return a new set of the members of this set which are not
+     * members of another.
+     */
+    public SetType difference(SetType other) {
+	SetType result = new SetType(members);
+	result.members.removeAll(other.members);
+	return result;
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * The layout of the slots in a scope, i.e. the names which a function or
+ * process body may define locally, each of which is given a fixed index
+ * into the scope's array of slots. References to these names in the body
+ * can then be resolved to a slot index before the program is run.
+ */
+
+package cgp.runtime;
+
+import java.util.HashMap;
+
+public class SlotLayout {
+    // Instance fields.
+    private String[] names;
+    private HashMap indices; // String -> Integer
+
+    // Constructors.
+    public SlotLayout(String[] names) {
+	this.names = names;
+	indices = new HashMap();
+	for (int i=0;i<names.length;i++) {
+	    indices.put(names[i], new Integer(i));
+	}
+    }
+
+    // Public methods.
+
+    /**
+     * Return the index of the slot for the specified name, or -1 if
+     * the name has no slot.
+     */
+    public int indexOf(String name) {
+	Integer i = (Integer)indices.get(name);
+	return i == null ? -1 : i.intValue();
+    }
+
+    public String getName(int i) {
+	return names[i];
+    }
+
+    public int size() {
+	return names.length;
+    }
+}
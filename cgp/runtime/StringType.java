@@ -57,6 +57,10 @@ public class StringType extends Type {
 	}
     }
 
+    public int hashCode() {
+	return value.hashCode();
+    }
+
     public Type gtOp(Type other) {
 	Type result = UndefinedType.undefined;
 	if (other instanceof StringType) {
@@ -0,0 +1,44 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * An exception which is thrown to indicate that a function has returned
+ * the result of calling itself, e.g. return fact(n-1, n*acc), and that
+ * the actual parameters of that call have been bound to the formals in
+ * the function's existing scope. The function's body is then executed
+ * again in the same scope, rather than by a nested call, so the depth of
+ * such recursion is not limited by the Java stack.
+ */
+
+package cgp.runtime;
+
+import java.lang.RuntimeException;
+
+public class TailCallException extends RuntimeException {
+    // Static fields.
+    static public final TailCallException signal = new TailCallException();
+
+    // Constructors.
+    private TailCallException() {
+    }
+
+    // Public methods.
+
+    public Throwable fillInStackTrace() {
+	return this;
+    }
+}
@@ -33,10 +33,11 @@
 package cgp.runtime;
 
 import cgp.runtime.StringType;
-import java.lang.reflect.Method;
-import java.lang.reflect.InvocationTargetException;
 
 abstract public class Type {
+    // Static fields.
+    static private Object[] NO_ARGS = new Object[0]; // passed to getters
+
     // Instance fields.
     private String type = ""; // subclasses must set this
 
@@ -54,6 +55,12 @@ abstract public class Type {
 	throw new IllegalArgumentException(msg);
     }
 
+    // Private methods.
+    private void memberFuncError(String methodName, String reason) {
+	operationError("member function \"" + methodName + "\" (reason: " +
+		       reason + ")");
+    }
+
     // Public methods.
     // Note: Those methods ending in "Op" are pCG operators.
 
@@ -233,41 +240,29 @@ abstract public class Type {
      * Attribute access operator (e.g. t = x.type).
      */
     public Type getAttr(String name) {
+	return getAttr(name, DispatchTable.forClass(getClass()).getGetter(name));
+    }
+
+    /**
+     * Attribute access via the specified getter, found for this object's 
+     * class (see DispatchTable), or null if there is none. Assume a Type 
+     * or Type subclass return type since all values in pCG are of type 
+     * Type.
+     */
+    public Type getAttr(String name, MemberHandle getter) {
 	Type result = UndefinedType.undefined;
-	boolean found = false;
-	String errMsg = "attribute [" + name + "] access";
-
-	// Convert attribute name to method name.
-	StringBuffer nameBuf = new StringBuffer(name);
-	nameBuf.setCharAt(0, Character.toUpperCase(nameBuf.charAt(0)));
-	String methodName = "get" + nameBuf.toString();
-
-	// Search for method. Assume no parameters and Type or Type subclass 
-	// return type since all values in pCG are of type Type.
-	Class theClass = this.getClass();
-	Method[] methods = theClass.getMethods();
-	for (int i=0;i<methods.length;i++) {
-	    if (methodName.equals(methods[i].getName())) {
-		try {
-		    // Invoke the method, generating a generic error
-		    // since we know a priori that attribute setting
-		    // is a simple operation over which we have control.
-		    result = (Type)methods[i].invoke(this, null);
-		    found = true;
-		    break;
-		} catch(IllegalArgumentException e) {
-		    operationError(errMsg);
-		} catch(IllegalAccessException e) {
-		    operationError(errMsg);
-		} catch(InvocationTargetException e) {
-		    operationError(errMsg + " (" + 
-				   e.getTargetException() + ")");
-		}
-	    }
+
+	if (getter == null) {
+	    operationError("attribute [" + name + "] access");
 	}
 
-	if (!found) {
-	    operationError(errMsg);
+	try {
+	    // Invoke the method, generating a generic error
+	    // since we know a priori that attribute access
+	    // is a simple operation over which we have control.
+	    result = (Type)getter.invoke(this, NO_ARGS);
+	} catch(Throwable e) {
+	    operationError("attribute [" + name + "] access (" + e + ")");
 	}
 
 	return result;
@@ -277,42 +272,29 @@ abstract public class Type {
      * Attribute assignment operator (e.g. t.referent = "foo").
      */
     public void setAttr(String name, Type x) {
-	boolean found = false;
-	String errMsg = "attribute [" + name + "] access";
-
-	// Convert attribute name to method name.
-	StringBuffer nameBuf = new StringBuffer(name);
-	nameBuf.setCharAt(0, Character.toUpperCase(nameBuf.charAt(0)));
-	String methodName = "set" + nameBuf.toString();
-
-	// Search for method. Assume void return type and single parameter 
-	// of type Type since all values in pCG are of type Type.
-	Class theClass = this.getClass();
-	Method[] methods = theClass.getMethods();
-	for (int i=0;i<methods.length;i++) {
-	    if (methodName.equals(methods[i].getName())) {
-		try {
-		    // Invoke the method, generating a generic error
-		    // since we know a priori that attribute setting
-		    // is a simple operation over which we have control.
-		    Object[] argList = new Object[1];
-		    argList[0] = x;
-		    methods[i].invoke(this, argList);
-		    found = true;
-		    break;
-		} catch(IllegalArgumentException e) {
-		    operationError(errMsg);
-		} catch(IllegalAccessException e) {
-		    operationError(errMsg);
-		} catch(InvocationTargetException e) {
-		    operationError(errMsg + " (" + 
-				   e.getTargetException() + ")");
-		}
-	    }
+	setAttr(name, DispatchTable.forClass(getClass()).getSetter(name), x);
+    }
+
+    /**
+     * Attribute assignment via the specified setter, found for this 
+     * object's class (see DispatchTable), or null if there is none.
+     * Assume a single parameter of type Type since all values in pCG 
+     * are of type Type.
+     */
+    public void setAttr(String name, MemberHandle setter, Type x) {
+	Object[] argList = new Object[1];
+	argList[0] = x;
+	if (setter == null || !DispatchTable.isApplicable(setter, argList)) {
+	    operationError("attribute [" + name + "] access");
 	}
 
-	if (!found) {
-	    operationError(errMsg);
+	try {
+	    // Invoke the method, generating a generic error
+	    // since we know a priori that attribute setting
+	    // is a simple operation over which we have control.
+	    setter.invoke(this, argList);
+	} catch(Throwable e) {
+	    operationError("attribute [" + name + "] access (" + e + ")");
 	}
     }
 
@@ -320,77 +302,78 @@ abstract public class Type {
      * pCG member function invocation.
      */
     public Type invokeMemberFunc(String methodName, Object[] actuals) {
-	Type result = UndefinedType.undefined;
-	boolean found = false;
-	String errMsg = "member function \"" + methodName + "\"";
-
-	// Search for a matching method signature (name and parameter number).
-	// Note that since pCG member functions will generally take parameters
-	// of type Type, rather than more specific types, methods with the same
-	// name may only be confidently distinguished in terms of parameter 
-	// number.
-	Class theClass = this.getClass();
-	Method[] methods = theClass.getMethods();
-	for (int i=0;i<methods.length;i++) {
-	    Class[] formals = methods[i].getParameterTypes();
-	    if (methodName.equals(methods[i].getName()) &&
-		formals.length == actuals.length) {
-		try {
-		    // Invoke the method, generating a generic error.
-		    // If the return or parameter types are incorrect, 
-		    // one of four exceptions will be generated.
-		    result = (Type)methods[i].invoke(this, actuals);
-		    found = true;
-		    break;
-		} catch(IllegalArgumentException e) {
-		    operationError(errMsg + " (reason: " +
-				   e.getMessage() + ")");
-		} catch(IllegalAccessException e) {
-		    operationError(errMsg + " (reason: " +
-				   e.getMessage() + ")");
-		} catch(InvocationTargetException e) {
-		    operationError(errMsg + " (reason: " + 
-				   e.getTargetException() + ")");
-		} catch(ClassCastException e) {
-		    // Return type cast error.
-		    operationError(errMsg + " (reason: " +
-				   e.getMessage() + ")");
-		}
-	    }
+	return invokeMemberFunc(methodName, 
+				DispatchTable.forClass(getClass()).
+				getMemberFunc(methodName, actuals),
+				actuals);
+    }
+
+    /**
+     * pCG member function invocation via the specified method, found for
+     * this object's class and the actual parameters (see DispatchTable), 
+     * or null if there is none.
+     */
+    public Type invokeMemberFunc(String methodName, MemberHandle method,
+				 Object[] actuals) {
+	Object result = UndefinedType.undefined;
+
+	if (method == null) {
+	    memberFuncError(methodName, "not found");
 	}
 
-	if (!found) {
-	    operationError(errMsg + " (reason: not found)");
+	try {
+	    // Invoke the method, generating a generic error.
+	    result = method.invoke(this, actuals);
+	} catch(ExitException e) {
+	    // A pCG function called by the member function exited.
+	    throw e;
+	} catch(Throwable e) {
+	    memberFuncError(methodName, String.valueOf(e));
 	}
 
-	return result;
+	try {
+	    return (Type)result;
+	} catch(ClassCastException e) {
+	    // Return type cast error.
+	    memberFuncError(methodName, e.getMessage());
+	    return UndefinedType.undefined;
+	}
     }
 
     //---------------------------------------------------------------
 
     // Static fields and methods.
     //
-    // Note: the KB and scope setters and getters mean that only one
-    // invocation of the pCG interpreter may safely be running on a
-    // a single JVM (the likely case), since storing this information
-    // statically is not thread safe. 
+    // The scope and KB stacks, function caller and options of the pCG
+    // program a thread is executing are held by the InterpreterContext 
+    // bound to that thread, so that several programs may safely run in 
+    // a single JVM, each in threads of its own. A thread is bound to 
+    // the context of the thread which created it unless it is given 
+    // one of its own, e.g. when executing sub-actors in parallel.
     
-    static private ScopeStack scopeStack;
-    static private KnowledgeBaseStack kbStack;
+    static private ThreadLocal threadContext = new InheritableThreadLocal();
 
-    static public void setScopeStack(ScopeStack stack) {
-	scopeStack = stack;
+    /**
+     * Bind the current thread to the specified context, or pass null
+     * to unbind it.
+     */
+    static public void setContext(InterpreterContext context) {
+	threadContext.set(context);
     }
 
-    static public ScopeStack getScopeStack() {
-	return scopeStack;
+    static public InterpreterContext getContext() {
+	return (InterpreterContext)threadContext.get();
     }
 
-    static public void setKBStack(KnowledgeBaseStack stack) {
-	kbStack = stack;
+    static public ScopeStack getScopeStack() {
+	return getContext().getScopeStack();
     }
 
     static public KnowledgeBaseStack getKBStack() {
-	return kbStack;
+	return getContext().getKBStack();
+    }
+
+    static public FunctionCaller getFunctionCaller() {
+	return getContext().getFunctionCaller();
     }
 }
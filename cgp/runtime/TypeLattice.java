@@ -0,0 +1,245 @@
+/**
+ * A conceptual graph language which embodies Guy Mineau's process formalism.
+ * Copyright (C) 2000 David Benn
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * A compiled form of a Notio concept or relation type hierarchy.
+ *
+ * Each type is given an index, and the set of its supertypes (itself
+ * included) is held as a bit vector, so asking whether one type subsumes
+ * another is a constant time bit test rather than a walk of Notio's
+ * partially ordered set.
+ *
+ * The lattice is compiled from the hierarchy's universal type downwards
+ * when first queried, and must be invalidated (see invalidate()) when
+ * types are added to or linked within the hierarchy by the knowledge
+ * base. Types are known by their labels, so types of a copy of the
+ * hierarchy (see KBase.ownTypes()) may be compared with those of the
+ * original, e.g. those of graphs shared with the KBase the copy was
+ * taken from. A type the lattice doesn't know of is one the CGIF parser
+ * added on the fly, which is always a new leaf beneath the universal
+ * type. The absurd type, a subtype of every type, is never compiled but
+ * handled directly.
+ *
+ * A lattice may be shared by threads, e.g. those executing sub-actors
+ * in parallel. The compiled encoding is never changed once published
+ * through a volatile field, so queries take no lock. Compilation reads
+ * the hierarchy while holding the lock which guards it (see
+ * KBase.getTypeLock()), and its encoding is not published if the
+ * lattice was invalidated meanwhile.
+ */
+
+package cgp.runtime;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import notio.ConceptType;
+import notio.ConceptTypeHierarchy;
+import notio.RelationType;
+import notio.RelationTypeHierarchy;
+
+public class TypeLattice {
+    // Instance fields.
+    private ConceptTypeHierarchy conceptTypes; // one of these two is null
+    private RelationTypeHierarchy relationTypes;
+    private Object typeLock; // guards the hierarchy
+    private String universal; // label of the universal type
+    private String absurd; // label of the absurd type
+    private volatile Encoding encoding; // null until compiled
+    private volatile int version;
+
+    // Constructors.
+    public TypeLattice(ConceptTypeHierarchy hierarchy, Object typeLock) {
+	conceptTypes = hierarchy;
+	this.typeLock = typeLock;
+	universal = ConceptTypeHierarchy.UNIVERSAL_TYPE_LABEL;
+	absurd = ConceptTypeHierarchy.ABSURD_TYPE_LABEL;
+	version = 0;
+    }
+
+    public TypeLattice(RelationTypeHierarchy hierarchy, Object typeLock) {
+	relationTypes = hierarchy;
+	this.typeLock = typeLock;
+	universal = RelationTypeHierarchy.UNIVERSAL_TYPE_LABEL;
+	absurd = RelationTypeHierarchy.ABSURD_TYPE_LABEL;
+	version = 0;
+    }
+
+    // Private methods.
+
+    private Object getTypeByLabel(String label) {
+	if (conceptTypes != null) {
+	    return conceptTypes.getTypeByLabel(label);
+	} else {
+	    return relationTypes.getTypeByLabel(label);
+	}
+    }
+
+    private static String getLabel(Object type) {
+	if (type instanceof ConceptType) {
+	    return ((ConceptType)type).getLabel();
+	} else {
+	    return ((RelationType)type).getLabel();
+	}
+    }
+
+    private Object[] getImmediateSuperTypes(Object type) {
+	if (type instanceof ConceptType) {
+	    return ((ConceptType)type).getImmediateSuperTypes();
+	} else {
+	    return ((RelationType)type).getImmediateSuperTypes();
+	}
+    }
+
+    private Object[] getProperSubTypes(Object type) {
+	if (type instanceof ConceptType) {
+	    return ((ConceptType)type).getProperSubTypes();
+	} else {
+	    return ((RelationType)type).getProperSubTypes();
+	}
+    }
+
+    /**
+     * Compile the whole hierarchy, publishing the encoding unless the
+     * lattice has been invalidated meanwhile, and return it.
+     */
+    private Encoding compile() {
+	int compiledVersion = version;
+	HashMap indices = new HashMap();
+	ArrayList ancestors = new ArrayList();
+
+	synchronized (typeLock) {
+	    Object universalType = getTypeByLabel(universal);
+	    indexOf(universalType, indices, ancestors);
+	    Object[] subTypes = getProperSubTypes(universalType);
+	    for (int i=0;i<subTypes.length;i++) {
+		if (!absurd.equals(getLabel(subTypes[i]))) {
+		    indexOf(subTypes[i], indices, ancestors);
+		}
+	    }
+	}
+
+	Encoding e = new Encoding(indices, 
+				  (BitSet[])ancestors.toArray(new BitSet[0]));
+	synchronized (this) {
+	    if (version == compiledVersion) {
+		encoding = e;
+	    }
+	}
+	return e;
+    }
+
+    /**
+     * Return the index of the specified type of the hierarchy in an
+     * encoding being compiled, compiling it (and any of its supertypes
+     * not yet compiled) if necessary.
+     */
+    private int indexOf(Object type, HashMap indices, ArrayList ancestors) {
+	String label = getLabel(type);
+	Integer index = (Integer)indices.get(label);
+	if (index != null) {
+	    return index.intValue();
+	}
+
+	BitSet supers = new BitSet();
+	Object[] immediateSupers = getImmediateSuperTypes(type);
+	for (int i=0;i<immediateSupers.length;i++) {
+	    supers.or((BitSet)ancestors.get(indexOf(immediateSupers[i],
+						    indices, ancestors)));
+	}
+
+	int i = ancestors.size();
+	indices.put(label, new Integer(i));
+	supers.set(i);
+	ancestors.add(supers);
+
+	return i;
+    }
+
+    // Public methods.
+
+    /**
+     * Discard the compiled encoding. Called when the hierarchy changes.
+     */
+    public synchronized void invalidate() {
+	encoding = null;
+	version++;
+    }
+
+    /**
+     * The number of times the lattice has been invalidated, i.e. a
+     * version number for the type hierarchy.
+     */
+    public int getVersion() {
+	return version;
+    }
+
+    /**
+     * Is the first type the same as or a supertype of the second?
+     * Equivalent to Notio's superType.hasSubType(subType).
+     */
+    public boolean subsumes(Object superType, Object subType) {
+	if (superType == subType) {
+	    return true;
+	}
+	String superLabel = getLabel(superType);
+	String subLabel = getLabel(subType);
+	if (superLabel == null || subLabel == null) {
+	    return false;
+	}
+	if (superLabel.equals(subLabel) || superLabel.equals(universal) ||
+	    subLabel.equals(absurd)) {
+	    return true;
+	}
+	if (superLabel.equals(absurd) || subLabel.equals(universal)) {
+	    return false;
+	}
+	Encoding e = encoding;
+	if (e == null) {
+	    e = compile();
+	}
+	Integer superIndex = (Integer)e.indices.get(superLabel);
+	Integer subIndex = (Integer)e.indices.get(subLabel);
+	if (superIndex == null || subIndex == null) {
+	    // At least one is a leaf beneath the universal type.
+	    return false;
+	}
+	return e.ancestors[subIndex.intValue()].get(superIndex.intValue());
+    }
+
+    /**
+     * Is the second type a proper subtype of the first?
+     * Equivalent to Notio's superType.hasProperSubType(subType).
+     */
+    public boolean properlySubsumes(Object superType, Object subType) {
+	return superType != subType && subsumes(superType, subType);
+    }
+
+    /**
+     * A compiled hierarchy, which is never changed once published.
+     */
+    private static class Encoding {
+	final HashMap indices; // type label -> Integer
+	final BitSet[] ancestors; // index -> BitSet of supertypes
+
+	Encoding(HashMap indices, BitSet[] ancestors) {
+	    this.indices = indices;
+	    this.ancestors = ancestors;
+	}
+    }
+}
@@ -48,4 +48,8 @@ public class UndefinedType extends Type {
     public boolean equals(Object other) {
 	return other instanceof UndefinedType;
     }
+
+    public int hashCode() {
+	return 0;
+    }
 }
@@ -92,11 +92,10 @@ public class Window extends Type {
      * Set the colour in the CGP graphics window.
      */
     public void setColor(ListType rgb) {
-	LinkedList list = rgb.getValue();
-	int[] nums = new int[list.size()];
+	int[] nums = new int[rgb.size()];
 
-	for (int i=0;i<list.size();i++) {
-	    Type x = (Type)list.get(i);
+	for (int i=0;i<rgb.size();i++) {
+	    Type x = rgb.get(i);
 	    if (x instanceof NumberType) {
 		nums[i] = (int)((NumberType)x).getValue();
 	    } else {